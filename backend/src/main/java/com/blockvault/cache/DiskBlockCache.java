@@ -0,0 +1,427 @@
+package com.blockvault.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Size-bounded local disk cache of IPFS content, keyed by CID. CIDs are
+ * immutable, so entries never go stale; they are only evicted, least
+ * recently used first, once the cache exceeds its byte budget.
+ *
+ * Content is written to a temporary file while it is streamed to the
+ * client and only becomes visible once the transfer has been read to its
+ * end, so a truncated transfer is never served from the cache. The daemon
+ * checks blocks it fetches from peers against their hashes; re-hashing an
+ * insert against its CID as well is opt-in ({@code verify}), as the only
+ * way to do it is to send the content to a daemon again.
+ */
+@Component
+@ConditionalOnProperty(name = "blockvault.storage.backend", havingValue = "ipfs", matchIfMissing = true)
+@Slf4j
+public class DiskBlockCache {
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Checks that a file's content hashes to the given CID
+     */
+    @FunctionalInterface
+    public interface ContentVerifier {
+        boolean matches(String cid, Path file) throws IOException;
+    }
+
+    @Value("${blockvault.cache.disk.enabled:true}")
+    private boolean enabled;
+
+    @Value("${blockvault.cache.disk.directory:./data/block-cache}")
+    private String directory;
+
+    @Value("${blockvault.cache.disk.max-size:1073741824}")
+    private long maxBytes;
+
+    @Value("${blockvault.cache.disk.max-object-size:268435456}")
+    private long maxObjectBytes;
+
+    @Value("${blockvault.cache.disk.verify:false}")
+    private boolean verify;
+
+    // CID -> size, in access order; guarded by itself
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final Counter rejected;
+
+    // Verification and insertion run off the request thread
+    private final ExecutorService committer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "block-cache-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Path root;
+
+    public DiskBlockCache(MeterRegistry meterRegistry) {
+        this.hits = Counter.builder("blockvault.cache.disk.hits")
+                .description("Downloads served from the disk cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("blockvault.cache.disk.misses")
+                .description("Downloads that had to be fetched from IPFS")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("blockvault.cache.disk.evictions")
+                .description("Entries evicted to stay within the size budget")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("blockvault.cache.disk.rejected")
+                .description("Inserts dropped because the content did not match its CID")
+                .register(meterRegistry);
+        Gauge.builder("blockvault.cache.disk.size", this, DiskBlockCache::size)
+                .description("Bytes held in the disk cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+
+        root = Paths.get(directory);
+        Files.createDirectories(root);
+
+        // Rebuild the index from a previous run, oldest first so they are evicted first
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root, 2)) {
+            files = walk.filter(Files::isRegularFile).toList();
+        }
+
+        List<Path> entries = files.stream()
+                .filter(path -> !path.getFileName().toString().endsWith(TEMP_SUFFIX))
+                .sorted(Comparator.comparingLong(DiskBlockCache::lastModified))
+                .toList();
+        for (Path path : files) {
+            if (path.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                Files.deleteIfExists(path); // Left behind by an interrupted transfer
+            }
+        }
+
+        synchronized (index) {
+            for (Path path : entries) {
+                long size = Files.size(path);
+                index.put(path.getFileName().toString(), size);
+                currentBytes += size;
+            }
+        }
+        evictIfNeeded();
+
+        log.info("Disk block cache at {} ({} entries, {} of {} bytes)",
+                root.toAbsolutePath(), entries.size(), currentBytes, maxBytes);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        committer.shutdown();
+        committer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Open cached content
+     *
+     * @return The content, or empty on a miss
+     */
+    public Optional<InputStream> open(String cid) {
+        return open(cid, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Open up to {@code length} bytes of cached content starting at {@code offset}
+     *
+     * @return The content, or empty on a miss
+     */
+    public Optional<InputStream> open(String cid, long offset, long length) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        Long size;
+        synchronized (index) {
+            size = index.get(cid);
+        }
+        if (size == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+
+        try {
+            FileChannel channel = FileChannel.open(entryPath(cid), StandardOpenOption.READ);
+            long start = Math.min(offset, size);
+            hits.increment();
+            return Optional.of(new FileChannelInputStream(channel, start, Math.min(length, size - start)));
+        } catch (NoSuchFileException e) {
+            // Evicted between the lookup and the open
+            forget(cid);
+        } catch (IOException e) {
+            log.warn("Failed to read cached block {}: {}", cid, e.getMessage());
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Wrap a stream fetched from IPFS so its content is added to the cache
+     * once it has been read to the end. Partially read streams are discarded.
+     */
+    public InputStream cacheWhileReading(String cid, InputStream source, ContentVerifier verifier) {
+        if (!enabled) {
+            return source;
+        }
+
+        try {
+            Path temp = Files.createTempFile(root, null, TEMP_SUFFIX);
+            return new CachingInputStream(cid, source, temp, verifier);
+        } catch (IOException e) {
+            log.warn("Failed to stage block {} for caching: {}", cid, e.getMessage());
+            return source;
+        }
+    }
+
+    /**
+     * Add content that has already been read in full
+     */
+    public void put(String cid, byte[] data, ContentVerifier verifier) {
+        if (!enabled || data.length > maxObjectBytes || isCached(cid)) {
+            return;
+        }
+
+        try {
+            Path temp = Files.createTempFile(root, null, TEMP_SUFFIX);
+            Files.write(temp, data);
+            commit(cid, temp, verifier);
+        } catch (IOException e) {
+            log.warn("Failed to cache block {}: {}", cid, e.getMessage());
+        }
+    }
+
+    private boolean isCached(String cid) {
+        synchronized (index) {
+            return index.containsKey(cid);
+        }
+    }
+
+    private void commit(String cid, Path temp, ContentVerifier verifier) {
+        committer.execute(() -> {
+            try {
+                if (isCached(cid)) {
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+                if (verify && !verifier.matches(cid, temp)) {
+                    rejected.increment();
+                    log.warn("Content fetched for {} does not match its CID; not cached", cid);
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+
+                Path target = entryPath(cid);
+                Files.createDirectories(target.getParent());
+                long size = Files.size(temp);
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+                synchronized (index) {
+                    index.put(cid, size);
+                    currentBytes += size;
+                }
+                evictIfNeeded();
+                log.debug("Cached block {} ({} bytes)", cid, size);
+            } catch (Exception e) {
+                log.warn("Failed to cache block {}: {}", cid, e.getMessage());
+                deleteQuietly(temp);
+            }
+        });
+    }
+
+    private void evictIfNeeded() {
+        while (true) {
+            String cid;
+            synchronized (index) {
+                if (currentBytes <= maxBytes || index.isEmpty()) {
+                    return;
+                }
+                Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+                Map.Entry<String, Long> entry = eldest.next();
+                cid = entry.getKey();
+                currentBytes -= entry.getValue();
+                eldest.remove();
+            }
+
+            // Readers that already opened the file keep reading it
+            deleteQuietly(entryPath(cid));
+            evictions.increment();
+            log.debug("Evicted cached block {}", cid);
+        }
+    }
+
+    private void forget(String cid) {
+        synchronized (index) {
+            Long size = index.remove(cid);
+            if (size != null) {
+                currentBytes -= size;
+            }
+        }
+    }
+
+    private double size() {
+        synchronized (index) {
+            return currentBytes;
+        }
+    }
+
+    private Path entryPath(String cid) {
+        // Shard by the end of the CID; the prefix is the same for every CID of a version
+        String shard = cid.substring(Math.max(0, cid.length() - 2));
+        return root.resolve(shard).resolve(cid);
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Copies everything read from IPFS to a temporary file and commits it at
+     * end of stream. Cache write failures never fail the download.
+     */
+    private class CachingInputStream extends FilterInputStream {
+
+        private final String cid;
+        private final Path temp;
+        private final ContentVerifier verifier;
+        private OutputStream copy;
+        private long copied;
+
+        CachingInputStream(String cid, InputStream source, Path temp, ContentVerifier verifier)
+                throws IOException {
+            super(source);
+            this.cid = cid;
+            this.temp = temp;
+            this.verifier = verifier;
+            this.copy = Files.newOutputStream(temp);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            int n = read(single, 0, 1);
+            return n == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (copy == null) {
+                return n;
+            }
+
+            if (n == -1) {
+                finish();
+            } else if (n > 0) {
+                copied += n;
+                if (copied > maxObjectBytes) {
+                    abandon();
+                } else {
+                    try {
+                        copy.write(b, off, n);
+                    } catch (IOException e) {
+                        log.warn("Failed to write block {} to the cache: {}", cid, e.getMessage());
+                        abandon();
+                    }
+                }
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes would leave a hole in the copy
+            abandon();
+            return in.skip(n);
+        }
+
+        @Override
+        public void close() throws IOException {
+            abandon();
+            super.close();
+        }
+
+        private void finish() {
+            OutputStream out = copy;
+            copy = null;
+            try {
+                out.close();
+                commit(cid, temp, verifier);
+            } catch (IOException e) {
+                log.warn("Failed to stage block {}: {}", cid, e.getMessage());
+                deleteQuietly(temp);
+            }
+        }
+
+        private void abandon() {
+            if (copy == null) {
+                return;
+            }
+            try {
+                copy.close();
+            } catch (IOException ignored) {
+                // The partial copy is deleted either way
+            }
+            copy = null;
+            deleteQuietly(temp);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.blockvault.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * In-memory cache of small, frequently read IPFS objects, keyed by CID.
+ * Entries hold the raw stored bytes (still encrypted where applicable), so
+ * no plaintext is kept in memory. Caffeine's W-TinyLFU policy admits an
+ * object only when it is likely to be read more often than the one it
+ * would evict, which keeps one-off downloads from flushing hot entries.
+ */
+@Component
+@Slf4j
+public class HotObjectCache {
+
+    private final boolean enabled;
+    private final long maxObjectBytes;
+    private final List<String> fileTypes;
+    private final Cache<String, byte[]> cache;
+
+    public HotObjectCache(@Value("${blockvault.cache.memory.enabled:true}") boolean enabled,
+                          @Value("${blockvault.cache.memory.max-size:67108864}") long maxBytes,
+                          @Value("${blockvault.cache.memory.max-object-size:1048576}") long maxObjectBytes,
+                          @Value("${blockvault.cache.memory.file-types:IMAGE,TEXT}") List<String> fileTypes,
+                          MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.maxObjectBytes = maxObjectBytes;
+        this.fileTypes = fileTypes;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String cid, byte[] data) -> data.length)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "blockvault.hot-objects");
+        log.info("Hot object cache: {} bytes, objects up to {} bytes of types {}",
+                maxBytes, maxObjectBytes, fileTypes);
+    }
+
+    /**
+     * Whether a file of this type and size should go through the cache
+     */
+    public boolean accepts(String fileType, long size) {
+        return enabled && size <= maxObjectBytes && fileTypes.contains(fileType);
+    }
+
+    public Optional<byte[]> get(String cid) {
+        return Optional.ofNullable(cache.getIfPresent(cid));
+    }
+
+    /**
+     * Offer an object to the cache; objects over the size cap are ignored
+     */
+    public void put(String cid, byte[] data) {
+        if (enabled && data.length <= maxObjectBytes) {
+            cache.put(cid, data);
+        }
+    }
+}
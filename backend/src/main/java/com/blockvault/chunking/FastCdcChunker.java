@@ -0,0 +1,121 @@
+package com.blockvault.chunking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Content-defined chunking using the FastCDC algorithm (gear rolling hash
+ * with normalized chunking). Cut points depend only on nearby content, so
+ * an insertion early in a file only changes the chunks around it.
+ * Memory use is one buffer of {@code maxSize} bytes.
+ */
+public class FastCdcChunker {
+
+    // Fixed seed: cut points must be identical across restarts and nodes
+    private static final long[] GEAR = gearTable(0x5BD1E995L);
+
+    private final InputStream source;
+    private final int minSize;
+    private final int avgSize;
+    private final int maxSize;
+    private final long maskSmall; // Stricter mask before the average size
+    private final long maskLarge; // Looser mask after it
+
+    private final byte[] buffer;
+    private int start;
+    private int end;
+    private boolean eof;
+
+    public FastCdcChunker(InputStream source, int minSize, int avgSize, int maxSize) {
+        if (minSize <= 0 || minSize > avgSize || avgSize > maxSize) {
+            throw new IllegalArgumentException("Chunk sizes must satisfy 0 < min <= avg <= max");
+        }
+
+        this.source = source;
+        this.minSize = minSize;
+        this.avgSize = avgSize;
+        this.maxSize = maxSize;
+
+        int bits = 31 - Integer.numberOfLeadingZeros(avgSize);
+        this.maskSmall = topBits(Math.min(bits + 2, 63));
+        this.maskLarge = topBits(Math.max(bits - 2, 1));
+        this.buffer = new byte[maxSize];
+    }
+
+    /**
+     * @return The next chunk, or null at the end of the stream
+     */
+    public byte[] next() throws IOException {
+        fill();
+
+        int available = end - start;
+        if (available == 0) {
+            return null;
+        }
+
+        int cut = cutPoint(buffer, start, available);
+        byte[] chunk = Arrays.copyOfRange(buffer, start, start + cut);
+        start += cut;
+        return chunk;
+    }
+
+    private void fill() throws IOException {
+        if (eof || end - start >= maxSize) {
+            return;
+        }
+
+        System.arraycopy(buffer, start, buffer, 0, end - start);
+        end -= start;
+        start = 0;
+
+        while (end < buffer.length) {
+            int n = source.read(buffer, end, buffer.length - end);
+            if (n == -1) {
+                eof = true;
+                return;
+            }
+            end += n;
+        }
+    }
+
+    private int cutPoint(byte[] data, int offset, int length) {
+        if (length <= minSize) {
+            return length;
+        }
+
+        int limit = Math.min(length, maxSize);
+        int normal = Math.min(limit, avgSize);
+        long fingerprint = 0;
+        int i = minSize;
+
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((fingerprint & maskSmall) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[offset + i] & 0xFF];
+            if ((fingerprint & maskLarge) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    // The high bits of the gear hash depend on the most recent 64 bytes
+    private static long topBits(int count) {
+        return -1L << (64 - count);
+    }
+
+    private static long[] gearTable(long seed) {
+        Random random = new Random(seed);
+        long[] table = new long[256];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = random.nextLong();
+        }
+        return table;
+    }
+}
@@ -3,19 +3,28 @@ package com.blockvault.controller;
 import com.blockvault.model.FileMetadata;
 import com.blockvault.model.FileVersion;
 import com.blockvault.model.User;
+import com.blockvault.repository.FileDownloadItem;
+import com.blockvault.repository.FileListItem;
 import com.blockvault.service.AuthService;
+import com.blockvault.service.BatchUploadService;
 import com.blockvault.service.EncryptionService;
+import com.blockvault.service.FileDownload;
 import com.blockvault.service.FileService;
+import com.blockvault.service.ZipDownloadService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -29,7 +38,10 @@ public class FileController {
 
     private final FileService fileService;
     private final AuthService authService;
+    private final BatchUploadService batchUploadService;
     private final EncryptionService encryptionService;
+    private final ZipDownloadService zipDownloadService;
+    private final ObjectMapper objectMapper;
 
     /**
      * Upload file
@@ -73,6 +85,101 @@ public class FileController {
         }
     }
 
+    /**
+     * Upload several files in one request; each gets its own result
+     * POST /api/files/upload/batch
+     */
+    @PostMapping("/upload/batch")
+    public ResponseEntity<?> uploadBatch(
+            @RequestParam("files") List<MultipartFile> files,
+            @RequestParam(value = "encrypt", defaultValue = "false") boolean encrypt,
+            @RequestParam(value = "encryptionKey", required = false) String encryptionKey,
+            Authentication authentication) {
+
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+
+            // One key for the whole batch, generated if none was provided
+            String actualKey = encryptionKey;
+            if (encrypt && (encryptionKey == null || encryptionKey.trim().isEmpty())) {
+                actualKey = encryptionService.generateKey();
+            }
+
+            List<BatchUploadService.FileResult> results =
+                    batchUploadService.uploadBatch(files, user, encrypt, actualKey);
+
+            List<Map<String, Object>> resultsResponse = new ArrayList<>();
+            int uploaded = 0;
+            for (BatchUploadService.FileResult result : results) {
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("filename", result.filename());
+                entry.put("success", result.isSuccess());
+                if (result.isSuccess()) {
+                    entry.put("file", convertToFileResponse(result.file()));
+                    uploaded++;
+                } else {
+                    entry.put("message", result.error());
+                }
+                resultsResponse.add(entry);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", uploaded == results.size());
+            response.put("message", uploaded + " of " + results.size() + " files uploaded");
+            response.put("uploaded", uploaded);
+            response.put("failed", results.size() - uploaded);
+            response.put("results", resultsResponse);
+
+            // Return the encryption key if it was generated
+            if (encrypt && uploaded > 0 && !actualKey.equals(encryptionKey)) {
+                response.put("encryptionKey", actualKey);
+                response.put("warning", "Save this encryption key securely! It cannot be recovered.");
+            }
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Batch upload failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Check whether content is already stored before uploading it.
+     * When it can be reused, the file is recorded immediately and the
+     * client skips the upload.
+     * POST /api/files/precheck
+     */
+    @PostMapping("/precheck")
+    public ResponseEntity<?> precheckUpload(@RequestBody PrecheckRequest request, Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            boolean encrypt = Boolean.TRUE.equals(request.getEncrypt());
+            long size = request.getSize() != null ? request.getSize() : 0;
+
+            Optional<FileMetadata> linked = fileService.linkExistingContent(request.getSha256(), size,
+                    request.getFilename(), request.getContentType(), user, encrypt, request.getEncryptionKey());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("exists", linked.isPresent());
+            if (linked.isPresent()) {
+                response.put("message", "File uploaded successfully");
+                response.put("file", convertToFileResponse(linked.get()));
+            } else {
+                response.put("message", "Content not stored yet, upload required");
+            }
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Upload precheck failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
     /**
      * Get all user files
      * GET /api/files
@@ -98,6 +205,39 @@ public class FileController {
         }
     }
 
+    /**
+     * Get one page of user files, newest first; pass nextCursor back for the next page
+     * GET /api/files/page?cursor=&size=&fileType=&encrypted=
+     */
+    @GetMapping("/page")
+    public ResponseEntity<?> getFilePage(
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "size", required = false) Integer size,
+            @RequestParam(value = "fileType", required = false) String fileType,
+            @RequestParam(value = "encrypted", required = false) Boolean encrypted,
+            Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            FileService.FilePage page = fileService.listFiles(user, cursor, size, fileType, encrypted);
+
+            List<Map<String, Object>> filesResponse = page.files().stream()
+                    .map(this::convertToListResponse)
+                    .collect(Collectors.toList());
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("files", filesResponse);
+            response.put("nextCursor", page.nextCursor());
+            response.put("hasMore", page.nextCursor() != null);
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Get file page failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
     /**
      * Get file by ID
      * GET /api/files/{id}
@@ -122,42 +262,107 @@ public class FileController {
     /**
      * Download file
      * GET /api/files/download/{cid}
+     * 
+     * The content is streamed from IPFS through decryption to the client,
+     * so the whole file is never held in memory. A single-range
+     * {@code Range} header is answered with 206 Partial Content.
      */
     @GetMapping("/download/{cid}")
-    public ResponseEntity<?> downloadFile(
+    public ResponseEntity<StreamingResponseBody> downloadFile(
             @PathVariable String cid,
             @RequestParam(value = "decryptionKey", required = false) String decryptionKey,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String rangeHeader,
             Authentication authentication) {
 
         try {
             User user = authService.getUserByUsername(authentication.getName());
-            byte[] fileData = fileService.downloadFile(cid, user, decryptionKey);
+            FileDownloadItem metadata = fileService.getDownloadMetadata(cid, user);
+            long fileSize = metadata.fileSize();
+            boolean rangeSupported = fileService.supportsRange(metadata);
+
+            // Malformed or multi-part ranges are ignored and the full file is sent
+            HttpRange range = rangeSupported ? parseSingleRange(rangeHeader) : null;
+
+            long offset = 0;
+            long length = fileSize;
+            if (range != null) {
+                try {
+                    offset = range.getRangeStart(fileSize);
+                    length = range.getRangeEnd(fileSize) - offset + 1;
+                } catch (IllegalArgumentException e) {
+                    return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
+                            .build();
+                }
+            }
 
-            // Get file metadata for content type and filename
-            FileMetadata metadata = fileService.getUserFiles(user).stream()
-                    .filter(f -> f.getCid().equals(cid))
-                    .findFirst()
-                    .orElse(null);
+            FileDownload download = fileService.openDownload(metadata, decryptionKey, offset, length);
 
-            String contentType = metadata != null && metadata.getContentType() != null
-                    ? metadata.getContentType()
+            String contentType = metadata.contentType() != null
+                    ? metadata.contentType()
                     : MediaType.APPLICATION_OCTET_STREAM_VALUE;
 
-            String filename = metadata != null ? metadata.getFilename() : "download";
-
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.parseMediaType(contentType));
-            headers.setContentDispositionFormData("attachment", filename);
+            headers.setContentDispositionFormData("attachment", metadata.filename());
+            headers.setContentLength(download.getContentLength());
+            if (rangeSupported) {
+                headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+            }
+            if (download.isPartial()) {
+                headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + offset + "-"
+                        + (offset + length - 1) + "/" + fileSize);
+            }
 
-            return ResponseEntity.ok()
+            StreamingResponseBody body = outputStream -> {
+                try (download) {
+                    download.getContent().transferTo(outputStream);
+                }
+            };
+
+            return ResponseEntity.status(download.isPartial() ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK)
                     .headers(headers)
-                    .body(fileData);
+                    .body(body);
 
         } catch (Exception e) {
             log.error("File download failed: {}", e.getMessage());
-            return ResponseEntity.badRequest().body(Map.of(
-                    "success", false,
-                    "message", e.getMessage()));
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(errorBody(e.getMessage()));
+        }
+    }
+
+    /**
+     * Download several files as one ZIP archive, streamed as it is built
+     * POST /api/files/download/zip
+     */
+    @PostMapping("/download/zip")
+    public ResponseEntity<StreamingResponseBody> downloadZip(@RequestBody ZipDownloadRequest request,
+                                                             Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            List<ZipDownloadService.ZipEntrySource> entries = zipDownloadService.prepare(request.getIds(), user,
+                    request.getDecryptionKeys(), request.getDecryptionKey());
+
+            String archiveName = request.getFilename() != null && !request.getFilename().isBlank()
+                    ? request.getFilename()
+                    : "blockvault-files.zip";
+
+            HttpHeaders headers = new HttpHeaders();
+            headers.setContentType(MediaType.parseMediaType("application/zip"));
+            headers.setContentDispositionFormData("attachment", archiveName);
+
+            StreamingResponseBody body = outputStream -> zipDownloadService.writeZip(entries, outputStream);
+
+            return ResponseEntity.ok()
+                    .headers(headers)
+                    .body(body);
+
+        } catch (Exception e) {
+            log.error("ZIP download failed: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(errorBody(e.getMessage()));
         }
     }
 
@@ -182,6 +387,38 @@ public class FileController {
         }
     }
 
+    /**
+     * Delete many files at once, by ID list or by filter
+     * POST /api/files/bulk-delete
+     */
+    @PostMapping("/bulk-delete")
+    public ResponseEntity<?> deleteFiles(@RequestBody BulkDeleteRequest request, Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+
+            FileService.BulkDeleteResult result;
+            if (request.getIds() != null && !request.getIds().isEmpty()) {
+                result = fileService.deleteFiles(request.getIds(), user);
+            } else {
+                LocalDateTime uploadedBefore = request.getUploadedBefore() != null
+                        ? LocalDateTime.parse(request.getUploadedBefore())
+                        : null;
+                result = fileService.deleteFilesMatching(request.getFileType(), uploadedBefore, user);
+            }
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", result.deleted() + " files deleted",
+                    "deleted", result.deleted(),
+                    "freedBytes", result.freedBytes()));
+        } catch (Exception e) {
+            log.error("Bulk deletion failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
     /**
      * Generate share link
      * POST /api/files/{id}/share
@@ -231,6 +468,25 @@ public class FileController {
 
     // Helper methods to convert entities to response DTOs
 
+    private HttpRange parseSingleRange(String rangeHeader) {
+        if (rangeHeader == null) {
+            return null;
+        }
+        try {
+            List<HttpRange> ranges = HttpRange.parseRanges(rangeHeader);
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private StreamingResponseBody errorBody(String message) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("success", false);
+        error.put("message", message);
+        return outputStream -> objectMapper.writeValue(outputStream, error);
+    }
+
     private Map<String, Object> convertToFileResponse(FileMetadata file) {
         Map<String, Object> response = new HashMap<>();
         response.put("id", file.getId());
@@ -240,11 +496,15 @@ public class FileController {
         response.put("sizeBytes", file.getFileSize());
         response.put("type", file.getFileType());
         response.put("contentType", file.getContentType());
+        response.put("contentHash", file.getContentHash());
         response.put("encrypted", file.getEncrypted());
+        response.put("encryptionFormat", file.getEncryptionFormat());
+        response.put("compressionCodec", file.getCompressionCodec());
         response.put("icon", file.getFileIcon());
         response.put("date", file.getUploadedAt().format(DateTimeFormatter.ofPattern("MMM dd, yyyy")));
         response.put("uploadedAt", file.getUploadedAt().toString());
         response.put("pinned", file.getPinned());
+        response.put("pinStatus", file.getPinStatus() != null ? file.getPinStatus() : FileMetadata.PIN_PINNED);
         response.put("replicationCount", file.getReplicationCount());
         response.put("currentVersion", file.getCurrentVersion());
         response.put("blockchainTxHash", file.getBlockchainTxHash());
@@ -264,6 +524,26 @@ public class FileController {
         return response;
     }
 
+    private Map<String, Object> convertToListResponse(FileListItem file) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", file.id());
+        response.put("name", file.filename());
+        response.put("cid", file.cid());
+        response.put("size", formatBytes(file.fileSize()));
+        response.put("sizeBytes", file.fileSize());
+        response.put("type", file.fileType());
+        response.put("contentType", file.contentType());
+        response.put("encrypted", file.encrypted());
+        response.put("icon", FileMetadata.iconFor(FileMetadata.extensionOf(file.filename())));
+        response.put("date", file.uploadedAt().format(DateTimeFormatter.ofPattern("MMM dd, yyyy")));
+        response.put("uploadedAt", file.uploadedAt().toString());
+        response.put("pinned", file.pinned());
+        response.put("pinStatus", file.pinStatus() != null ? file.pinStatus() : FileMetadata.PIN_PINNED);
+        response.put("replicationCount", file.replicationCount());
+        response.put("currentVersion", file.currentVersion());
+        return response;
+    }
+
     private String formatBytes(long bytes) {
         if (bytes >= 1_073_741_824) {
             return String.format("%.2f GB", bytes / 1_073_741_824.0);
@@ -275,4 +555,131 @@ public class FileController {
             return bytes + " B";
         }
     }
+
+    // DTOs
+    static class PrecheckRequest {
+        private String sha256;
+        private Long size;
+        private String filename;
+        private String contentType;
+        private Boolean encrypt;
+        private String encryptionKey;
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public void setSha256(String sha256) {
+            this.sha256 = sha256;
+        }
+
+        public Long getSize() {
+            return size;
+        }
+
+        public void setSize(Long size) {
+            this.size = size;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public void setFilename(String filename) {
+            this.filename = filename;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public void setContentType(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public Boolean getEncrypt() {
+            return encrypt;
+        }
+
+        public void setEncrypt(Boolean encrypt) {
+            this.encrypt = encrypt;
+        }
+
+        public String getEncryptionKey() {
+            return encryptionKey;
+        }
+
+        public void setEncryptionKey(String encryptionKey) {
+            this.encryptionKey = encryptionKey;
+        }
+    }
+
+    static class ZipDownloadRequest {
+        private List<Long> ids;
+        private String decryptionKey; // Used for encrypted files without their own key
+        private Map<Long, String> decryptionKeys; // File ID -> key
+        private String filename;
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public void setIds(List<Long> ids) {
+            this.ids = ids;
+        }
+
+        public String getDecryptionKey() {
+            return decryptionKey;
+        }
+
+        public void setDecryptionKey(String decryptionKey) {
+            this.decryptionKey = decryptionKey;
+        }
+
+        public Map<Long, String> getDecryptionKeys() {
+            return decryptionKeys;
+        }
+
+        public void setDecryptionKeys(Map<Long, String> decryptionKeys) {
+            this.decryptionKeys = decryptionKeys;
+        }
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public void setFilename(String filename) {
+            this.filename = filename;
+        }
+    }
+
+    static class BulkDeleteRequest {
+        private List<Long> ids;
+        private String fileType;
+        private String uploadedBefore; // ISO-8601 local date-time
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public void setIds(List<Long> ids) {
+            this.ids = ids;
+        }
+
+        public String getFileType() {
+            return fileType;
+        }
+
+        public void setFileType(String fileType) {
+            this.fileType = fileType;
+        }
+
+        public String getUploadedBefore() {
+            return uploadedBefore;
+        }
+
+        public void setUploadedBefore(String uploadedBefore) {
+            this.uploadedBefore = uploadedBefore;
+        }
+    }
 }
@@ -0,0 +1,219 @@
+package com.blockvault.controller;
+
+import com.blockvault.model.FileMetadata;
+import com.blockvault.model.UploadSession;
+import com.blockvault.model.User;
+import com.blockvault.service.AuthService;
+import com.blockvault.service.EncryptionService;
+import com.blockvault.service.UploadSessionService;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resumable upload protocol: create a session, PUT chunks at the committed
+ * offset, query the offset after a disconnect, then complete.
+ */
+@RestController
+@RequestMapping("/api/uploads")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class UploadController {
+
+    private final UploadSessionService uploadSessionService;
+    private final AuthService authService;
+    private final EncryptionService encryptionService;
+
+    /**
+     * Create upload session
+     * POST /api/uploads
+     */
+    @PostMapping
+    public ResponseEntity<?> createSession(@RequestBody CreateUploadRequest request, Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            long size = request.getSize() != null ? request.getSize() : 0;
+            UploadSession session = uploadSessionService.createSession(
+                    user, request.getFilename(), request.getContentType(), size);
+
+            return ResponseEntity.status(HttpStatus.CREATED).body(Map.of(
+                    "success", true,
+                    "upload", convertToSessionResponse(session)));
+        } catch (Exception e) {
+            log.error("Upload session creation failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Get upload session status (committed offset)
+     * GET /api/uploads/{id}
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getSession(@PathVariable String id, Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            UploadSession session = uploadSessionService.getSession(id, user);
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "upload", convertToSessionResponse(session)));
+        } catch (Exception e) {
+            log.error("Get upload session failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Upload a chunk; the raw request body is written at the given offset
+     * PUT /api/uploads/{id}?offset={offset}
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<?> uploadChunk(
+            @PathVariable String id,
+            @RequestParam("offset") long offset,
+            HttpServletRequest request,
+            Authentication authentication) {
+
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            UploadSession session = uploadSessionService.appendChunk(id, user, offset, request.getInputStream());
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "upload", convertToSessionResponse(session)));
+        } catch (Exception e) {
+            log.error("Chunk upload failed: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Finalize upload: encrypt, add to IPFS and record the file
+     * POST /api/uploads/{id}/complete
+     */
+    @PostMapping("/{id}/complete")
+    public ResponseEntity<?> completeUpload(
+            @PathVariable String id,
+            @RequestParam(value = "encrypt", defaultValue = "false") boolean encrypt,
+            @RequestParam(value = "encryptionKey", required = false) String encryptionKey,
+            Authentication authentication) {
+
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+
+            // Generate new key if encrypting without provided key
+            String actualKey = encryptionKey;
+            if (encrypt && (encryptionKey == null || encryptionKey.trim().isEmpty())) {
+                actualKey = encryptionService.generateKey();
+            }
+
+            FileMetadata fileMetadata = uploadSessionService.complete(id, user, encrypt, actualKey);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "File uploaded successfully");
+            response.put("file", Map.of(
+                    "id", fileMetadata.getId(),
+                    "name", fileMetadata.getFilename(),
+                    "cid", fileMetadata.getCid(),
+                    "size", fileMetadata.getFormattedSize(),
+                    "encrypted", fileMetadata.getEncrypted()));
+
+            // Return the encryption key if it was generated
+            if (encrypt && actualKey != null) {
+                response.put("encryptionKey", actualKey);
+                response.put("warning", "Save this encryption key securely! It cannot be recovered.");
+            }
+
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            log.error("Upload completion failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Abort upload session
+     * DELETE /api/uploads/{id}
+     */
+    @DeleteMapping("/{id}")
+    public ResponseEntity<?> abortUpload(@PathVariable String id, Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            uploadSessionService.abort(id, user);
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "message", "Upload aborted"));
+        } catch (Exception e) {
+            log.error("Upload abort failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    // Helper methods
+
+    private Map<String, Object> convertToSessionResponse(UploadSession session) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("id", session.getId());
+        response.put("filename", session.getFilename());
+        response.put("size", session.getTotalSize());
+        response.put("offset", session.getCommittedOffset());
+        response.put("status", session.getStatus());
+        response.put("fileId", session.getFileMetadataId());
+        response.put("createdAt", session.getCreatedAt().format(DateTimeFormatter.ofPattern("MMM dd, yyyy HH:mm")));
+
+        return response;
+    }
+
+    // DTOs
+    static class CreateUploadRequest {
+        private String filename;
+        private String contentType;
+        private Long size;
+
+        public String getFilename() {
+            return filename;
+        }
+
+        public void setFilename(String filename) {
+            this.filename = filename;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public void setContentType(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public Long getSize() {
+            return size;
+        }
+
+        public void setSize(Long size) {
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.blockvault.controller;
+
+import com.blockvault.model.User;
+import com.blockvault.service.AuthService;
+import com.blockvault.service.EncryptionService;
+import com.blockvault.service.UploadJob;
+import com.blockvault.service.UploadJobService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Asynchronous uploads: submit a file and get a job id back right away,
+ * then poll the job or follow it over Server-Sent Events.
+ */
+@RestController
+@RequestMapping("/api/upload-jobs")
+@RequiredArgsConstructor
+@Slf4j
+@CrossOrigin(origins = "*")
+public class UploadJobController {
+
+    private final UploadJobService uploadJobService;
+    private final AuthService authService;
+    private final EncryptionService encryptionService;
+
+    /**
+     * Submit a file for background processing
+     * POST /api/upload-jobs
+     */
+    @PostMapping
+    public ResponseEntity<?> submit(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(value = "encrypt", defaultValue = "false") boolean encrypt,
+            @RequestParam(value = "encryptionKey", required = false) String encryptionKey,
+            Authentication authentication) {
+
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+
+            // Generate new key if encrypting without provided key
+            String actualKey = encryptionKey;
+            if (encrypt && (encryptionKey == null || encryptionKey.trim().isEmpty())) {
+                actualKey = encryptionService.generateKey();
+            }
+
+            UploadJob job = uploadJobService.submit(file, user, encrypt, actualKey);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", true);
+            response.put("message", "Upload received, processing");
+            response.put("jobId", job.getId());
+            response.put("job", job.progress());
+
+            // Return the encryption key if it was generated
+            if (encrypt && !actualKey.equals(encryptionKey)) {
+                response.put("encryptionKey", actualKey);
+                response.put("warning", "Save this encryption key securely! It cannot be recovered.");
+            }
+
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (Exception e) {
+            log.error("Upload job submission failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Poll a job
+     * GET /api/upload-jobs/{id}
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getJob(@PathVariable String id, Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            UploadJob job = uploadJobService.getJob(id, user);
+
+            return ResponseEntity.ok(Map.of(
+                    "success", true,
+                    "job", job.progress()));
+        } catch (Exception e) {
+            log.error("Get upload job failed: {}", e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                    "success", false,
+                    "message", e.getMessage()));
+        }
+    }
+
+    /**
+     * Follow a job; a "progress" event is sent on every change
+     * GET /api/upload-jobs/{id}/events
+     */
+    @GetMapping("/{id}/events")
+    public ResponseEntity<?> events(@PathVariable String id, Authentication authentication) {
+        try {
+            User user = authService.getUserByUsername(authentication.getName());
+            SseEmitter emitter = uploadJobService.subscribe(id, user);
+            return ResponseEntity.ok(emitter);
+        } catch (Exception e) {
+            log.error("Upload job subscription failed: {}", e.getMessage());
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(Map.of(
+                            "success", false,
+                            "message", e.getMessage()));
+        }
+    }
+}
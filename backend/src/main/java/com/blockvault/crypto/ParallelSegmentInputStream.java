@@ -0,0 +1,101 @@
+package com.blockvault.crypto;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Base class for streams that transform batches of segments on a
+ * {@link ForkJoinPool}. The source is read sequentially on the caller's
+ * thread, up to {@code window} batches are transformed concurrently, and
+ * results are released strictly in order.
+ */
+abstract class ParallelSegmentInputStream extends SegmentInputStream {
+
+    // Cipher objects are not thread-safe; keep one per pool worker
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return SegmentedAesGcm.newCipher();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final ForkJoinPool pool;
+    private final int window;
+    private final ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+
+    private boolean sourceExhausted;
+
+    protected ParallelSegmentInputStream(InputStream source, ForkJoinPool pool, int window) {
+        super(source);
+        this.pool = pool;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Read the next batch from the source and return the work that transforms it
+     *
+     * @return null once the source is exhausted
+     */
+    protected abstract Callable<Batch> readBatch() throws IOException;
+
+    protected static Cipher cipher() {
+        return CIPHERS.get();
+    }
+
+    @Override
+    protected boolean nextSegment() throws IOException {
+        while (!sourceExhausted && inFlight.size() < window) {
+            Callable<Batch> work = readBatch();
+            if (work == null) {
+                sourceExhausted = true;
+            } else {
+                inFlight.add(pool.submit(work));
+            }
+        }
+
+        Future<Batch> head = inFlight.poll();
+        if (head == null) {
+            return false;
+        }
+
+        Batch batch;
+        try {
+            batch = head.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for crypto worker");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException io ? io : new IOException(cause.getMessage(), cause);
+        }
+
+        buffer = batch.data();
+        position = 0;
+        limit = batch.length();
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (Future<Batch> pending : inFlight) {
+            pending.cancel(true);
+        }
+        inFlight.clear();
+        super.close();
+    }
+
+    /**
+     * Output of one transformed batch
+     */
+    protected record Batch(byte[] data, int length) {
+    }
+}
@@ -0,0 +1,69 @@
+package com.blockvault.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel counterpart of {@link SegmentedDecryptingInputStream}. Each batch
+ * is verified before any of its plaintext is released.
+ */
+public class ParallelSegmentedDecryptingInputStream extends ParallelSegmentInputStream {
+
+    private final SegmentedAesGcm scheme;
+    private final int segmentsPerBatch;
+    private final long endSegment;
+    private final long totalSegments;
+
+    private long nextSegmentIndex;
+
+    public ParallelSegmentedDecryptingInputStream(InputStream ciphertext, SegmentedAesGcm scheme,
+                                                  long firstSegment, long endSegment, long totalSegments,
+                                                  ForkJoinPool pool, int window, int segmentsPerBatch) {
+        super(ciphertext, pool, window);
+        this.scheme = scheme;
+        this.segmentsPerBatch = Math.max(1, segmentsPerBatch);
+        this.nextSegmentIndex = firstSegment;
+        this.endSegment = endSegment;
+        this.totalSegments = totalSegments;
+    }
+
+    @Override
+    protected Callable<Batch> readBatch() throws IOException {
+        if (nextSegmentIndex >= endSegment) {
+            return null;
+        }
+
+        int encryptedSegmentSize = scheme.encryptedSegmentSize();
+        int segments = (int) Math.min(segmentsPerBatch, endSegment - nextSegmentIndex);
+        byte[] input = new byte[encryptedSegmentSize * segments];
+        int length = source.readNBytes(input, 0, input.length);
+
+        long firstIndex = nextSegmentIndex;
+        boolean containsLast = firstIndex + segments == totalSegments;
+        int minimum = (segments - 1) * encryptedSegmentSize + SegmentedAesGcm.TAG_LENGTH;
+        if (length < minimum || (!containsLast && length < input.length)) {
+            throw new IOException("Encrypted data is truncated at segment " + firstIndex);
+        }
+        nextSegmentIndex += segments;
+
+        return () -> {
+            byte[] output = new byte[segments * scheme.segmentSize()];
+            int written = 0;
+            for (int i = 0; i < segments; i++) {
+                long index = firstIndex + i;
+                int offset = i * encryptedSegmentSize;
+                int chunk = Math.min(encryptedSegmentSize, length - offset);
+                try {
+                    written += scheme.decryptSegment(cipher(), index, index == totalSegments - 1,
+                            input, offset, chunk, output, written);
+                } catch (GeneralSecurityException e) {
+                    throw new IOException("Segment " + index + " failed authentication", e);
+                }
+            }
+            return new Batch(output, written);
+        };
+    }
+}
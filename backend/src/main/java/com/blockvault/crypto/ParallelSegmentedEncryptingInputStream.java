@@ -0,0 +1,82 @@
+package com.blockvault.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parallel counterpart of {@link SegmentedEncryptingInputStream}; produces
+ * byte-identical output for the same scheme.
+ */
+public class ParallelSegmentedEncryptingInputStream extends ParallelSegmentInputStream {
+
+    private final SegmentedAesGcm scheme;
+    private final int segmentsPerBatch;
+    private final PushbackInputStream plaintext;
+
+    private long nextSegmentIndex;
+    private boolean headerQueued;
+    private boolean lastQueued;
+
+    public ParallelSegmentedEncryptingInputStream(InputStream plaintext, SegmentedAesGcm scheme,
+                                                  ForkJoinPool pool, int window, int segmentsPerBatch) {
+        this(new PushbackInputStream(plaintext, 1), scheme, pool, window, segmentsPerBatch);
+    }
+
+    private ParallelSegmentedEncryptingInputStream(PushbackInputStream plaintext, SegmentedAesGcm scheme,
+                                                   ForkJoinPool pool, int window, int segmentsPerBatch) {
+        super(plaintext, pool, window);
+        this.plaintext = plaintext;
+        this.scheme = scheme;
+        this.segmentsPerBatch = Math.max(1, segmentsPerBatch);
+    }
+
+    @Override
+    protected Callable<Batch> readBatch() throws IOException {
+        if (!headerQueued) {
+            headerQueued = true;
+            byte[] header = scheme.header();
+            return () -> new Batch(header, header.length);
+        }
+
+        if (lastQueued) {
+            return null;
+        }
+
+        int segmentSize = scheme.segmentSize();
+        byte[] input = new byte[segmentSize * segmentsPerBatch];
+        int length = plaintext.readNBytes(input, 0, input.length);
+
+        // A short batch ends the file; a full one is last only if nothing follows
+        boolean containsLast = length < input.length;
+        if (!containsLast) {
+            int peek = plaintext.read();
+            if (peek == -1) {
+                containsLast = true;
+            } else {
+                plaintext.unread(peek);
+            }
+        }
+
+        int segments = (int) Math.max(1, (length + segmentSize - 1) / segmentSize);
+        long firstIndex = nextSegmentIndex;
+        nextSegmentIndex += segments;
+        lastQueued = containsLast;
+        boolean last = containsLast;
+
+        return () -> {
+            byte[] output = new byte[length + segments * SegmentedAesGcm.TAG_LENGTH];
+            int written = 0;
+            for (int i = 0; i < segments; i++) {
+                int offset = i * segmentSize;
+                int chunk = Math.min(segmentSize, length - offset);
+                boolean lastSegment = last && i == segments - 1;
+                written += scheme.encryptSegment(cipher(), firstIndex + i, lastSegment,
+                        input, offset, chunk, output, written);
+            }
+            return new Batch(output, written);
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package com.blockvault.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Base class for streams that produce their output one segment at a time.
+ * Subclasses refill {@link #buffer} in {@link #nextSegment()}.
+ */
+abstract class SegmentInputStream extends InputStream {
+
+    protected final InputStream source;
+
+    protected byte[] buffer = new byte[0];
+    protected int position;
+    protected int limit;
+
+    private boolean finished;
+
+    protected SegmentInputStream(InputStream source) {
+        this.source = source;
+    }
+
+    /**
+     * Fill {@link #buffer} with the next segment of output
+     *
+     * @return false once there is no more output
+     */
+    protected abstract boolean nextSegment() throws IOException;
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (position == limit) {
+            if (finished || !nextSegment()) {
+                finished = true;
+                return -1;
+            }
+        }
+
+        int n = Math.min(len, limit - position);
+        System.arraycopy(buffer, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
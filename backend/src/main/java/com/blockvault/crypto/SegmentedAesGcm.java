@@ -0,0 +1,165 @@
+package com.blockvault.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * Segmented AES-GCM container format (version 1).
+ *
+ * <pre>
+ * header  = magic "BVSG" (4) | version (1) | segment size (4, big endian) | nonce prefix (7)
+ * segment = AES-GCM(plaintext segment) + tag (16)
+ * nonce   = nonce prefix (7) | segment index (4, big endian) | last-segment flag (1)
+ * </pre>
+ *
+ * Every segment except the last holds exactly {@code segmentSize} plaintext
+ * bytes, so the ciphertext offset of any plaintext byte can be computed
+ * directly. The header is authenticated as AAD of every segment and the
+ * last-segment flag makes truncation detectable.
+ */
+public final class SegmentedAesGcm {
+
+    public static final int VERSION = 1;
+    public static final int HEADER_LENGTH = 16;
+    public static final int TAG_LENGTH = 16;
+
+    private static final byte[] MAGIC = {'B', 'V', 'S', 'G'};
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    private static final int NONCE_LENGTH = 12;
+    private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private final SecretKey key;
+    private final int segmentSize;
+    private final byte[] header;
+    private final byte[] noncePrefix;
+
+    private SegmentedAesGcm(SecretKey key, int segmentSize, byte[] header, byte[] noncePrefix) {
+        this.key = key;
+        this.segmentSize = segmentSize;
+        this.header = header;
+        this.noncePrefix = noncePrefix;
+    }
+
+    /**
+     * Create a scheme for a new file with a random nonce prefix
+     */
+    public static SegmentedAesGcm create(SecretKey key, int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        new SecureRandom().nextBytes(noncePrefix);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC);
+        header.put((byte) VERSION);
+        header.putInt(segmentSize);
+        header.put(noncePrefix);
+
+        return new SegmentedAesGcm(key, segmentSize, header.array(), noncePrefix);
+    }
+
+    /**
+     * Rebuild the scheme of an existing file from its header
+     */
+    public static SegmentedAesGcm fromHeader(SecretKey key, byte[] header) throws IOException {
+        if (header.length != HEADER_LENGTH || !Arrays.equals(Arrays.copyOf(header, MAGIC.length), MAGIC)) {
+            throw new IOException("Not a segmented encrypted file");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        buffer.position(MAGIC.length);
+        int version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported segmented format version: " + version);
+        }
+
+        int segmentSize = buffer.getInt();
+        if (segmentSize <= 0) {
+            throw new IOException("Invalid segment size: " + segmentSize);
+        }
+
+        byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+        buffer.get(noncePrefix);
+
+        return new SegmentedAesGcm(key, segmentSize, header.clone(), noncePrefix);
+    }
+
+    public static Cipher newCipher() throws GeneralSecurityException {
+        return Cipher.getInstance(CIPHER_TRANSFORMATION);
+    }
+
+    public byte[] header() {
+        return header.clone();
+    }
+
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    public int encryptedSegmentSize() {
+        return segmentSize + TAG_LENGTH;
+    }
+
+    /**
+     * Encrypt one segment into {@code out}; returns the number of bytes written
+     */
+    public int encryptSegment(Cipher cipher, long index, boolean last,
+                              byte[] in, int inOffset, int length, byte[] out, int outOffset)
+            throws GeneralSecurityException {
+        cipher.init(Cipher.ENCRYPT_MODE, key, nonce(index, last));
+        cipher.updateAAD(header);
+        return cipher.doFinal(in, inOffset, length, out, outOffset);
+    }
+
+    /**
+     * Decrypt and verify one segment into {@code out}; returns the plaintext length
+     */
+    public int decryptSegment(Cipher cipher, long index, boolean last,
+                              byte[] in, int inOffset, int length, byte[] out, int outOffset)
+            throws GeneralSecurityException {
+        cipher.init(Cipher.DECRYPT_MODE, key, nonce(index, last));
+        cipher.updateAAD(header);
+        return cipher.doFinal(in, inOffset, length, out, outOffset);
+    }
+
+    private GCMParameterSpec nonce(long index, boolean last) {
+        if (index < 0 || index > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Segment index out of range: " + index);
+        }
+
+        ByteBuffer nonce = ByteBuffer.allocate(NONCE_LENGTH);
+        nonce.put(noncePrefix);
+        nonce.putInt((int) index);
+        nonce.put((byte) (last ? 1 : 0));
+        return new GCMParameterSpec(TAG_LENGTH * 8, nonce.array());
+    }
+
+    /**
+     * Number of segments for a plaintext of the given length (an empty file has one empty segment)
+     */
+    public static long segmentCount(long plaintextLength, int segmentSize) {
+        return Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+    }
+
+    /**
+     * Total container length for a plaintext of the given length
+     */
+    public static long ciphertextLength(long plaintextLength, int segmentSize) {
+        return HEADER_LENGTH + plaintextLength + segmentCount(plaintextLength, segmentSize) * TAG_LENGTH;
+    }
+
+    /**
+     * Offset of a segment within the container
+     */
+    public long ciphertextOffset(long segmentIndex) {
+        return HEADER_LENGTH + segmentIndex * encryptedSegmentSize();
+    }
+}
@@ -0,0 +1,66 @@
+package com.blockvault.crypto;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Decrypts and verifies segments of a {@link SegmentedAesGcm} container.
+ * The source must be positioned at the start of {@code firstSegment}
+ * (the header already consumed or skipped); plaintext is released one
+ * verified segment at a time.
+ */
+public class SegmentedDecryptingInputStream extends SegmentInputStream {
+
+    private final SegmentedAesGcm scheme;
+    private final Cipher cipher;
+    private final byte[] encrypted;
+    private final long endSegment;
+    private final long totalSegments;
+
+    private long segmentIndex;
+
+    /**
+     * @param ciphertext    Container bytes starting at {@code firstSegment}
+     * @param scheme        Scheme rebuilt from the container header
+     * @param firstSegment  Index of the first segment in {@code ciphertext}
+     * @param endSegment    Index after the last segment to decrypt
+     * @param totalSegments Number of segments in the whole container
+     */
+    public SegmentedDecryptingInputStream(InputStream ciphertext, SegmentedAesGcm scheme,
+                                          long firstSegment, long endSegment, long totalSegments)
+            throws GeneralSecurityException {
+        super(ciphertext);
+        this.scheme = scheme;
+        this.cipher = SegmentedAesGcm.newCipher();
+        this.encrypted = new byte[scheme.encryptedSegmentSize()];
+        this.buffer = new byte[scheme.segmentSize()];
+        this.segmentIndex = firstSegment;
+        this.endSegment = endSegment;
+        this.totalSegments = totalSegments;
+    }
+
+    @Override
+    protected boolean nextSegment() throws IOException {
+        if (segmentIndex >= endSegment) {
+            return false;
+        }
+
+        boolean last = segmentIndex == totalSegments - 1;
+        int length = source.readNBytes(encrypted, 0, encrypted.length);
+        if (length < SegmentedAesGcm.TAG_LENGTH || (!last && length < encrypted.length)) {
+            throw new IOException("Encrypted data is truncated at segment " + segmentIndex);
+        }
+
+        try {
+            limit = scheme.decryptSegment(cipher, segmentIndex, last, encrypted, 0, length, buffer, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Segment " + segmentIndex + " failed authentication", e);
+        }
+
+        position = 0;
+        segmentIndex++;
+        return true;
+    }
+}
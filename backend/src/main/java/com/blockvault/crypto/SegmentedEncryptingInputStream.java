@@ -0,0 +1,78 @@
+package com.blockvault.crypto;
+
+import javax.crypto.Cipher;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+/**
+ * Encrypts a plaintext stream into the {@link SegmentedAesGcm} container
+ * format. Memory use is two plaintext segments and one ciphertext segment.
+ */
+public class SegmentedEncryptingInputStream extends SegmentInputStream {
+
+    private final SegmentedAesGcm scheme;
+    private final Cipher cipher;
+
+    private byte[] current;
+    private int currentLength;
+    private byte[] next;
+    private int nextLength;
+
+    private long segmentIndex;
+    private boolean headerWritten;
+    private boolean lastWritten;
+
+    public SegmentedEncryptingInputStream(InputStream plaintext, SegmentedAesGcm scheme)
+            throws GeneralSecurityException {
+        super(plaintext);
+        this.scheme = scheme;
+        this.cipher = SegmentedAesGcm.newCipher();
+        this.current = new byte[scheme.segmentSize()];
+        this.next = new byte[scheme.segmentSize()];
+        this.buffer = new byte[scheme.encryptedSegmentSize()];
+        this.nextLength = -1;
+    }
+
+    @Override
+    protected boolean nextSegment() throws IOException {
+        if (!headerWritten) {
+            byte[] header = scheme.header();
+            System.arraycopy(header, 0, buffer, 0, header.length);
+            position = 0;
+            limit = header.length;
+            headerWritten = true;
+            return true;
+        }
+
+        if (lastWritten) {
+            return false;
+        }
+
+        // Read one segment ahead so the final segment can carry the last flag
+        if (nextLength == -1) {
+            nextLength = source.readNBytes(next, 0, next.length);
+        }
+        byte[] swap = current;
+        current = next;
+        next = swap;
+        currentLength = nextLength;
+
+        boolean last = currentLength < scheme.segmentSize();
+        if (!last) {
+            nextLength = source.readNBytes(next, 0, next.length);
+            last = nextLength == 0;
+        }
+
+        try {
+            limit = scheme.encryptSegment(cipher, segmentIndex, last, current, 0, currentLength, buffer, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Segment encryption failed: " + e.getMessage(), e);
+        }
+
+        position = 0;
+        segmentIndex++;
+        lastWritten = last;
+        return true;
+    }
+}
@@ -0,0 +1,251 @@
+package com.blockvault.erasure;
+
+/**
+ * Systematic Reed-Solomon code over GF(2^8). A stripe of {@code dataShards}
+ * equal-sized shards gets {@code parityShards} parity shards, and any
+ * {@code dataShards} of the total are enough to rebuild the data.
+ *
+ * The encoding matrix is a Vandermonde matrix multiplied by the inverse of
+ * its top square, so data shards are stored unchanged and every square
+ * submatrix stays invertible. Multiplication uses a full 256 x 256 product
+ * table: the inner loops are one table lookup and one XOR per byte.
+ */
+public class ReedSolomon {
+
+    private static final int FIELD_SIZE = 256;
+    private static final int POLYNOMIAL = 0x11D; // x^8 + x^4 + x^3 + x^2 + 1
+
+    private static final byte[] EXP = new byte[FIELD_SIZE * 2];
+    private static final int[] LOG = new int[FIELD_SIZE];
+    private static final byte[][] MUL = new byte[FIELD_SIZE][FIELD_SIZE];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < FIELD_SIZE - 1; i++) {
+            EXP[i] = (byte) x;
+            LOG[x] = i;
+            x <<= 1;
+            if (x >= FIELD_SIZE) {
+                x ^= POLYNOMIAL;
+            }
+        }
+        // Doubled so a sum of two logs needs no modulo
+        for (int i = FIELD_SIZE - 1; i < EXP.length; i++) {
+            EXP[i] = EXP[i - (FIELD_SIZE - 1)];
+        }
+
+        for (int a = 1; a < FIELD_SIZE; a++) {
+            for (int b = 1; b < FIELD_SIZE; b++) {
+                MUL[a][b] = EXP[LOG[a] + LOG[b]];
+            }
+        }
+    }
+
+    private final int dataShards;
+    private final int parityShards;
+    private final byte[][] matrix; // (data + parity) x data; the top is the identity
+    private final byte[][] parityRows;
+
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards <= 0 || parityShards <= 0 || dataShards + parityShards > FIELD_SIZE) {
+            throw new IllegalArgumentException("Shard counts must be positive and total at most " + FIELD_SIZE);
+        }
+
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+
+        int total = dataShards + parityShards;
+        byte[][] vandermonde = new byte[total][dataShards];
+        for (int row = 0; row < total; row++) {
+            for (int col = 0; col < dataShards; col++) {
+                vandermonde[row][col] = power(row, col);
+            }
+        }
+        byte[][] top = new byte[dataShards][];
+        System.arraycopy(vandermonde, 0, top, 0, dataShards);
+        this.matrix = multiply(vandermonde, invert(top));
+
+        this.parityRows = new byte[parityShards][];
+        System.arraycopy(matrix, dataShards, parityRows, 0, parityShards);
+    }
+
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    public int getParityShards() {
+        return parityShards;
+    }
+
+    public int getTotalShards() {
+        return dataShards + parityShards;
+    }
+
+    /**
+     * Compute the parity shards of a stripe
+     *
+     * @param shards Data shards followed by parity shards, each at least
+     *               {@code length} bytes; the parity shards are overwritten
+     * @param length Bytes of each shard to encode
+     */
+    public void encode(byte[][] shards, int length) {
+        checkShards(shards, length);
+
+        byte[][] inputs = new byte[dataShards][];
+        System.arraycopy(shards, 0, inputs, 0, dataShards);
+        byte[][] outputs = new byte[parityShards][];
+        System.arraycopy(shards, dataShards, outputs, 0, parityShards);
+
+        codeShards(parityRows, inputs, outputs, length);
+    }
+
+    /**
+     * Rebuild missing data shards of a stripe from any {@code dataShards}
+     * present shards. Parity shards are not rebuilt.
+     *
+     * @param shards  All shards of the stripe, in order; missing data shards
+     *                must be allocated and are overwritten
+     * @param present Which shards hold valid content
+     * @param length  Bytes of each shard to decode
+     */
+    public void reconstructData(byte[][] shards, boolean[] present, int length) {
+        checkShards(shards, length);
+
+        int[] missing = new int[dataShards];
+        int missingCount = 0;
+        for (int i = 0; i < dataShards; i++) {
+            if (!present[i]) {
+                missing[missingCount++] = i;
+            }
+        }
+        if (missingCount == 0) {
+            return;
+        }
+
+        // Rows of the encoding matrix for the first dataShards present shards
+        byte[][] subMatrix = new byte[dataShards][];
+        byte[][] inputs = new byte[dataShards][];
+        int used = 0;
+        for (int i = 0; i < shards.length && used < dataShards; i++) {
+            if (present[i]) {
+                subMatrix[used] = matrix[i];
+                inputs[used] = shards[i];
+                used++;
+            }
+        }
+        if (used < dataShards) {
+            throw new IllegalArgumentException("Need " + dataShards + " shards to reconstruct, got " + used);
+        }
+
+        // Multiplying the present shards by its inverse gives back the data
+        byte[][] decode = invert(subMatrix);
+        byte[][] rows = new byte[missingCount][];
+        byte[][] outputs = new byte[missingCount][];
+        for (int i = 0; i < missingCount; i++) {
+            rows[i] = decode[missing[i]];
+            outputs[i] = shards[missing[i]];
+        }
+        codeShards(rows, inputs, outputs, length);
+    }
+
+    private void checkShards(byte[][] shards, int length) {
+        if (shards.length != getTotalShards()) {
+            throw new IllegalArgumentException("Expected " + getTotalShards() + " shards, got " + shards.length);
+        }
+        for (byte[] shard : shards) {
+            if (shard == null || shard.length < length) {
+                throw new IllegalArgumentException("Every shard must hold at least " + length + " bytes");
+            }
+        }
+    }
+
+    // outputs[r] = sum over c of rows[r][c] * inputs[c], byte by byte
+    private static void codeShards(byte[][] rows, byte[][] inputs, byte[][] outputs, int length) {
+        for (int r = 0; r < outputs.length; r++) {
+            byte[] output = outputs[r];
+            byte[] row = rows[r];
+
+            byte[] table = MUL[row[0] & 0xFF];
+            byte[] input = inputs[0];
+            for (int i = 0; i < length; i++) {
+                output[i] = table[input[i] & 0xFF];
+            }
+
+            for (int c = 1; c < inputs.length; c++) {
+                table = MUL[row[c] & 0xFF];
+                input = inputs[c];
+                for (int i = 0; i < length; i++) {
+                    output[i] ^= table[input[i] & 0xFF];
+                }
+            }
+        }
+    }
+
+    private static byte power(int base, int exponent) {
+        if (exponent == 0) {
+            return 1;
+        }
+        if (base == 0) {
+            return 0;
+        }
+        return EXP[(LOG[base] * exponent) % (FIELD_SIZE - 1)];
+    }
+
+    private static byte[][] multiply(byte[][] left, byte[][] right) {
+        byte[][] result = new byte[left.length][right[0].length];
+        for (int r = 0; r < left.length; r++) {
+            for (int c = 0; c < right[0].length; c++) {
+                int value = 0;
+                for (int i = 0; i < right.length; i++) {
+                    value ^= MUL[left[r][i] & 0xFF][right[i][c] & 0xFF];
+                }
+                result[r][c] = (byte) value;
+            }
+        }
+        return result;
+    }
+
+    // Gauss-Jordan elimination; addition and subtraction are both XOR
+    private static byte[][] invert(byte[][] square) {
+        int n = square.length;
+        byte[][] work = new byte[n][2 * n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(square[r], 0, work[r], 0, n);
+            work[r][n + r] = 1;
+        }
+
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            while (pivot < n && work[pivot][col] == 0) {
+                pivot++;
+            }
+            if (pivot == n) {
+                throw new IllegalArgumentException("Matrix is singular");
+            }
+            byte[] swap = work[col];
+            work[col] = work[pivot];
+            work[pivot] = swap;
+
+            byte[] scale = MUL[EXP[(FIELD_SIZE - 1) - LOG[work[col][col] & 0xFF]] & 0xFF];
+            for (int c = 0; c < 2 * n; c++) {
+                work[col][c] = scale[work[col][c] & 0xFF];
+            }
+
+            for (int r = 0; r < n; r++) {
+                int factor = work[r][col] & 0xFF;
+                if (r != col && factor != 0) {
+                    byte[] times = MUL[factor];
+                    for (int c = 0; c < 2 * n; c++) {
+                        work[r][c] ^= times[work[col][c] & 0xFF];
+                    }
+                }
+            }
+        }
+
+        byte[][] inverse = new byte[n][n];
+        for (int r = 0; r < n; r++) {
+            System.arraycopy(work[r], n, inverse[r], 0, n);
+        }
+        return inverse;
+    }
+}
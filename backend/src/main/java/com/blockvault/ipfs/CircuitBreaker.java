@@ -0,0 +1,81 @@
+package com.blockvault.ipfs;
+
+/**
+ * Consecutive-failure circuit breaker for one node. After
+ * {@code failureThreshold} failures in a row the circuit opens and the node
+ * is skipped; once {@code openMillis} have passed, a single trial call is
+ * let through and its outcome decides whether the circuit closes or
+ * reopens. A trial whose outcome is never recorded (a cancelled hedge, a
+ * request the daemon rejected) gives way to a new one after another
+ * {@code openMillis}.
+ */
+public class CircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openMillis;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long trialStartedAt;
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMillis = openMillis;
+    }
+
+    /**
+     * Whether a call could be sent to the node now. Does not change the
+     * state, so it is safe to use when ranking candidates.
+     */
+    public synchronized boolean isCallPermitted() {
+        long now = System.currentTimeMillis();
+        return switch (state) {
+            case CLOSED -> true;
+            case OPEN -> now - openedAt >= openMillis;
+            case HALF_OPEN -> now - trialStartedAt >= openMillis;
+        };
+    }
+
+    /**
+     * Take permission to send a call, right before sending it. Once the
+     * circuit has been open long enough, the first caller moves it to
+     * half-open and makes the trial call; everyone else is refused until
+     * the trial's outcome is recorded.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (!isCallPermitted()) {
+            return false;
+        }
+        state = State.HALF_OPEN;
+        trialStartedAt = System.currentTimeMillis();
+        return true;
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        state = State.CLOSED;
+    }
+
+    /**
+     * @return true if this failure opened the circuit
+     */
+    public synchronized boolean recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+}
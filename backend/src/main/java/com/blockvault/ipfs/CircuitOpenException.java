@@ -0,0 +1,14 @@
+package com.blockvault.ipfs;
+
+import java.io.IOException;
+
+/**
+ * The call was not sent because the node's circuit is open, or its single
+ * trial call is already in flight. Says nothing new about the node's health.
+ */
+public class CircuitOpenException extends IOException {
+
+    public CircuitOpenException(String message) {
+        super(message);
+    }
+}
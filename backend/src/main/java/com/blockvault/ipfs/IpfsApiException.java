@@ -0,0 +1,21 @@
+package com.blockvault.ipfs;
+
+import java.io.IOException;
+
+/**
+ * The daemon answered, but rejected the request. Unlike connection errors
+ * and timeouts this says nothing about the node's health.
+ */
+public class IpfsApiException extends IOException {
+
+    private final int statusCode;
+
+    public IpfsApiException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
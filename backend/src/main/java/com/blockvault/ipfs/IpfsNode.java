@@ -0,0 +1,307 @@
+package com.blockvault.ipfs;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One IPFS daemon, reached through its HTTP RPC API (/api/v0). Each node
+ * has its own HTTP client and therefore its own connection pool, and
+ * counts the requests it currently has in flight.
+ */
+public class IpfsNode {
+
+    private final int id;
+    private final String endpoint;
+    private final String apiUrl;
+    private final Duration timeout;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyTracker latency;
+
+    private volatile boolean healthy;
+    private volatile String version;
+
+    public IpfsNode(int id, String endpoint, Duration timeout, ObjectMapper objectMapper,
+                    CircuitBreaker circuitBreaker, LatencyTracker latency) {
+        this.id = id;
+        this.endpoint = endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+        this.apiUrl = this.endpoint + "/api/v0/";
+        this.timeout = timeout;
+        this.objectMapper = objectMapper;
+        this.circuitBreaker = circuitBreaker;
+        this.latency = latency;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    /**
+     * Add content, streamed to the daemon with chunked transfer encoding.
+     * Content is added unpinned: the pin queue is the only thing that pins,
+     * so content whose file is never recorded is left to the daemon's
+     * garbage collector.
+     *
+     * @param onlyHash Compute the CID without storing anything
+     * @return CID of the content
+     */
+    public String add(InputStream data, String filename, boolean onlyHash) throws IOException {
+        String boundary = "BlockVault" + UUID.randomUUID().toString().replace("-", "");
+        String name = URLEncoder.encode(filename != null ? filename : "file", StandardCharsets.UTF_8);
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"" + name + "\"\r\n"
+                + "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(apiUrl
+                        + "add?stream-channels=true&progress=false&pin=false" + (onlyHash ? "&only-hash=true" : "")))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                // No request timeout: the response only starts once the whole upload has been sent
+                .POST(HttpRequest.BodyPublishers.ofInputStream(() -> new SequenceInputStream(
+                        Collections.enumeration(List.of(
+                                new ByteArrayInputStream(head), data, new ByteArrayInputStream(tail))))))
+                .build();
+
+        String response = callForString(request);
+
+        // One JSON object per added entry; the last one is the root
+        String last = null;
+        for (String line : response.split("\n")) {
+            if (!line.isBlank()) {
+                last = line;
+            }
+        }
+        JsonNode result = last != null ? objectMapper.readTree(last) : null;
+        if (result == null || !result.hasNonNull("Hash")) {
+            throw new IOException("Unexpected add response from " + endpoint + ": " + response);
+        }
+        return result.get("Hash").asText();
+    }
+
+    /**
+     * Start streaming content without blocking; the future completes once
+     * the response headers arrive. Cancelling it aborts the request, and the
+     * stream must be closed to release the request slot.
+     */
+    public CompletableFuture<InputStream> catAsync(String cid) {
+        return callForStreamAsync("cat?arg=" + encode(cid));
+    }
+
+    /**
+     * Start streaming {@code length} bytes of content starting at {@code offset}
+     */
+    public CompletableFuture<InputStream> catAsync(String cid, long offset, long length) {
+        return callForStreamAsync("cat?arg=" + encode(cid) + "&offset=" + offset + "&length=" + length);
+    }
+
+    /**
+     * Size of content held by this node. Runs offline, so content the node
+     * does not have fails at once instead of being searched for.
+     */
+    public long size(String cid) throws IOException {
+        JsonNode result = objectMapper.readTree(callForString(post("files/stat?offline=true&arg="
+                + encode("/ipfs/" + cid))));
+        if (!result.hasNonNull("Size")) {
+            throw new IOException("Unexpected stat response from " + endpoint + ": " + result);
+        }
+        return result.get("Size").asLong();
+    }
+
+    public void pin(List<String> cids) throws IOException {
+        callForString(post("pin/add?recursive=true" + args(cids)));
+    }
+
+    public void unpin(List<String> cids) throws IOException {
+        callForString(post("pin/rm?recursive=true" + args(cids)));
+    }
+
+    /**
+     * Health probe: ask the daemon for its version and record the outcome
+     */
+    public void probe(Duration probeTimeout) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(apiUrl + "version"))
+                    .timeout(probeTimeout)
+                    .POST(HttpRequest.BodyPublishers.noBody())
+                    .build();
+            // Probes bypass the circuit breaker; they decide health, not the breaker
+            JsonNode result = objectMapper.readTree(send(request));
+            version = result.path("Version").asText(null);
+            healthy = true;
+        } catch (IOException e) {
+            healthy = false;
+        }
+    }
+
+    public void markUnhealthy() {
+        healthy = false;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Recent time-to-first-byte of reads from this node
+     */
+    public LatencyTracker getLatency() {
+        return latency;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint;
+    }
+
+    private HttpRequest post(String command) {
+        return HttpRequest.newBuilder(URI.create(apiUrl + command))
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+    }
+
+    private String callForString(HttpRequest request) throws IOException {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new CircuitOpenException("Circuit open for IPFS node " + endpoint);
+        }
+        return send(request);
+    }
+
+    private String send(HttpRequest request) throws IOException {
+        outstanding.incrementAndGet();
+        try {
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IpfsApiException("IPFS node " + endpoint + " returned " + response.statusCode()
+                        + ": " + response.body(), response.statusCode());
+            }
+            return response.body();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while calling IPFS node " + endpoint);
+        } finally {
+            outstanding.decrementAndGet();
+        }
+    }
+
+    private CompletableFuture<InputStream> callForStreamAsync(String command) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(new CircuitOpenException("Circuit open for IPFS node " + endpoint));
+        }
+        outstanding.incrementAndGet();
+        CompletableFuture<HttpResponse<InputStream>> response = httpClient.sendAsync(post(command),
+                HttpResponse.BodyHandlers.ofInputStream());
+
+        CompletableFuture<InputStream> result = response.thenApply(r -> {
+            if (r.statusCode() != 200) {
+                String error;
+                try (InputStream body = r.body()) {
+                    error = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                } catch (IOException e) {
+                    error = e.getMessage();
+                }
+                throw new CompletionException(new IpfsApiException("IPFS node " + endpoint + " returned "
+                        + r.statusCode() + ": " + error, r.statusCode()));
+            }
+            return new ReleasingInputStream(r.body());
+        });
+
+        result.whenComplete((stream, error) -> {
+            if (error != null) {
+                outstanding.decrementAndGet();
+            }
+            if (error instanceof CancellationException) {
+                response.cancel(true);
+            }
+        });
+        // A response that arrives after cancellation is never handed out; close it here
+        response.thenAccept(r -> {
+            if (result.isCancelled()) {
+                try {
+                    r.body().close();
+                } catch (IOException ignored) {
+                    // Nothing left to release
+                }
+            }
+        });
+        return result;
+    }
+
+    private static String args(List<String> cids) {
+        StringBuilder args = new StringBuilder();
+        for (String cid : cids) {
+            args.append("&arg=").append(encode(cid));
+        }
+        return args.toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Response body that gives back the request slot when closed
+     */
+    private class ReleasingInputStream extends FilterInputStream {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        ReleasingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (released.compareAndSet(false, true)) {
+                    outstanding.decrementAndGet();
+                }
+            }
+        }
+    }
+}
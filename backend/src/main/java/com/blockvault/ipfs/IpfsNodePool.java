@@ -0,0 +1,251 @@
+package com.blockvault.ipfs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The configured IPFS daemons. Nodes are probed periodically; writes go to
+ * the healthy node with the fewest requests in flight, and reads prefer
+ * nodes known to hold the CID.
+ */
+@Component
+@ConditionalOnProperty(name = "blockvault.storage.backend", havingValue = "ipfs", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class IpfsNodePool {
+
+    private final ObjectMapper objectMapper;
+
+    @Value("${ipfs.host}")
+    private String ipfsHost;
+
+    @Value("${ipfs.port}")
+    private int ipfsPort;
+
+    @Value("${ipfs.protocol}")
+    private String ipfsProtocol;
+
+    @Value("${ipfs.timeout}")
+    private long ipfsTimeout;
+
+    @Value("${ipfs.nodes:}")
+    private List<String> endpoints;
+
+    @Value("${ipfs.health-check-timeout-ms:2000}")
+    private long healthCheckTimeout;
+
+    @Value("${ipfs.location-cache-size:100000}")
+    private long locationCacheSize;
+
+    @Value("${ipfs.circuit-breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${ipfs.circuit-breaker.open-duration-ms:30000}")
+    private long breakerOpenMillis;
+
+    @Value("${ipfs.hedge.window-size:512}")
+    private int latencyWindowSize;
+
+    @Value("${ipfs.hedge.percentile:0.95}")
+    private double hedgePercentile;
+
+    private List<IpfsNode> nodes;
+
+    // CID -> ids of nodes that added, pinned or served it
+    private Cache<String, Set<Integer>> locations;
+
+    // Node id -> when a probe first found it down
+    private final Map<Integer, Instant> downSince = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        List<String> configured = endpoints.stream()
+                .map(String::trim)
+                .filter(endpoint -> !endpoint.isEmpty())
+                .toList();
+        if (configured.isEmpty()) {
+            configured = List.of(ipfsProtocol + "://" + ipfsHost + ":" + ipfsPort);
+        }
+
+        List<IpfsNode> created = new ArrayList<>();
+        for (String endpoint : configured) {
+            created.add(new IpfsNode(created.size(), endpoint, Duration.ofMillis(ipfsTimeout), objectMapper,
+                    new CircuitBreaker(breakerFailureThreshold, breakerOpenMillis),
+                    new LatencyTracker(latencyWindowSize, hedgePercentile)));
+        }
+        nodes = List.copyOf(created);
+        locations = Caffeine.newBuilder().maximumSize(locationCacheSize).build();
+
+        probeNodes();
+        for (IpfsNode node : nodes) {
+            if (!node.isHealthy()) {
+                log.warn("IPFS node at {} is not reachable; it is retried by the health check", node.getEndpoint());
+            }
+        }
+    }
+
+    /**
+     * Probe every node and log changes in health
+     */
+    @Scheduled(fixedDelayString = "${ipfs.health-check-interval-ms:10000}")
+    public void probeNodes() {
+        for (IpfsNode node : nodes) {
+            boolean wasHealthy = node.isHealthy();
+            node.probe(Duration.ofMillis(healthCheckTimeout));
+
+            if (node.isHealthy()) {
+                downSince.remove(node.getId());
+            } else {
+                downSince.putIfAbsent(node.getId(), Instant.now());
+            }
+            if (wasHealthy && !node.isHealthy()) {
+                log.warn("IPFS node {} is down", node.getEndpoint());
+            } else if (!wasHealthy && node.isHealthy()) {
+                log.info("Connected to IPFS node at {} (version {})", node.getEndpoint(), node.getVersion());
+            }
+        }
+    }
+
+    public List<IpfsNode> getNodes() {
+        return nodes;
+    }
+
+    public boolean hasHealthyNode() {
+        return nodes.stream().anyMatch(IpfsNode::isHealthy);
+    }
+
+    public long countHealthyNodes() {
+        return nodes.stream().filter(IpfsNode::isHealthy).count();
+    }
+
+    public Optional<IpfsNode> findByEndpoint(String endpoint) {
+        return nodes.stream().filter(node -> node.getEndpoint().equals(endpoint)).findFirst();
+    }
+
+    /**
+     * Whether health probes have found the node down for longer than
+     * {@code after}
+     */
+    public boolean isDownFor(IpfsNode node, Duration after) {
+        Instant since = downSince.get(node.getId());
+        return since != null && since.plus(after).isBefore(Instant.now());
+    }
+
+    /**
+     * Nodes to try for a write, best first: healthy nodes by requests in
+     * flight, then unhealthy ones as a last resort. Nodes whose circuit is
+     * open are left out; listing them does not take the trial call of a
+     * half-open circuit, which goes to whichever call reaches the node first.
+     */
+    public List<IpfsNode> candidatesForWrite() {
+        return nodes.stream()
+                .filter(node -> node.getCircuitBreaker().isCallPermitted())
+                .sorted(Comparator.comparing((IpfsNode node) -> !node.isHealthy())
+                        .thenComparingInt(IpfsNode::getOutstanding))
+                .toList();
+    }
+
+    public IpfsNode selectForWrite() throws IOException {
+        List<IpfsNode> candidates = candidatesForWrite();
+        if (candidates.isEmpty()) {
+            throw new IOException("No IPFS node available");
+        }
+        return candidates.get(0);
+    }
+
+    /**
+     * Nodes to try for a read, best first: healthy nodes known to hold the
+     * CID, other healthy nodes, then unhealthy ones; each group ordered by
+     * requests in flight. Nodes whose circuit is open are left out.
+     */
+    public List<IpfsNode> candidatesForRead(String cid) {
+        Set<Integer> holders = knownHolders(cid);
+        return nodes.stream()
+                .filter(node -> node.getCircuitBreaker().isCallPermitted())
+                .sorted(Comparator.comparing((IpfsNode node) -> !node.isHealthy())
+                        .thenComparing(node -> !holders.contains(node.getId()))
+                        .thenComparingInt(IpfsNode::getOutstanding))
+                .toList();
+    }
+
+    /**
+     * Nodes known to hold the CID, or all nodes when nothing is known
+     */
+    public List<IpfsNode> locate(String cid) {
+        Set<Integer> holders = knownHolders(cid);
+        if (holders.isEmpty()) {
+            return nodes;
+        }
+        return nodes.stream().filter(node -> holders.contains(node.getId())).toList();
+    }
+
+    public void recordLocation(String cid, IpfsNode node) {
+        locations.get(cid, key -> ConcurrentHashMap.newKeySet()).add(node.getId());
+    }
+
+    public void forgetLocation(String cid, IpfsNode node) {
+        Set<Integer> holders = locations.getIfPresent(cid);
+        if (holders != null) {
+            holders.remove(node.getId());
+        }
+    }
+
+    public void reportSuccess(IpfsNode node) {
+        node.getCircuitBreaker().recordSuccess();
+    }
+
+    /**
+     * Record a failed call. Errors reported by the daemon itself, and calls
+     * the circuit breaker refused, leave the node alone; connection failures
+     * and timeouts take it out of rotation until the next successful probe
+     * and count towards its circuit breaker.
+     */
+    public void reportFailure(IpfsNode node, IOException error) {
+        if (error instanceof IpfsApiException || error instanceof CircuitOpenException) {
+            return;
+        }
+        if (node.isHealthy()) {
+            node.markUnhealthy();
+            log.warn("IPFS node {} marked down: {}", node.getEndpoint(), error.getMessage());
+        }
+        recordBreakerFailure(node);
+    }
+
+    /**
+     * Record a read that was overtaken by a hedge started after it. Only a
+     * run of these opens the circuit, which sheds a stalled node.
+     */
+    public void reportSlow(IpfsNode node) {
+        recordBreakerFailure(node);
+    }
+
+    private void recordBreakerFailure(IpfsNode node) {
+        if (node.getCircuitBreaker().recordFailure()) {
+            log.warn("Circuit opened for IPFS node {}", node.getEndpoint());
+        }
+    }
+
+    private Set<Integer> knownHolders(String cid) {
+        Set<Integer> holders = locations.getIfPresent(cid);
+        return holders != null ? holders : Set.of();
+    }
+}
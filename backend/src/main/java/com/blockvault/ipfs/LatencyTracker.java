@@ -0,0 +1,52 @@
+package com.blockvault.ipfs;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of recent latencies, used to derive percentile-based
+ * hedging delays. The percentile is recomputed every few samples rather
+ * than on every read.
+ */
+public class LatencyTracker {
+
+    private static final int RECOMPUTE_EVERY = 32;
+
+    private final long[] samples;
+    private int next;
+    private int count;
+    private int sinceRecompute;
+    private final double percentile;
+    private long cachedPercentile = -1;
+
+    public LatencyTracker(int windowSize, double percentile) {
+        this.samples = new long[Math.max(1, windowSize)];
+        this.percentile = percentile;
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        if (++sinceRecompute >= RECOMPUTE_EVERY) {
+            cachedPercentile = -1;
+        }
+    }
+
+    /**
+     * The configured percentile of the window, or {@code fallback} until
+     * enough samples have been seen
+     */
+    public synchronized long percentile(long fallback) {
+        if (count < RECOMPUTE_EVERY) {
+            return fallback;
+        }
+        if (cachedPercentile < 0) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.min(count - 1, Math.ceil(percentile * count) - 1);
+            cachedPercentile = sorted[Math.max(0, index)];
+            sinceRecompute = 0;
+        }
+        return cachedPercentile;
+    }
+}
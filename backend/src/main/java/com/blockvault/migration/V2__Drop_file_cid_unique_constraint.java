@@ -0,0 +1,49 @@
+package com.blockvault.migration;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.stereotype.Component;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drop the unique constraint that older schemas have on file_metadata.cid,
+ * which stopped records from sharing content. Hibernate generated its name,
+ * so it is looked up rather than named. Written in Java because H2 has no
+ * procedural SQL to do the lookup in a migration script.
+ */
+@Component
+public class V2__Drop_file_cid_unique_constraint extends BaseJavaMigration {
+
+    private static final String FIND_CONSTRAINTS = "SELECT tc.constraint_name"
+            + " FROM information_schema.table_constraints tc"
+            + " JOIN information_schema.key_column_usage kcu ON kcu.constraint_name = tc.constraint_name"
+            + " AND kcu.table_schema = tc.table_schema AND kcu.table_name = tc.table_name"
+            + " WHERE tc.table_schema = CURRENT_SCHEMA AND LOWER(tc.table_name) = 'file_metadata'"
+            + " AND tc.constraint_type = 'UNIQUE'"
+            + " GROUP BY tc.constraint_name"
+            + " HAVING COUNT(*) = 1 AND MAX(LOWER(kcu.column_name)) = 'cid'";
+
+    @Override
+    public void migrate(Context context) throws Exception {
+        Connection connection = context.getConnection();
+
+        List<String> constraints = new ArrayList<>();
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery(FIND_CONSTRAINTS)) {
+            while (rows.next()) {
+                constraints.add(rows.getString(1));
+            }
+        }
+
+        for (String constraint : constraints) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ALTER TABLE file_metadata DROP CONSTRAINT \"" + constraint + "\"");
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Number of file versions referencing a CID. Content is only unpinned
+ * once the count drops to zero.
+ */
+@Entity
+@Table(name = "cid_references")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CidReference {
+
+    @Id
+    private String cid; // IPFS Content Identifier
+
+    @Column(nullable = false)
+    private Long refCount = 0L;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,61 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * One copy of a CID on one IPFS node. PENDING rows are pins the
+ * replication manager still has to make; LOST rows belong to a node that
+ * has been down for too long and no longer count towards the replication
+ * factor.
+ */
+@Entity
+@Table(name = "cid_replicas", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_cid_replicas_cid_node", columnNames = {"cid", "nodeEndpoint"})
+}, indexes = {
+        @Index(name = "idx_cid_replicas_due", columnList = "status, nextAttemptAt"),
+        @Index(name = "idx_cid_replicas_node", columnList = "nodeEndpoint, status")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CidReplica {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_PINNED = "PINNED";
+    public static final String STATUS_LOST = "LOST";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String cid; // IPFS Content Identifier
+
+    @Column(nullable = false)
+    private String nodeEndpoint; // API endpoint of the node holding the copy
+
+    @Column(nullable = false)
+    private String status = STATUS_PENDING;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    private LocalDateTime nextAttemptAt; // When a PENDING pin is next tried
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
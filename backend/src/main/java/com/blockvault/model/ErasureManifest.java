@@ -0,0 +1,45 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Layout of an erasure-coded file: its content is split into stripes of
+ * {@code dataShards} shards of up to {@code shardSize} bytes, each stripe
+ * with {@code parityShards} parity shards. The shards are listed in
+ * {@link ErasureShard}.
+ */
+@Entity
+@Table(name = "erasure_manifests")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ErasureManifest {
+
+    @Id
+    private String manifestCid; // CID of the manifest document, also FileMetadata.cid
+
+    @Column(nullable = false)
+    private Integer dataShards;
+
+    @Column(nullable = false)
+    private Integer parityShards;
+
+    @Column(nullable = false)
+    private Integer shardSize; // Shard size of full stripes; the last stripe's shards may be shorter
+
+    @Column(nullable = false)
+    private Long size; // Bytes of stored content
+
+    @Column(nullable = false)
+    private Integer stripes;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,37 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One data or parity shard of an erasure-coded file. Shards
+ * {@code 0..dataShards-1} of a stripe hold the content itself.
+ */
+@Entity
+@Table(name = "erasure_shards", indexes = {
+        @Index(name = "idx_erasure_shards_manifest", columnList = "manifestCid, stripeIndex, shardIndex"),
+        @Index(name = "idx_erasure_shards_cid", columnList = "shardCid")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ErasureShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String manifestCid;
+
+    @Column(nullable = false)
+    private Integer stripeIndex;
+
+    @Column(nullable = false)
+    private Integer shardIndex;
+
+    @Column(nullable = false)
+    private String shardCid;
+}
@@ -0,0 +1,42 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One entry of a chunk manifest: the chunk at {@code chunkIndex} of the
+ * file stored under {@code manifestCid}.
+ */
+@Entity
+@Table(name = "file_chunks", indexes = {
+        @Index(name = "idx_file_chunks_manifest", columnList = "manifestCid, chunkIndex")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class FileChunk {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String manifestCid; // CID of the manifest, also FileMetadata.cid
+
+    @Column(nullable = false)
+    private Integer chunkIndex;
+
+    @Column(nullable = false, length = 64)
+    private String chunkHash;
+
+    @Column(nullable = false)
+    private String chunkCid;
+
+    @Column(nullable = false)
+    private Long chunkOffset; // Offset of the chunk within the file
+
+    @Column(nullable = false)
+    private Integer size;
+}
@@ -11,12 +11,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "file_metadata")
+@Table(name = "file_metadata") // Indexes are created by the migrations in db/migration
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class FileMetadata {
 
+    public static final String PIN_PENDING = "PENDING";
+    public static final String PIN_PINNED = "PINNED";
+    public static final String PIN_FAILED = "FAILED";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -24,8 +28,8 @@ public class FileMetadata {
     @Column(nullable = false)
     private String filename;
 
-    @Column(nullable = false, unique = true)
-    private String cid; // IPFS Content Identifier
+    @Column(nullable = false)
+    private String cid; // IPFS Content Identifier (several records may share one)
 
     @Column(nullable = false)
     private Long fileSize;
@@ -35,11 +39,22 @@ public class FileMetadata {
 
     private String contentType; // MIME type
 
+    @Column(length = 64)
+    private String contentHash; // SHA-256 of the plaintext (hex), used to skip redundant uploads
+
     @Column(nullable = false)
     private Boolean encrypted = false;
 
     private String encryptionKeyHash; // Hash of the encryption key (not the key itself)
 
+    private String encryptionFormat; // Ciphertext layout; null on older encrypted files (single AES-GCM blob)
+
+    private String storageLayout; // "CHUNKED" or "ERASURE" when the CID is a chunk or shard manifest; null for a single object
+
+    private String compressionCodec; // "DEFLATE" when the content was compressed before encryption and storage; null otherwise
+
+    private Long compressedSize; // Length of the compressed content, which segmented encryption works in; null when uncompressed
+
     @CreationTimestamp
     @Column(updatable = false)
     private LocalDateTime uploadedAt;
@@ -53,6 +68,8 @@ public class FileMetadata {
     @Column(nullable = false)
     private Boolean pinned = true;
 
+    private String pinStatus; // PENDING until the pin queue confirms the pin; null on older files (pinned)
+
     private Integer replicationCount = 1;
 
     @OneToMany(mappedBy = "fileMetadata", cascade = CascadeType.ALL, orphanRemoval = true)
@@ -67,8 +84,11 @@ public class FileMetadata {
     }
 
     public String getFileIcon() {
-        String ext = getFileExtension().toLowerCase();
-        return switch (ext) {
+        return iconFor(getFileExtension());
+    }
+
+    public static String iconFor(String extension) {
+        return switch (extension.toLowerCase()) {
             case "pdf" -> "📘";
             case "doc", "docx" -> "📜";
             case "mp4", "avi", "mov", "mkv" -> "🎬";
@@ -83,6 +103,10 @@ public class FileMetadata {
     }
 
     public String getFileExtension() {
+        return extensionOf(filename);
+    }
+
+    public static String extensionOf(String filename) {
         int lastDot = filename.lastIndexOf('.');
         return lastDot > 0 ? filename.substring(lastDot + 1) : "unknown";
     }
@@ -9,7 +9,7 @@ import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "file_versions")
+@Table(name = "file_versions") // Indexes are created by the migrations in db/migration
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
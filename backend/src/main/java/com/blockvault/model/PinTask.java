@@ -0,0 +1,50 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A CID waiting to be pinned by the background pin queue. Rows are removed
+ * once the pin succeeds; failed rows are kept for inspection.
+ */
+@Entity
+@Table(name = "pin_tasks", indexes = {
+        @Index(name = "idx_pin_tasks_due", columnList = "status, nextAttemptAt"),
+        @Index(name = "idx_pin_tasks_cid", columnList = "cid")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PinTask {
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_FAILED = "FAILED";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private String cid; // IPFS Content Identifier
+
+    @Column(nullable = false)
+    private String status = STATUS_PENDING;
+
+    @Column(nullable = false)
+    private Integer attempts = 0;
+
+    @Column(nullable = false)
+    private LocalDateTime nextAttemptAt; // Also pushed forward while a worker holds the task
+
+    @Column(length = 1000)
+    private String lastError;
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,38 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * A content-defined chunk held in IPFS, shared by every chunk manifest
+ * that contains the same bytes.
+ */
+@Entity
+@Table(name = "stored_chunks")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StoredChunk {
+
+    @Id
+    @Column(length = 64)
+    private String hash; // SHA-256 of the chunk (hex)
+
+    @Column(nullable = false)
+    private String cid; // IPFS CID of the chunk
+
+    @Column(nullable = false)
+    private Integer size;
+
+    @Column(nullable = false)
+    private Long refCount = 0L; // Manifest entries referencing this chunk
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,59 @@
+package com.blockvault.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "upload_sessions")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class UploadSession {
+
+    public static final String STATUS_ACTIVE = "ACTIVE";
+    public static final String STATUS_COMPLETING = "COMPLETING"; // Being stored; no more chunks are accepted
+    public static final String STATUS_COMPLETED = "COMPLETED";
+    public static final String STATUS_ABORTED = "ABORTED";
+
+    @Id
+    @Column(length = 36)
+    private String id; // Random UUID handed to the client
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "user_id", nullable = false)
+    private User user;
+
+    @Column(nullable = false)
+    private String filename;
+
+    private String contentType; // MIME type
+
+    @Column(nullable = false)
+    private Long totalSize;
+
+    @Column(nullable = false)
+    private Long committedOffset = 0L; // Bytes durably staged so far
+
+    @Column(nullable = false, length = 16)
+    private String status = STATUS_ACTIVE;
+
+    private Long fileMetadataId; // Set once the upload is finalized
+
+    @Column(length = 36)
+    private String writerId; // Request currently writing a chunk, if any
+
+    private LocalDateTime claimedAt; // When the writer last renewed its claim
+
+    @CreationTimestamp
+    @Column(updatable = false)
+    private LocalDateTime createdAt;
+
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+}
@@ -57,11 +57,4 @@ public class User {
     public boolean hasStorageSpace(long fileSize) {
         return (usedStorage + fileSize) <= storageQuota;
     }
-
-    public void updateStorageUsage(long delta) {
-        this.usedStorage += delta;
-        if (this.usedStorage < 0) {
-            this.usedStorage = 0L;
-        }
-    }
 }
@@ -0,0 +1,31 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.CidReference;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface CidReferenceRepository extends JpaRepository<CidReference, String> {
+    
+    @Modifying
+    @Query("UPDATE CidReference r SET r.refCount = r.refCount + :delta WHERE r.cid = :cid")
+    int adjustRefCount(String cid, long delta);
+    
+    @Query("SELECT r.refCount FROM CidReference r WHERE r.cid = :cid")
+    Optional<Long> findRefCount(String cid);
+    
+    @Query("SELECT r.cid FROM CidReference r WHERE r.cid IN :cids AND r.refCount <= 0")
+    List<String> findUnreferenced(Collection<String> cids);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM CidReference r WHERE r.cid = :cid")
+    Optional<CidReference> findForUpdate(String cid);
+}
@@ -0,0 +1,44 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.CidReplica;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface CidReplicaRepository extends JpaRepository<CidReplica, Long> {
+    
+    List<CidReplica> findByCidIn(Collection<String> cids);
+    
+    List<CidReplica> findByStatusAndNextAttemptAtLessThanEqualOrderById(String status, LocalDateTime now,
+                                                                       Pageable pageable);
+    
+    // CIDs with fewer live (pinned or pending) copies than the target; erasure shards rely on parity instead
+    @Query("SELECT r.cid FROM CidReplica r " +
+           "WHERE NOT EXISTS (SELECT s.id FROM ErasureShard s WHERE s.shardCid = r.cid) GROUP BY r.cid " +
+           "HAVING SUM(CASE WHEN r.status <> 'LOST' THEN 1 ELSE 0 END) < :factor")
+    List<String> findUnderReplicated(long factor, Pageable pageable);
+    
+    @Query("SELECT r.cid, COUNT(r) FROM CidReplica r WHERE r.cid IN :cids AND r.status = 'PINNED' GROUP BY r.cid")
+    List<Object[]> countPinnedByCid(Collection<String> cids);
+    
+    @Query("SELECT COUNT(r) FROM CidReplica r WHERE r.cid = :cid AND r.status = 'PINNED'")
+    long countPinned(String cid);
+    
+    @Query("SELECT DISTINCT r.cid FROM CidReplica r WHERE r.nodeEndpoint = :nodeEndpoint AND r.status = :status")
+    List<String> findCidsByNodeAndStatus(String nodeEndpoint, String status);
+    
+    @Modifying
+    @Query("UPDATE CidReplica r SET r.status = :newStatus WHERE r.nodeEndpoint = :nodeEndpoint AND r.status = :status")
+    int updateStatusByNode(String nodeEndpoint, String status, String newStatus);
+    
+    @Modifying
+    @Query("DELETE FROM CidReplica r WHERE r.cid IN :cids")
+    int deleteByCidIn(Collection<String> cids);
+}
@@ -0,0 +1,9 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.ErasureManifest;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ErasureManifestRepository extends JpaRepository<ErasureManifest, String> {
+}
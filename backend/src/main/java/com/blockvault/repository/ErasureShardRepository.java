@@ -0,0 +1,24 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.ErasureShard;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface ErasureShardRepository extends JpaRepository<ErasureShard, Long> {
+    
+    List<ErasureShard> findByManifestCidOrderByStripeIndexAscShardIndexAsc(String manifestCid);
+    
+    List<ErasureShard> findByManifestCidAndStripeIndexBetweenOrderByStripeIndexAscShardIndexAsc(
+            String manifestCid, int firstStripe, int lastStripe);
+    
+    boolean existsByShardCid(String shardCid);
+    
+    @Modifying
+    @Query("DELETE FROM ErasureShard s WHERE s.manifestCid = :manifestCid")
+    int deleteByManifestCid(String manifestCid);
+}
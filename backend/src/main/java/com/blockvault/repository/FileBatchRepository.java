@@ -0,0 +1,104 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.FileMetadata;
+import com.blockvault.model.FileVersion;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Inserts file records in JDBC batches. Hibernate does not batch inserts of
+ * entities with IDENTITY keys, so batch uploads write their rows here, in
+ * the caller's transaction. The inserted entities are not managed.
+ */
+@Repository
+@RequiredArgsConstructor
+public class FileBatchRepository {
+
+    private static final String INSERT_FILE = "INSERT INTO file_metadata (filename, cid, file_size, file_type, "
+            + "content_type, content_hash, encrypted, encryption_key_hash, encryption_format, storage_layout, "
+            + "compression_codec, compressed_size, uploaded_at, user_id, pinned, pin_status, replication_count, "
+            + "current_version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_VERSION = "INSERT INTO file_versions (file_metadata_id, version_number, "
+            + "cid, created_at, description, file_size) VALUES (?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Insert the files and set their generated ids and upload times
+     */
+    public void insertFiles(List<FileMetadata> files) {
+        if (files.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        jdbcTemplate.execute((Connection connection) -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_FILE,
+                    new String[]{"id"})) {
+                for (FileMetadata file : files) {
+                    file.setUploadedAt(now);
+                    statement.setString(1, file.getFilename());
+                    statement.setString(2, file.getCid());
+                    statement.setLong(3, file.getFileSize());
+                    statement.setString(4, file.getFileType());
+                    statement.setString(5, file.getContentType());
+                    statement.setString(6, file.getContentHash());
+                    statement.setBoolean(7, file.getEncrypted());
+                    statement.setString(8, file.getEncryptionKeyHash());
+                    statement.setString(9, file.getEncryptionFormat());
+                    statement.setString(10, file.getStorageLayout());
+                    statement.setString(11, file.getCompressionCodec());
+                    statement.setObject(12, file.getCompressedSize(), Types.BIGINT);
+                    statement.setTimestamp(13, Timestamp.valueOf(now));
+                    statement.setLong(14, file.getUser().getId());
+                    statement.setBoolean(15, file.getPinned());
+                    statement.setString(16, file.getPinStatus());
+                    statement.setObject(17, file.getReplicationCount(), Types.INTEGER);
+                    statement.setObject(18, file.getCurrentVersion(), Types.INTEGER);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (FileMetadata file : files) {
+                        if (!keys.next()) {
+                            throw new IllegalStateException("Missing generated id for " + file.getFilename());
+                        }
+                        file.setId(keys.getLong(1));
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Insert versions of files inserted by {@link #insertFiles}
+     */
+    public void insertVersions(List<FileVersion> versions) {
+        if (versions.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        jdbcTemplate.batchUpdate(INSERT_VERSION, versions, versions.size(), (statement, version) -> {
+            version.setCreatedAt(now.toLocalDateTime());
+            statement.setLong(1, version.getFileMetadata().getId());
+            statement.setInt(2, version.getVersionNumber());
+            statement.setString(3, version.getCid());
+            statement.setTimestamp(4, now);
+            statement.setString(5, version.getDescription());
+            statement.setLong(6, version.getFileSize());
+        });
+    }
+}
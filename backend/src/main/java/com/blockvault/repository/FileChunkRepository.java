@@ -0,0 +1,21 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.FileChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface FileChunkRepository extends JpaRepository<FileChunk, Long> {
+    
+    List<FileChunk> findByManifestCidOrderByChunkIndex(String manifestCid);
+    
+    boolean existsByManifestCid(String manifestCid);
+    
+    @Modifying
+    @Query("DELETE FROM FileChunk c WHERE c.manifestCid = :manifestCid")
+    int deleteByManifestCid(String manifestCid);
+}
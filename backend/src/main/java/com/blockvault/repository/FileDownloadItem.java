@@ -0,0 +1,13 @@
+package com.blockvault.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * The columns of a file that opening a download needs, fetched without
+ * loading the entity
+ */
+public record FileDownloadItem(Long id, String filename, String cid, Long fileSize, String fileType,
+                               String contentType, Boolean encrypted, String encryptionKeyHash,
+                               String encryptionFormat, String storageLayout, String compressionCodec,
+                               Long compressedSize, LocalDateTime uploadedAt) {
+}
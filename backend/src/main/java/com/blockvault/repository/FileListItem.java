@@ -0,0 +1,12 @@
+package com.blockvault.repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * The columns of a file that listings show, fetched without loading the
+ * entity
+ */
+public record FileListItem(Long id, String filename, String cid, Long fileSize, String fileType,
+                           String contentType, Boolean encrypted, LocalDateTime uploadedAt, Boolean pinned,
+                           String pinStatus, Integer replicationCount, Integer currentVersion) {
+}
@@ -1,10 +1,14 @@
 package com.blockvault.repository;
 
 import com.blockvault.model.FileMetadata;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,7 +19,37 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadata, Long
     
     List<FileMetadata> findByUserIdOrderByUploadedAtDesc(Long userId);
     
-    Optional<FileMetadata> findByCid(String cid);
+    @Query("SELECT new com.blockvault.repository.FileListItem(f.id, f.filename, f.cid, f.fileSize, f.fileType,"
+            + " f.contentType, f.encrypted, f.uploadedAt, f.pinned, f.pinStatus, f.replicationCount,"
+            + " f.currentVersion) FROM FileMetadata f WHERE f.user.id = :userId"
+            + " AND (:fileType IS NULL OR f.fileType = :fileType)"
+            + " AND (:encrypted IS NULL OR f.encrypted = :encrypted)"
+            + " ORDER BY f.uploadedAt DESC, f.id DESC")
+    List<FileListItem> findListFirstPage(Long userId, String fileType, Boolean encrypted, Pageable pageable);
+    
+    @Query("SELECT new com.blockvault.repository.FileListItem(f.id, f.filename, f.cid, f.fileSize, f.fileType,"
+            + " f.contentType, f.encrypted, f.uploadedAt, f.pinned, f.pinStatus, f.replicationCount,"
+            + " f.currentVersion) FROM FileMetadata f WHERE f.user.id = :userId"
+            + " AND (f.uploadedAt, f.id) < (:uploadedAt, :id)"
+            + " AND (:fileType IS NULL OR f.fileType = :fileType)"
+            + " AND (:encrypted IS NULL OR f.encrypted = :encrypted)"
+            + " ORDER BY f.uploadedAt DESC, f.id DESC")
+    List<FileListItem> findListPageAfter(Long userId, LocalDateTime uploadedAt, Long id, String fileType,
+                                         Boolean encrypted, Pageable pageable);
+    
+    @Query("SELECT new com.blockvault.repository.FileDownloadItem(f.id, f.filename, f.cid, f.fileSize, f.fileType,"
+            + " f.contentType, f.encrypted, f.encryptionKeyHash, f.encryptionFormat, f.storageLayout,"
+            + " f.compressionCodec, f.compressedSize, f.uploadedAt) FROM FileMetadata f"
+            + " WHERE f.cid = :cid AND f.user.id = :userId")
+    List<FileDownloadItem> findDownloadItems(String cid, Long userId, Pageable pageable);
+    
+    @Query("SELECT new com.blockvault.repository.FileDownloadItem(f.id, f.filename, f.cid, f.fileSize, f.fileType,"
+            + " f.contentType, f.encrypted, f.encryptionKeyHash, f.encryptionFormat, f.storageLayout,"
+            + " f.compressionCodec, f.compressedSize, f.uploadedAt) FROM FileMetadata f"
+            + " WHERE f.id IN :ids AND f.user.id = :userId")
+    List<FileDownloadItem> findDownloadItemsByIds(Collection<Long> ids, Long userId);
+    
+    List<FileMetadata> findByUserIdAndContentHashAndFileSize(Long userId, String contentHash, Long fileSize);
     
     Optional<FileMetadata> findByIdAndUserId(Long id, Long userId);
     
@@ -25,4 +59,31 @@ public interface FileMetadataRepository extends JpaRepository<FileMetadata, Long
     Long getTotalStorageByUserId(Long userId);
     
     long countByUserId(Long userId);
+    
+    long countByUserIdAndPinnedTrue(Long userId);
+    
+    long countByUserIdAndReplicationCountLessThan(Long userId, Integer replicationCount);
+    
+    @Query("SELECT f.id FROM FileMetadata f WHERE f.user.id = :userId AND f.id IN :ids")
+    List<Long> findOwnedIds(Long userId, Collection<Long> ids);
+    
+    @Query("SELECT f.id FROM FileMetadata f WHERE f.user.id = :userId"
+            + " AND (:fileType IS NULL OR f.fileType = :fileType)"
+            + " AND (:uploadedBefore IS NULL OR f.uploadedAt < :uploadedBefore)")
+    List<Long> findIdsByFilter(Long userId, String fileType, LocalDateTime uploadedBefore);
+    
+    @Query("SELECT COALESCE(SUM(f.fileSize), 0) FROM FileMetadata f WHERE f.id IN :ids")
+    long sumFileSize(Collection<Long> ids);
+    
+    @Modifying
+    @Query("DELETE FROM FileMetadata f WHERE f.id IN :ids")
+    int deleteByIdIn(Collection<Long> ids);
+    
+    @Modifying
+    @Query("UPDATE FileMetadata f SET f.pinStatus = :pinStatus, f.pinned = :pinned WHERE f.cid IN :cids")
+    int updatePinStatus(Collection<String> cids, String pinStatus, boolean pinned);
+    
+    @Modifying
+    @Query("UPDATE FileMetadata f SET f.replicationCount = :replicationCount WHERE f.cid = :cid")
+    int updateReplicationCount(String cid, int replicationCount);
 }
@@ -2,8 +2,11 @@ package com.blockvault.repository;
 
 import com.blockvault.model.FileVersion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -12,4 +15,14 @@ public interface FileVersionRepository extends JpaRepository<FileVersion, Long>
     List<FileVersion> findByFileMetadataIdOrderByVersionNumberDesc(Long fileMetadataId);
     
     List<FileVersion> findTop4ByFileMetadataIdOrderByVersionNumberDesc(Long fileMetadataId);
+    
+    @Query("SELECT v.cid, COUNT(v) FROM FileVersion v GROUP BY v.cid")
+    List<Object[]> countReferencesByCid();
+    
+    @Query("SELECT v.cid, COUNT(v) FROM FileVersion v WHERE v.fileMetadata.id IN :fileIds GROUP BY v.cid")
+    List<Object[]> countReferencesByCidForFiles(Collection<Long> fileIds);
+    
+    @Modifying
+    @Query("DELETE FROM FileVersion v WHERE v.fileMetadata.id IN :fileIds")
+    int deleteByFileMetadataIdIn(Collection<Long> fileIds);
 }
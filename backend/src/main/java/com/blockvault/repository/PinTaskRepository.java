@@ -0,0 +1,27 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.PinTask;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface PinTaskRepository extends JpaRepository<PinTask, Long> {
+    
+    List<PinTask> findByStatusAndNextAttemptAtLessThanEqualOrderById(String status, LocalDateTime now,
+                                                                    Pageable pageable);
+    
+    boolean existsByCidAndStatus(String cid, String status);
+    
+    long countByStatus(String status);
+    
+    @Modifying
+    @Query("DELETE FROM PinTask t WHERE t.cid IN :cids")
+    int deleteByCidIn(Collection<String> cids);
+}
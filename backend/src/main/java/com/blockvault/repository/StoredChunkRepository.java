@@ -0,0 +1,26 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.StoredChunk;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface StoredChunkRepository extends JpaRepository<StoredChunk, String> {
+    
+    @Modifying
+    @Query("UPDATE StoredChunk c SET c.refCount = c.refCount + :delta WHERE c.hash = :hash")
+    int adjustRefCount(String hash, long delta);
+    
+    @Query("SELECT c.refCount FROM StoredChunk c WHERE c.hash = :hash")
+    Optional<Long> findRefCount(String hash);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT c FROM StoredChunk c WHERE c.hash = :hash")
+    Optional<StoredChunk> findForUpdate(String hash);
+}
@@ -0,0 +1,68 @@
+package com.blockvault.repository;
+
+import com.blockvault.model.UploadSession;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface UploadSessionRepository extends JpaRepository<UploadSession, String> {
+    
+    Optional<UploadSession> findByIdAndUserId(String id, Long userId);
+    
+    List<UploadSession> findByStatusAndUpdatedAtBefore(String status, LocalDateTime cutoff);
+    
+    // The updates below clear the persistence context, so later reads in the request see their result
+    
+    /**
+     * Claim an active session for writing at {@code offset}. Fails if the
+     * session has moved past that offset or another writer's claim is still
+     * fresh (renewed after {@code staleBefore}).
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.writerId = :writerId, s.claimedAt = :now, s.updatedAt = :now "
+            + "WHERE s.id = :id AND s.status = 'ACTIVE' AND s.committedOffset = :offset "
+            + "AND (s.writerId IS NULL OR s.claimedAt < :staleBefore)")
+    int claim(String id, long offset, String writerId, LocalDateTime now, LocalDateTime staleBefore);
+    
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.claimedAt = :now, s.updatedAt = :now "
+            + "WHERE s.id = :id AND s.writerId = :writerId")
+    int renewClaim(String id, String writerId, LocalDateTime now);
+    
+    /**
+     * Record the bytes a writer staged and give up its claim
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.committedOffset = :committedOffset, s.writerId = NULL, "
+            + "s.claimedAt = NULL, s.updatedAt = :now WHERE s.id = :id AND s.writerId = :writerId")
+    int commitClaim(String id, String writerId, long committedOffset, LocalDateTime now);
+    
+    /**
+     * Move a session from one status to another, unless a writer holds a
+     * fresh claim on it
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.status = :to, s.writerId = NULL, s.claimedAt = NULL, s.updatedAt = :now "
+            + "WHERE s.id = :id AND s.status = :from AND (s.writerId IS NULL OR s.claimedAt < :staleBefore)")
+    int changeStatus(String id, String from, String to, LocalDateTime now, LocalDateTime staleBefore);
+    
+    /**
+     * Move a fully staged, unclaimed session to COMPLETING
+     */
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.status = 'COMPLETING', s.writerId = NULL, s.claimedAt = NULL, "
+            + "s.updatedAt = :now WHERE s.id = :id AND s.status = 'ACTIVE' AND s.committedOffset = s.totalSize "
+            + "AND (s.writerId IS NULL OR s.claimedAt < :staleBefore)")
+    int startCompletion(String id, LocalDateTime now, LocalDateTime staleBefore);
+    
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE UploadSession s SET s.status = 'COMPLETED', s.fileMetadataId = :fileMetadataId, "
+            + "s.updatedAt = :now WHERE s.id = :id AND s.status = 'COMPLETING'")
+    int finishCompletion(String id, Long fileMetadataId, LocalDateTime now);
+}
@@ -2,6 +2,8 @@ package com.blockvault.repository;
 
 import com.blockvault.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
@@ -16,4 +18,14 @@ public interface UserRepository extends JpaRepository<User, Long> {
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.usedStorage = u.usedStorage + :bytes "
+            + "WHERE u.id = :userId AND u.usedStorage + :bytes <= u.storageQuota")
+    int reserveStorage(Long userId, long bytes);
+    
+    @Modifying
+    @Query("UPDATE User u SET u.usedStorage = CASE WHEN u.usedStorage > :bytes THEN u.usedStorage - :bytes ELSE 0 END "
+            + "WHERE u.id = :userId")
+    int releaseStorage(Long userId, long bytes);
 }
@@ -0,0 +1,166 @@
+package com.blockvault.service;
+
+import com.blockvault.model.FileMetadata;
+import com.blockvault.model.User;
+import com.blockvault.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Uploads many files in one request. Storage quota is reserved once for the
+ * whole batch, file contents are written concurrently on a bounded pool,
+ * and the records of all files that made it are saved in one transaction.
+ */
+@Service
+@Slf4j
+public class BatchUploadService {
+
+    private final FileService fileService;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transaction;
+
+    @Value("${blockvault.upload.batch.max-files:100}")
+    private int maxFiles;
+
+    @Value("${blockvault.upload.batch.parallelism:4}")
+    private int parallelism;
+
+    private ExecutorService uploadPool;
+
+    public BatchUploadService(FileService fileService,
+                              UserRepository userRepository,
+                              PlatformTransactionManager transactionManager) {
+        this.fileService = fileService;
+        this.userRepository = userRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        uploadPool = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "batch-upload-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        uploadPool.shutdownNow();
+    }
+
+    /**
+     * Upload a batch of files. A file that fails does not fail the others;
+     * its quota is given back and its result carries the error.
+     *
+     * @param encryptionKey Key for every file when encrypting; required then
+     * @return One result per file, in request order
+     */
+    public List<FileResult> uploadBatch(List<MultipartFile> files, User user, boolean encrypt, String encryptionKey)
+            throws Exception {
+        if (files == null || files.isEmpty()) {
+            throw new Exception("No files in the batch");
+        }
+        if (files.size() > maxFiles) {
+            throw new Exception("A batch can hold at most " + maxFiles + " files");
+        }
+        if (encrypt && (encryptionKey == null || encryptionKey.trim().isEmpty())) {
+            throw new Exception("Encryption key required for an encrypted batch");
+        }
+
+        long totalSize = files.stream().mapToLong(MultipartFile::getSize).sum();
+        Integer reserved = transaction.execute(status -> userRepository.reserveStorage(user.getId(), totalSize));
+        if (reserved == null || reserved == 0) {
+            throw new Exception("Storage quota exceeded. Please upgrade your plan.");
+        }
+
+        List<Future<FileService.StagedFile>> writes = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            writes.add(uploadPool.submit(() -> writeContent(file, user, encrypt, encryptionKey)));
+        }
+
+        String[] errors = new String[files.size()];
+        List<FileService.StagedFile> staged = new ArrayList<>(files.size());
+        List<Integer> stagedIndexes = new ArrayList<>(files.size());
+        long unusedBytes = 0;
+        for (int i = 0; i < writes.size(); i++) {
+            try {
+                staged.add(writes.get(i).get());
+                stagedIndexes.add(i);
+            } catch (ExecutionException e) {
+                errors[i] = e.getCause().getMessage();
+                unusedBytes += files.get(i).getSize();
+                log.warn("Batch upload of {} failed: {}", files.get(i).getOriginalFilename(), errors[i]);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writes.forEach(write -> write.cancel(true));
+                releaseStorage(user, totalSize);
+                staged.forEach(fileService::discardContent);
+                throw new Exception("Batch upload interrupted");
+            }
+        }
+
+        List<FileMetadata> saved;
+        try {
+            saved = staged.isEmpty() ? List.of() : fileService.persistBatch(staged);
+        } catch (RuntimeException e) {
+            // Nothing was recorded, so none of the written content is referenced
+            releaseStorage(user, totalSize);
+            staged.forEach(fileService::discardContent);
+            throw new Exception("Could not record the uploaded files: " + e.getMessage());
+        }
+        if (unusedBytes > 0) {
+            releaseStorage(user, unusedBytes);
+        }
+
+        FileMetadata[] stored = new FileMetadata[files.size()];
+        for (int i = 0; i < saved.size(); i++) {
+            stored[stagedIndexes.get(i)] = saved.get(i);
+        }
+
+        List<FileResult> results = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            results.add(new FileResult(files.get(i).getOriginalFilename(), stored[i], errors[i]));
+        }
+        log.info("Batch upload for {}: {} of {} files stored", user.getUsername(), saved.size(), files.size());
+        return results;
+    }
+
+    private FileService.StagedFile writeContent(MultipartFile file, User user, boolean encrypt, String encryptionKey)
+            throws Exception {
+        if (file.isEmpty()) {
+            throw new Exception("File is empty");
+        }
+        return fileService.writeContent(file.getInputStream(), file.getSize(), file.getOriginalFilename(),
+                file.getContentType(), user, encrypt, encryptionKey);
+    }
+
+    private void releaseStorage(User user, long bytes) {
+        transaction.executeWithoutResult(status -> userRepository.releaseStorage(user.getId(), bytes));
+    }
+
+    /**
+     * Outcome for one file of a batch: the stored file, or the error
+     */
+    public record FileResult(String filename, FileMetadata file, String error) {
+
+        public boolean isSuccess() {
+            return file != null;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.blockvault.service;
+
+import com.blockvault.chunking.FastCdcChunker;
+import com.blockvault.model.FileChunk;
+import com.blockvault.model.StoredChunk;
+import com.blockvault.repository.FileChunkRepository;
+import com.blockvault.repository.StoredChunkRepository;
+import com.blockvault.storage.StorageBackend;
+import com.blockvault.util.ConcatenatedInputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deduplicating chunk store. Files are split with FastCDC; chunks already
+ * held (by SHA-256) are reused and only new chunks are added to IPFS. The
+ * chunk manifest is added to IPFS as well, and its CID stands for the file.
+ */
+@Service
+@Slf4j
+public class ChunkStoreService {
+
+    // Value of FileMetadata.storageLayout for files stored as chunk manifests
+    public static final String LAYOUT_CHUNKED = "CHUNKED";
+
+    private final StoredChunkRepository storedChunkRepository;
+    private final FileChunkRepository fileChunkRepository;
+    private final StorageBackend storageBackend;
+    private final PinQueueService pinQueueService;
+    private final ObjectProvider<ReplicationService> replicationService; // Only with the IPFS backend
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate newTransaction;
+
+    private final Counter logicalBytes;
+    private final Counter storedBytes;
+    private final Counter chunksTotal;
+    private final Counter chunksDeduplicated;
+    private final Timer chunkingTimer;
+    private final DistributionSummary chunkingThroughput;
+
+    @Value("${blockvault.chunking.enabled:false}")
+    private boolean enabled;
+
+    @Value("${blockvault.chunking.min-size:262144}")
+    private int minSize;
+
+    @Value("${blockvault.chunking.avg-size:1048576}")
+    private int avgSize;
+
+    @Value("${blockvault.chunking.max-size:4194304}")
+    private int maxSize;
+
+    public ChunkStoreService(StoredChunkRepository storedChunkRepository,
+                             FileChunkRepository fileChunkRepository,
+                             StorageBackend storageBackend,
+                             PinQueueService pinQueueService,
+                             ObjectProvider<ReplicationService> replicationService,
+                             ObjectMapper objectMapper,
+                             PlatformTransactionManager transactionManager,
+                             MeterRegistry meterRegistry) {
+        this.storedChunkRepository = storedChunkRepository;
+        this.fileChunkRepository = fileChunkRepository;
+        this.storageBackend = storageBackend;
+        this.pinQueueService = pinQueueService;
+        this.replicationService = replicationService;
+        this.objectMapper = objectMapper;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        this.logicalBytes = Counter.builder("blockvault.chunking.bytes.logical")
+                .description("Bytes of files written through the chunk store")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.storedBytes = Counter.builder("blockvault.chunking.bytes.stored")
+                .description("Bytes of new chunks added to IPFS")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.chunksTotal = Counter.builder("blockvault.chunking.chunks")
+                .description("Chunks produced by content-defined chunking")
+                .register(meterRegistry);
+        this.chunksDeduplicated = Counter.builder("blockvault.chunking.chunks.deduplicated")
+                .description("Chunks that were already stored")
+                .register(meterRegistry);
+        this.chunkingTimer = Timer.builder("blockvault.chunking.duration")
+                .description("Time to chunk, hash and store a file")
+                .register(meterRegistry);
+        this.chunkingThroughput = DistributionSummary.builder("blockvault.chunking.throughput")
+                .description("Chunk store throughput per file")
+                .baseUnit("bytes/second")
+                .register(meterRegistry);
+        Gauge.builder("blockvault.chunking.dedup.ratio", this, ChunkStoreService::dedupRatio)
+                .description("Share of written bytes that did not need to be stored")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Chunk, deduplicate and store a file. Runs outside any transaction; the
+     * result is recorded with {@link #register} together with the file.
+     * The stream is consumed but not closed.
+     */
+    public ChunkedContent store(InputStream data, String filename) throws Exception {
+        long started = System.nanoTime();
+        FastCdcChunker chunker = new FastCdcChunker(data, minSize, avgSize, maxSize);
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        List<FileChunk> entries = new ArrayList<>();
+        List<Map<String, Object>> manifestChunks = new ArrayList<>();
+        long offset = 0;
+        long newBytes = 0;
+        int reused = 0;
+
+        byte[] chunk;
+        while ((chunk = chunker.next()) != null) {
+            String hash = HexFormat.of().formatHex(digest.digest(chunk));
+            String cid = storedChunkRepository.findById(hash).map(StoredChunk::getCid).orElse(null);
+
+            if (cid == null) {
+                cid = storageBackend.put(chunk, hash);
+                createIfAbsent(hash, cid, chunk.length);
+                newBytes += chunk.length;
+            } else {
+                reused++;
+            }
+
+            FileChunk entry = new FileChunk();
+            entry.setChunkIndex(entries.size());
+            entry.setChunkHash(hash);
+            entry.setChunkCid(cid);
+            entry.setChunkOffset(offset);
+            entry.setSize(chunk.length);
+            entries.add(entry);
+
+            Map<String, Object> manifestChunk = new LinkedHashMap<>();
+            manifestChunk.put("cid", cid);
+            manifestChunk.put("size", chunk.length);
+            manifestChunks.add(manifestChunk);
+
+            offset += chunk.length;
+        }
+
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("version", 1);
+        manifest.put("chunker", "fastcdc");
+        manifest.put("size", offset);
+        manifest.put("chunks", manifestChunks);
+        String manifestCid = storageBackend.put(objectMapper.writeValueAsBytes(manifest),
+                filename + ".manifest.json");
+
+        for (FileChunk entry : entries) {
+            entry.setManifestCid(manifestCid);
+        }
+
+        long elapsed = System.nanoTime() - started;
+        logicalBytes.increment(offset);
+        storedBytes.increment(newBytes);
+        chunksTotal.increment(entries.size());
+        chunksDeduplicated.increment(reused);
+        chunkingTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        if (elapsed > 0) {
+            chunkingThroughput.record(offset * 1_000_000_000.0 / elapsed);
+        }
+
+        log.info("File chunked: {} ({} chunks, {} reused, {} of {} bytes new, manifest CID: {})",
+                filename, entries.size(), reused, newBytes, offset, manifestCid);
+        return new ChunkedContent(manifestCid, entries);
+    }
+
+    /**
+     * Record the chunks of a stored manifest within the caller's transaction
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void register(ChunkedContent content) {
+        // Identical files produce the same manifest; its entries are recorded once
+        if (fileChunkRepository.existsByManifestCid(content.manifestCid())) {
+            return;
+        }
+
+        for (FileChunk entry : content.entries()) {
+            acquireChunk(entry);
+        }
+        fileChunkRepository.saveAll(content.entries());
+    }
+
+    /**
+     * Stream a chunked file by reading its chunks in order
+     */
+    public InputStream open(String manifestCid) throws IOException {
+        List<ConcatenatedInputStream.StreamOpener> parts = new ArrayList<>();
+        for (FileChunk entry : manifest(manifestCid)) {
+            parts.add(() -> storageBackend.getStream(entry.getChunkCid()));
+        }
+        return new ConcatenatedInputStream(parts);
+    }
+
+    /**
+     * Stream a byte range of a chunked file, fetching only the chunks that
+     * overlap it
+     */
+    public InputStream openRange(String manifestCid, long offset, long length) throws IOException {
+        long end = offset + length;
+        List<ConcatenatedInputStream.StreamOpener> parts = new ArrayList<>();
+
+        for (FileChunk entry : manifest(manifestCid)) {
+            long chunkStart = entry.getChunkOffset();
+            long chunkEnd = chunkStart + entry.getSize();
+            if (chunkEnd <= offset || chunkStart >= end) {
+                continue;
+            }
+
+            long partStart = Math.max(offset, chunkStart) - chunkStart;
+            long partLength = Math.min(end, chunkEnd) - chunkStart - partStart;
+            if (partStart == 0 && partLength == entry.getSize()) {
+                parts.add(() -> storageBackend.getStream(entry.getChunkCid()));
+            } else {
+                parts.add(() -> storageBackend.getRange(entry.getChunkCid(), partStart, partLength));
+            }
+        }
+        return new ConcatenatedInputStream(parts);
+    }
+
+    /**
+     * Drop a manifest whose CID is no longer referenced, unpinning chunks
+     * that no other manifest uses. No-op for CIDs that are not manifests.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseManifest(String manifestCid) {
+        List<FileChunk> entries = fileChunkRepository.findByManifestCidOrderByChunkIndex(manifestCid);
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Set<String> hashes = new LinkedHashSet<>();
+        for (FileChunk entry : entries) {
+            storedChunkRepository.adjustRefCount(entry.getChunkHash(), -1);
+            hashes.add(entry.getChunkHash());
+        }
+
+        int unpinned = 0;
+        for (String hash : hashes) {
+            if (unpinIfUnreferenced(hash)) {
+                unpinned++;
+            }
+        }
+
+        fileChunkRepository.deleteByManifestCid(manifestCid);
+        log.info("Chunk manifest released: {} ({} chunks unpinned)", manifestCid, unpinned);
+    }
+
+    /**
+     * Unpin the chunks of content that was stored but never registered,
+     * where no registered manifest uses them
+     */
+    @Transactional
+    public void discard(ChunkedContent content) {
+        // Lock rows in a fixed order so concurrent discards cannot deadlock
+        Set<String> hashes = new TreeSet<>();
+        for (FileChunk entry : content.entries()) {
+            hashes.add(entry.getChunkHash());
+        }
+
+        int unpinned = 0;
+        for (String hash : hashes) {
+            if (unpinIfUnreferenced(hash)) {
+                unpinned++;
+            }
+        }
+        log.info("Unregistered chunk manifest discarded: {} ({} chunks unpinned)", content.manifestCid(), unpinned);
+    }
+
+    // The row lock makes a concurrent first reference wait; it queues the pin again
+    private boolean unpinIfUnreferenced(String hash) {
+        StoredChunk stored = storedChunkRepository.findForUpdate(hash).orElse(null);
+        if (stored == null || stored.getRefCount() > 0) {
+            return false;
+        }
+
+        pinQueueService.cancel(stored.getCid());
+        replicationService.ifAvailable(replication -> replication.forget(List.of(stored.getCid())));
+        storageBackend.unpin(List.of(stored.getCid()));
+        storedChunkRepository.delete(stored);
+        return true;
+    }
+
+    private List<FileChunk> manifest(String manifestCid) throws IOException {
+        List<FileChunk> entries = fileChunkRepository.findByManifestCidOrderByChunkIndex(manifestCid);
+        if (entries.isEmpty()) {
+            throw new IOException("Chunk manifest not found: " + manifestCid);
+        }
+        return entries;
+    }
+
+    // The first reference queues a pin in case a concurrent release just unpinned the chunk
+    private void acquireChunk(FileChunk entry) {
+        if (storedChunkRepository.adjustRefCount(entry.getChunkHash(), 1) == 0) {
+            createIfAbsent(entry.getChunkHash(), entry.getChunkCid(), entry.getSize());
+            storedChunkRepository.adjustRefCount(entry.getChunkHash(), 1);
+        }
+
+        long count = storedChunkRepository.findRefCount(entry.getChunkHash()).orElse(1L);
+        if (count == 1) {
+            pinQueueService.enqueue(entry.getChunkCid());
+        }
+    }
+
+    // Runs in its own transaction so a lost insert race does not poison the caller's
+    private void createIfAbsent(String hash, String cid, int size) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                if (!storedChunkRepository.existsById(hash)) {
+                    StoredChunk stored = new StoredChunk();
+                    stored.setHash(hash);
+                    stored.setCid(cid);
+                    stored.setSize(size);
+                    stored.setRefCount(0L);
+                    storedChunkRepository.saveAndFlush(stored);
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Chunk {} recorded concurrently", hash);
+        }
+    }
+
+    /**
+     * A stored manifest and its chunk entries, not yet recorded
+     */
+    public record ChunkedContent(String manifestCid, List<FileChunk> entries) {
+    }
+
+    private double dedupRatio() {
+        double logical = logicalBytes.count();
+        return logical > 0 ? 1.0 - storedBytes.count() / logical : 0.0;
+    }
+}
@@ -0,0 +1,240 @@
+package com.blockvault.service;
+
+import com.blockvault.model.CidReference;
+import com.blockvault.repository.CidReferenceRepository;
+import com.blockvault.repository.FileVersionRepository;
+import com.blockvault.storage.StorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reference counts for stored content. Every file version holds one
+ * reference to its CID; content is unpinned only when the last reference
+ * is released, so records can safely share a CID.
+ */
+@Service
+@Slf4j
+public class CidReferenceService {
+
+    // Bounds IN lists and the number of row locks held per transaction
+    private static final int QUERY_BATCH_SIZE = 1000;
+    private static final int UNPIN_BATCH_SIZE = 100;
+
+    private final CidReferenceRepository cidReferenceRepository;
+    private final FileVersionRepository fileVersionRepository;
+    private final StorageBackend storageBackend;
+    private final ChunkStoreService chunkStoreService;
+    private final ErasureCodingService erasureCodingService;
+    private final PinQueueService pinQueueService;
+    private final ObjectProvider<ReplicationService> replicationService; // Only with the IPFS backend
+    private final TransactionTemplate newTransaction;
+
+    public CidReferenceService(CidReferenceRepository cidReferenceRepository,
+                               FileVersionRepository fileVersionRepository,
+                               StorageBackend storageBackend,
+                               ChunkStoreService chunkStoreService,
+                               ErasureCodingService erasureCodingService,
+                               PinQueueService pinQueueService,
+                               ObjectProvider<ReplicationService> replicationService,
+                               PlatformTransactionManager transactionManager) {
+        this.cidReferenceRepository = cidReferenceRepository;
+        this.fileVersionRepository = fileVersionRepository;
+        this.storageBackend = storageBackend;
+        this.chunkStoreService = chunkStoreService;
+        this.erasureCodingService = erasureCodingService;
+        this.pinQueueService = pinQueueService;
+        this.replicationService = replicationService;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Add a reference to a CID within the caller's transaction. When this is
+     * the first reference a pin is queued, which also covers a concurrent
+     * release that unpinned the content between the IPFS add and this call.
+     *
+     * @return The new reference count
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long acquire(String cid) {
+        if (cidReferenceRepository.adjustRefCount(cid, 1) == 0) {
+            createIfAbsent(cid);
+            cidReferenceRepository.adjustRefCount(cid, 1);
+        }
+
+        // The UPDATE above holds the row lock until this transaction ends
+        long count = cidReferenceRepository.findRefCount(cid).orElse(1L);
+        if (count == 1) {
+            pinQueueService.enqueue(cid);
+        }
+
+        log.debug("CID {} referenced ({} references)", cid, count);
+        return count;
+    }
+
+    /**
+     * Release a reference to a CID within the caller's transaction. If the
+     * count reaches zero, the content is unpinned after the transaction
+     * commits.
+     *
+     * @return The new reference count
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public long release(String cid) {
+        cidReferenceRepository.adjustRefCount(cid, -1);
+        long count = cidReferenceRepository.findRefCount(cid).orElse(0L);
+
+        if (count <= 0) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    unpinIfUnreferenced(cid);
+                }
+            });
+        }
+
+        log.debug("CID {} released ({} references left)", cid, Math.max(count, 0));
+        return count;
+    }
+
+    /**
+     * Release many references within the caller's transaction, one count
+     * update per CID. Content left without references is unpinned in
+     * batches after the transaction commits.
+     *
+     * @param counts References to release, per CID
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseAll(Map<String, Long> counts) {
+        List<String> cids = new ArrayList<>();
+        List<String> unreferenced = new ArrayList<>();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            if (cidReferenceRepository.adjustRefCount(entry.getKey(), -entry.getValue()) == 0) {
+                unreferenced.add(entry.getKey()); // Never counted; treat as released
+            } else {
+                cids.add(entry.getKey());
+            }
+        }
+
+        for (int start = 0; start < cids.size(); start += QUERY_BATCH_SIZE) {
+            unreferenced.addAll(cidReferenceRepository.findUnreferenced(
+                    cids.subList(start, Math.min(start + QUERY_BATCH_SIZE, cids.size()))));
+        }
+
+        if (!unreferenced.isEmpty()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    unpinIfUnreferenced(unreferenced);
+                }
+            });
+        }
+
+        log.debug("Released references to {} CIDs ({} now unreferenced)", counts.size(), unreferenced.size());
+    }
+
+    /**
+     * Unpin content whose reference count is still zero. The row lock makes
+     * a concurrent acquire wait, and that acquire pins the content again.
+     */
+    public void unpinIfUnreferenced(String cid) {
+        unpinIfUnreferenced(List.of(cid));
+    }
+
+    /**
+     * Unpin content whose reference counts are still zero, one daemon call
+     * per batch
+     */
+    public void unpinIfUnreferenced(Collection<String> cids) {
+        // Lock rows in a fixed order so concurrent batches cannot deadlock
+        List<String> sorted = cids.stream().distinct().sorted().toList();
+
+        for (int start = 0; start < sorted.size(); start += UNPIN_BATCH_SIZE) {
+            List<String> batch = sorted.subList(start, Math.min(start + UNPIN_BATCH_SIZE, sorted.size()));
+            newTransaction.executeWithoutResult(status -> {
+                List<String> unpin = new ArrayList<>();
+                for (String cid : batch) {
+                    CidReference reference = cidReferenceRepository.findForUpdate(cid).orElse(null);
+                    if (reference != null && reference.getRefCount() > 0) {
+                        continue;
+                    }
+
+                    pinQueueService.cancel(cid);
+                    if (reference != null) {
+                        cidReferenceRepository.delete(reference);
+                    }
+                    // A chunk or erasure manifest also releases its chunks or shards
+                    chunkStoreService.releaseManifest(cid);
+                    erasureCodingService.releaseManifest(cid);
+                    unpin.add(cid);
+                }
+
+                replicationService.ifAvailable(replication -> replication.forget(unpin));
+                storageBackend.unpin(unpin);
+                if (unpin.size() == 1) {
+                    log.info("CID {} has no references left and was unpinned", unpin.get(0));
+                } else if (!unpin.isEmpty()) {
+                    log.info("{} CIDs have no references left and were unpinned", unpin.size());
+                }
+            });
+        }
+    }
+
+    /**
+     * Seed reference counts from existing file versions the first time the
+     * table is introduced.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillReferences() {
+        if (cidReferenceRepository.count() > 0) {
+            return;
+        }
+
+        List<Object[]> counts = fileVersionRepository.countReferencesByCid();
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        newTransaction.executeWithoutResult(status -> {
+            for (Object[] row : counts) {
+                CidReference reference = new CidReference();
+                reference.setCid((String) row[0]);
+                reference.setRefCount(((Number) row[1]).longValue());
+                cidReferenceRepository.save(reference);
+            }
+        });
+        log.info("Backfilled reference counts for {} CIDs", counts.size());
+    }
+
+    // Runs in its own transaction so a lost insert race does not poison the caller's
+    private void createIfAbsent(String cid) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                if (!cidReferenceRepository.existsById(cid)) {
+                    CidReference reference = new CidReference();
+                    reference.setCid(cid);
+                    reference.setRefCount(0L);
+                    cidReferenceRepository.saveAndFlush(reference);
+                }
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.debug("CID {} reference row created concurrently", cid);
+        }
+    }
+}
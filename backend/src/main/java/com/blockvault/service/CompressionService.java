@@ -0,0 +1,182 @@
+package com.blockvault.service;
+
+import com.blockvault.util.CountingInputStream;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Optional compression of file content ahead of encryption, which would
+ * otherwise leave nothing to compress. The level depends on the file type;
+ * types that are already compressed are stored as they are, and for the
+ * rest the first block is trial-compressed to see whether it pays off.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class CompressionService {
+
+    public static final String CODEC_DEFLATE = "DEFLATE";
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${blockvault.compression.enabled:false}")
+    private boolean enabled;
+
+    @Value("${blockvault.compression.min-file-size:4096}")
+    private long minFileSize;
+
+    @Value("${blockvault.compression.sample-size:65536}")
+    private int sampleSize;
+
+    @Value("${blockvault.compression.max-ratio:0.9}")
+    private double maxRatio;
+
+    private Counter compressedFiles;
+    private Counter skippedFiles;
+
+    @PostConstruct
+    public void init() {
+        compressedFiles = Counter.builder("blockvault.compression.files")
+                .tag("outcome", "compressed")
+                .description("Uploads stored compressed")
+                .register(meterRegistry);
+        skippedFiles = Counter.builder("blockvault.compression.files")
+                .tag("outcome", "skipped")
+                .description("Uploads whose sample did not compress well enough")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Wrap upload content in a compressing stream when its type and first
+     * block suggest it is worth it. The sample read to decide is replayed,
+     * so the returned content always covers the whole input.
+     *
+     * @param data     Plaintext content
+     * @param fileType Type from the file extension
+     * @param size     Plaintext size
+     */
+    public Compression compress(InputStream data, String fileType, long size) throws IOException {
+        int level = levelFor(fileType);
+        if (!enabled || level == Deflater.NO_COMPRESSION || size < minFileSize) {
+            return new Compression(null, new CountingInputStream(data));
+        }
+
+        byte[] sample = data.readNBytes(sampleSize);
+        InputStream content = new SequenceInputStream(new ByteArrayInputStream(sample), data);
+
+        if (compressedLength(sample, level) > sample.length * maxRatio) {
+            skippedFiles.increment();
+            log.debug("Sample of {} bytes does not compress well, storing as is", sample.length);
+            return new Compression(null, new CountingInputStream(content));
+        }
+
+        compressedFiles.increment();
+        return new Compression(CODEC_DEFLATE, new CountingInputStream(new CompressingInputStream(content, level)));
+    }
+
+    /**
+     * Undo {@link #compress} on downloaded content
+     *
+     * @param codec Codec recorded for the file; null when stored as is
+     */
+    public InputStream decompress(InputStream content, String codec) throws IOException {
+        if (codec == null) {
+            return content;
+        }
+        if (!CODEC_DEFLATE.equals(codec)) {
+            throw new IOException("Unsupported compression codec: " + codec);
+        }
+        return new DecompressingInputStream(content);
+    }
+
+    /**
+     * Whether content of this type is worth compressing at all
+     */
+    public boolean isCompressible(String fileType) {
+        return levelFor(fileType) != Deflater.NO_COMPRESSION;
+    }
+
+    /**
+     * Compression level for a file type; text-like content compresses well
+     * and is worth the extra effort, media and archives are compressed already
+     */
+    private int levelFor(String fileType) {
+        return switch (fileType) {
+            case "TEXT", "SPREADSHEET" -> Deflater.DEFAULT_COMPRESSION;
+            case "DOC", "PRESENTATION", "PDF", "OTHER" -> Deflater.BEST_SPEED;
+            default -> Deflater.NO_COMPRESSION; // VIDEO, IMAGE, ARCHIVE, AUDIO
+        };
+    }
+
+    private long compressedLength(byte[] sample, int level) {
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(sample);
+            deflater.finish();
+            byte[] out = new byte[BUFFER_SIZE];
+            long length = 0;
+            while (!deflater.finished()) {
+                length += deflater.deflate(out);
+            }
+            return length;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Content prepared for storage, with the codec to record for the file.
+     * The count of bytes read from {@code content} is the stored length.
+     */
+    public record Compression(String codec, CountingInputStream content) {
+    }
+
+    // The stream classes leave a deflater or inflater passed in alone on close
+    private static class CompressingInputStream extends DeflaterInputStream {
+
+        CompressingInputStream(InputStream in, int level) {
+            super(in, new Deflater(level), BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                def.end();
+            }
+        }
+    }
+
+    private static class DecompressingInputStream extends InflaterInputStream {
+
+        DecompressingInputStream(InputStream in) {
+            super(in, new Inflater(), BUFFER_SIZE);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                inf.end();
+            }
+        }
+    }
+}
@@ -3,8 +3,10 @@ package com.blockvault.service;
 import com.blockvault.model.FileMetadata;
 import com.blockvault.model.User;
 import com.blockvault.repository.FileMetadataRepository;
+import com.blockvault.storage.StorageBackend;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
@@ -17,6 +19,8 @@ import java.util.*;
 public class DashboardService {
 
     private final FileMetadataRepository fileMetadataRepository;
+    private final StorageBackend storageBackend;
+    private final ObjectProvider<ReplicationService> replicationService; // Only with the IPFS backend
 
     /**
      * Get storage statistics for user
@@ -40,9 +44,13 @@ public class DashboardService {
         long fileCount = fileMetadataRepository.countByUserId(user.getId());
         stats.put("fileCount", fileCount);
 
-        stats.put("activeNodes", 3);
-        stats.put("replicationFactor", 3);
-        stats.put("pinnedFiles", fileCount);
+        ReplicationService replication = replicationService.getIfAvailable();
+        int replicationFactor = replication != null ? replication.getReplicationFactor() : 1;
+        stats.put("activeNodes", storageBackend.locations().size());
+        stats.put("replicationFactor", replicationFactor);
+        stats.put("pinnedFiles", fileMetadataRepository.countByUserIdAndPinnedTrue(user.getId()));
+        stats.put("underReplicatedFiles",
+                fileMetadataRepository.countByUserIdAndReplicationCountLessThan(user.getId(), replicationFactor));
 
         return stats;
     }
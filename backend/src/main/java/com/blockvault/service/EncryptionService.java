@@ -1,18 +1,28 @@
 package com.blockvault.service;
 
+import com.blockvault.crypto.ParallelSegmentedDecryptingInputStream;
+import com.blockvault.crypto.ParallelSegmentedEncryptingInputStream;
+import com.blockvault.crypto.SegmentedAesGcm;
+import com.blockvault.crypto.SegmentedDecryptingInputStream;
+import com.blockvault.crypto.SegmentedEncryptingInputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.concurrent.ForkJoinPool;
 
 @Service
 @Slf4j
@@ -24,10 +34,48 @@ public class EncryptionService {
     @Value("${blockvault.encryption.key-size}")
     private int keySize;
 
+    @Value("${blockvault.encryption.segment-size:65536}")
+    private int segmentSize;
+
+    @Value("${blockvault.encryption.parallelism:0}")
+    private int parallelism; // 0 = one worker per core
+
+    @Value("${blockvault.encryption.parallel-threshold:8388608}")
+    private long parallelThreshold;
+
+    @Value("${blockvault.encryption.parallel-window:8}")
+    private int parallelWindow;
+
+    @Value("${blockvault.encryption.segments-per-task:16}")
+    private int segmentsPerTask;
+
+    private ForkJoinPool cryptoPool;
+
+    // Value of FileMetadata.encryptionFormat; older files have none and hold
+    // a single blob as written by encrypt(byte[], String)
+    public static final String FORMAT_GCM_SEGMENTED = "AES_GCM_SEGMENTED_V1";
+
     private static final String CIPHER_TRANSFORMATION = "AES/GCM/NoPadding";
     private static final int GCM_IV_LENGTH = 12;
     private static final int GCM_TAG_LENGTH = 128;
 
+    @PostConstruct
+    public void init() {
+        int workers = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        if (workers > 1) {
+            cryptoPool = new ForkJoinPool(workers);
+            log.info("Parallel encryption enabled with {} workers for files over {} bytes",
+                    workers, parallelThreshold);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (cryptoPool != null) {
+            cryptoPool.shutdownNow();
+        }
+    }
+
     /**
      * Encrypt data using AES-256-GCM
      * 
@@ -96,6 +144,94 @@ public class EncryptionService {
         }
     }
 
+    /**
+     * Decrypt a stream produced by {@link #encrypt}, as stored for files
+     * without an encryption format.
+     * GCM only releases plaintext once the tag is verified, so the cipher
+     * buffers the ciphertext internally until the end of the stream.
+     *
+     * @param encryptedData Encrypted stream (IV + encrypted bytes)
+     * @param key           Encryption key (Base64 encoded)
+     * @return Decrypted stream
+     */
+    public InputStream decryptStream(InputStream encryptedData, String key) throws Exception {
+        try {
+            SecretKey secretKey = decodeKey(key);
+
+            byte[] iv = encryptedData.readNBytes(GCM_IV_LENGTH);
+            if (iv.length != GCM_IV_LENGTH) {
+                throw new IllegalArgumentException("Encrypted data is truncated");
+            }
+
+            Cipher cipher = Cipher.getInstance(CIPHER_TRANSFORMATION);
+            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH, iv);
+            cipher.init(Cipher.DECRYPT_MODE, secretKey, parameterSpec);
+
+            return new CipherInputStream(encryptedData, cipher);
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage());
+            throw new Exception("Decryption failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Encrypt a stream into the segmented AES-256-GCM format
+     * ({@link #FORMAT_GCM_SEGMENTED}). Each segment carries its own nonce
+     * and tag, so it can be decrypted on its own. Files above the parallel
+     * threshold are encrypted on the crypto pool.
+     *
+     * @param data            Plaintext stream (closed when the returned stream is closed)
+     * @param key             Encryption key (Base64 encoded)
+     * @param plaintextLength Expected plaintext size, used to pick the engine
+     * @return Stream of the segmented container
+     */
+    public InputStream encryptSegmented(InputStream data, String key, long plaintextLength) throws Exception {
+        try {
+            SegmentedAesGcm scheme = SegmentedAesGcm.create(decodeKey(key), segmentSize);
+            if (useParallel(plaintextLength)) {
+                return new ParallelSegmentedEncryptingInputStream(data, scheme, cryptoPool,
+                        parallelWindow, segmentsPerTask);
+            }
+            return new SegmentedEncryptingInputStream(data, scheme);
+        } catch (Exception e) {
+            log.error("Encryption failed: {}", e.getMessage());
+            throw new Exception("Encryption failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decrypt a whole segmented container, releasing plaintext one verified
+     * segment at a time. Large files are decrypted on the crypto pool.
+     *
+     * @param encryptedData   Segmented container stream
+     * @param key             Encryption key (Base64 encoded)
+     * @param plaintextLength Original file size
+     * @return Decrypted stream
+     */
+    public InputStream decryptSegmented(InputStream encryptedData, String key, long plaintextLength)
+            throws Exception {
+        try {
+            SegmentedAesGcm scheme = readSegmentedHeader(encryptedData, key);
+            long segments = SegmentedAesGcm.segmentCount(plaintextLength, scheme.segmentSize());
+            if (useParallel(plaintextLength)) {
+                return new ParallelSegmentedDecryptingInputStream(encryptedData, scheme, 0, segments, segments,
+                        cryptoPool, parallelWindow, segmentsPerTask);
+            }
+            return new SegmentedDecryptingInputStream(encryptedData, scheme, 0, segments, segments);
+        } catch (Exception e) {
+            log.error("Decryption failed: {}", e.getMessage());
+            throw new Exception("Decryption failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Read the header of a segmented container and rebuild its scheme
+     */
+    public SegmentedAesGcm readSegmentedHeader(InputStream encryptedData, String key) throws Exception {
+        byte[] header = encryptedData.readNBytes(SegmentedAesGcm.HEADER_LENGTH);
+        return SegmentedAesGcm.fromHeader(decodeKey(key), header);
+    }
+
     /**
      * Generate a new AES-256 encryption key
      * 
@@ -133,6 +269,13 @@ public class EncryptionService {
         }
     }
 
+    /**
+     * Small files are not worth the hand-off to the crypto pool
+     */
+    private boolean useParallel(long plaintextLength) {
+        return cryptoPool != null && plaintextLength >= parallelThreshold;
+    }
+
     /**
      * Decode Base64 key to SecretKey
      */
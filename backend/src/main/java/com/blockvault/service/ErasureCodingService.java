@@ -0,0 +1,558 @@
+package com.blockvault.service;
+
+import com.blockvault.erasure.ReedSolomon;
+import com.blockvault.model.ErasureManifest;
+import com.blockvault.model.ErasureShard;
+import com.blockvault.repository.ErasureManifestRepository;
+import com.blockvault.repository.ErasureShardRepository;
+import com.blockvault.storage.StorageBackend;
+import com.blockvault.util.BoundedInputStream;
+import com.blockvault.util.ConcatenatedInputStream;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Erasure-coded storage: a file is cut into stripes of {@code data-shards}
+ * shards, each stripe gets {@code parity-shards} Reed-Solomon parity shards,
+ * and every shard is stored as its own CID, spread across the IPFS nodes.
+ * Any {@code data-shards} shards of a stripe rebuild it, so the file
+ * survives the loss of {@code parity-shards} nodes at a storage overhead of
+ * (data + parity) / data instead of a full copy per node.
+ *
+ * Shards are uploaded and fetched in parallel. Reads fetch the data shards
+ * first, as they hold the content unchanged, and only fall back to parity
+ * shards and decoding when some of them cannot be read.
+ */
+@Service
+@Slf4j
+public class ErasureCodingService {
+
+    public static final String LAYOUT_ERASURE = "ERASURE";
+
+    private final ErasureManifestRepository erasureManifestRepository;
+    private final ErasureShardRepository erasureShardRepository;
+    private final StorageBackend storageBackend;
+    private final PinQueueService pinQueueService;
+    private final ObjectProvider<ReplicationService> replicationService; // Only with the IPFS backend
+    private final ObjectMapper objectMapper;
+
+    private final Timer encodeTimer;
+    private final Timer decodeTimer;
+    private final Counter degradedReads;
+
+    @Value("${blockvault.erasure.enabled:false}")
+    private boolean enabled;
+
+    @Value("${blockvault.erasure.data-shards:4}")
+    private int dataShards;
+
+    @Value("${blockvault.erasure.parity-shards:2}")
+    private int parityShards;
+
+    @Value("${blockvault.erasure.shard-size:1048576}")
+    private int shardSize;
+
+    @Value("${blockvault.erasure.min-file-size:1048576}")
+    private long minFileSize;
+
+    @Value("${blockvault.erasure.threads:16}")
+    private int threads;
+
+    private ReedSolomon codec;
+    private ExecutorService shardPool;
+
+    public ErasureCodingService(ErasureManifestRepository erasureManifestRepository,
+                                ErasureShardRepository erasureShardRepository,
+                                StorageBackend storageBackend,
+                                PinQueueService pinQueueService,
+                                ObjectProvider<ReplicationService> replicationService,
+                                ObjectMapper objectMapper,
+                                MeterRegistry meterRegistry) {
+        this.erasureManifestRepository = erasureManifestRepository;
+        this.erasureShardRepository = erasureShardRepository;
+        this.storageBackend = storageBackend;
+        this.pinQueueService = pinQueueService;
+        this.replicationService = replicationService;
+        this.objectMapper = objectMapper;
+
+        this.encodeTimer = Timer.builder("blockvault.erasure.encode")
+                .description("Time spent computing parity for one stripe")
+                .register(meterRegistry);
+        this.decodeTimer = Timer.builder("blockvault.erasure.decode")
+                .description("Time spent rebuilding missing data shards of one stripe")
+                .register(meterRegistry);
+        this.degradedReads = Counter.builder("blockvault.erasure.degraded.reads")
+                .description("Stripes read with missing data shards")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void init() {
+        codec = new ReedSolomon(dataShards, parityShards);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        shardPool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "erasure-io-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shardPool.shutdownNow();
+    }
+
+    /**
+     * Whether content of this size is stored erasure-coded
+     */
+    public boolean accepts(long size) {
+        return enabled && size >= minFileSize;
+    }
+
+    /**
+     * Encode and store a file. Runs outside any transaction; the result is
+     * recorded with {@link #register} together with the file. The stream is
+     * consumed but not closed.
+     */
+    public ErasureCodedContent store(InputStream data, String filename) throws Exception {
+        int stripeBytes = dataShards * shardSize;
+        List<String> locations = storageBackend.locations();
+        if (locations.isEmpty()) {
+            throw new IOException("No storage location available");
+        }
+
+        List<ErasureShard> shards = new ArrayList<>();
+        List<List<String>> manifestStripes = new ArrayList<>();
+        List<CompletableFuture<String>> inFlight = List.of();
+        long size = 0;
+        int stripe = 0;
+
+        byte[] buffer = new byte[stripeBytes];
+        while (true) {
+            int read = data.readNBytes(buffer, 0, stripeBytes);
+            if (read == 0 && stripe > 0) {
+                break;
+            }
+
+            byte[][] stripeShards = split(buffer, read);
+            encodeTimer.record(() -> codec.encode(stripeShards, stripeShards[0].length));
+
+            // The previous stripe uploads while this one was read and encoded
+            collect(inFlight, stripe - 1, shards, manifestStripes);
+            inFlight = upload(stripeShards, stripe, locations, filename);
+
+            size += read;
+            stripe++;
+            if (read < stripeBytes) {
+                break;
+            }
+        }
+        collect(inFlight, stripe - 1, shards, manifestStripes);
+
+        Map<String, Object> manifestDocument = new LinkedHashMap<>();
+        manifestDocument.put("version", 1);
+        manifestDocument.put("codec", "reed-solomon");
+        manifestDocument.put("dataShards", dataShards);
+        manifestDocument.put("parityShards", parityShards);
+        manifestDocument.put("shardSize", shardSize);
+        manifestDocument.put("size", size);
+        manifestDocument.put("stripes", manifestStripes);
+        String manifestCid = storageBackend.put(objectMapper.writeValueAsBytes(manifestDocument),
+                filename + ".erasure.json");
+
+        ErasureManifest manifest = new ErasureManifest();
+        manifest.setManifestCid(manifestCid);
+        manifest.setDataShards(dataShards);
+        manifest.setParityShards(parityShards);
+        manifest.setShardSize(shardSize);
+        manifest.setSize(size);
+        manifest.setStripes(stripe);
+        for (ErasureShard shard : shards) {
+            shard.setManifestCid(manifestCid);
+        }
+
+        log.info("File erasure-coded: {} ({} stripes of {}+{} shards, {} bytes, manifest CID: {})",
+                filename, stripe, dataShards, parityShards, size, manifestCid);
+        return new ErasureCodedContent(manifest, shards);
+    }
+
+    /**
+     * Record the shards of a stored manifest within the caller's
+     * transaction and queue their pins. Shards are not replicated; parity
+     * takes the place of extra copies.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void register(ErasureCodedContent content) {
+        // Identical content produces the same manifest; its shards are recorded once
+        if (erasureManifestRepository.existsById(content.manifestCid())) {
+            return;
+        }
+
+        erasureManifestRepository.save(content.manifest());
+        erasureShardRepository.saveAll(content.shards());
+        for (ErasureShard shard : content.shards()) {
+            pinQueueService.enqueue(shard.getShardCid());
+        }
+    }
+
+    /**
+     * Stream an erasure-coded file
+     */
+    public InputStream open(String manifestCid) throws IOException {
+        ErasureManifest manifest = manifest(manifestCid);
+        return openRange(manifest, 0, manifest.getSize());
+    }
+
+    /**
+     * Stream a byte range of an erasure-coded file, fetching only the
+     * stripes that overlap it
+     */
+    public InputStream openRange(String manifestCid, long offset, long length) throws IOException {
+        return openRange(manifest(manifestCid), offset, length);
+    }
+
+    /**
+     * Drop a manifest within the caller's transaction and unpin shards no
+     * other manifest uses. Does nothing for CIDs that are not erasure
+     * manifests.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void releaseManifest(String manifestCid) {
+        if (!erasureManifestRepository.existsById(manifestCid)) {
+            return;
+        }
+
+        Set<String> shardCids = new LinkedHashSet<>();
+        for (ErasureShard shard : erasureShardRepository.findByManifestCidOrderByStripeIndexAscShardIndexAsc(manifestCid)) {
+            shardCids.add(shard.getShardCid());
+        }
+        erasureShardRepository.deleteByManifestCid(manifestCid);
+        erasureManifestRepository.deleteById(manifestCid);
+
+        List<String> unpin = new ArrayList<>();
+        for (String shardCid : shardCids) {
+            if (!erasureShardRepository.existsByShardCid(shardCid)) {
+                pinQueueService.cancel(shardCid);
+                unpin.add(shardCid);
+            }
+        }
+        replicationService.ifAvailable(replication -> replication.forget(unpin));
+        storageBackend.unpin(unpin);
+
+        log.info("Erasure manifest released: {} ({} shards unpinned)", manifestCid, unpin.size());
+    }
+
+    /**
+     * Unpin the shards of content that was stored but never registered,
+     * where no registered manifest uses them
+     */
+    @Transactional
+    public void discard(ErasureCodedContent content) {
+        // An identical upload registered the same manifest; its file now owns the shards
+        if (erasureManifestRepository.existsById(content.manifestCid())) {
+            return;
+        }
+
+        List<String> unpin = new ArrayList<>();
+        for (String shardCid : content.shards().stream().map(ErasureShard::getShardCid).distinct().toList()) {
+            if (!erasureShardRepository.existsByShardCid(shardCid)) {
+                pinQueueService.cancel(shardCid);
+                unpin.add(shardCid);
+            }
+        }
+        replicationService.ifAvailable(replication -> replication.forget(unpin));
+        storageBackend.unpin(unpin);
+
+        log.info("Unregistered erasure manifest discarded: {} ({} shards unpinned)",
+                content.manifestCid(), unpin.size());
+    }
+
+    private InputStream openRange(ErasureManifest manifest, long offset, long length) throws IOException {
+        long stripeBytes = (long) manifest.getDataShards() * manifest.getShardSize();
+        if (length == 0) {
+            return InputStream.nullInputStream();
+        }
+        int firstStripe = (int) (offset / stripeBytes);
+        int lastStripe = (int) ((offset + length - 1) / stripeBytes);
+
+        Map<Integer, String[]> shardCids = new LinkedHashMap<>();
+        for (ErasureShard shard : erasureShardRepository
+                .findByManifestCidAndStripeIndexBetweenOrderByStripeIndexAscShardIndexAsc(
+                        manifest.getManifestCid(), firstStripe, lastStripe)) {
+            shardCids.computeIfAbsent(shard.getStripeIndex(),
+                    key -> new String[manifest.getDataShards() + manifest.getParityShards()])
+                    [shard.getShardIndex()] = shard.getShardCid();
+        }
+
+        // Opening a stripe starts fetching the next one
+        StripeFetch[] fetches = new StripeFetch[lastStripe - firstStripe + 1];
+        fetches[0] = startFetch(manifest, firstStripe, shardCids.get(firstStripe));
+
+        List<ConcatenatedInputStream.StreamOpener> parts = new ArrayList<>();
+        for (int stripe = firstStripe; stripe <= lastStripe; stripe++) {
+            int index = stripe - firstStripe;
+            parts.add(() -> {
+                if (index + 1 < fetches.length) {
+                    int next = firstStripe + index + 1;
+                    fetches[index + 1] = startFetch(manifest, next, shardCids.get(next));
+                }
+                byte[] content = finishFetch(fetches[index]);
+                fetches[index] = null;
+                return new ByteArrayInputStream(content);
+            });
+        }
+
+        InputStream content = new ConcatenatedInputStream(parts);
+        content.skipNBytes(offset - firstStripe * stripeBytes);
+        return new BoundedInputStream(content, length);
+    }
+
+    // Splits a stripe's content into data shards of equal length and allocates its parity shards
+    private byte[][] split(byte[] buffer, int length) {
+        int shardLength = Math.max(1, (length + dataShards - 1) / dataShards);
+        byte[][] shards = new byte[dataShards + parityShards][];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new byte[shardLength];
+        }
+        for (int i = 0; i < dataShards; i++) {
+            int start = i * shardLength;
+            if (start < length) {
+                System.arraycopy(buffer, start, shards[i], 0, Math.min(shardLength, length - start));
+            }
+        }
+        return shards;
+    }
+
+    // Shard i of stripe s goes to location (s + i) mod n, so a stripe spans as many nodes as possible
+    private List<CompletableFuture<String>> upload(byte[][] shards, int stripe, List<String> locations,
+                                                   String filename) {
+        List<CompletableFuture<String>> uploads = new ArrayList<>();
+        for (int i = 0; i < shards.length; i++) {
+            byte[] shard = shards[i];
+            String location = locations.get((stripe + i) % locations.size());
+            String name = filename + ".s" + stripe + "." + i;
+            uploads.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return storageBackend.put(shard, name, location);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, shardPool));
+        }
+        return uploads;
+    }
+
+    private void collect(List<CompletableFuture<String>> uploads, int stripe, List<ErasureShard> shards,
+                         List<List<String>> manifestStripes) throws Exception {
+        if (uploads.isEmpty()) {
+            return;
+        }
+
+        List<String> cids = new ArrayList<>();
+        for (int i = 0; i < uploads.size(); i++) {
+            String cid = await(uploads.get(i));
+            ErasureShard shard = new ErasureShard();
+            shard.setStripeIndex(stripe);
+            shard.setShardIndex(i);
+            shard.setShardCid(cid);
+            shards.add(shard);
+            cids.add(cid);
+        }
+        manifestStripes.add(cids);
+    }
+
+    private StripeFetch startFetch(ErasureManifest manifest, int stripe, String[] shardCids) {
+        StripeFetch fetch = new StripeFetch(manifest, stripe, shardCids);
+        for (int i = 0; i < manifest.getDataShards(); i++) {
+            fetch.start(i);
+        }
+        return fetch;
+    }
+
+    /**
+     * Wait for a stripe's data shards; for each one that fails, fetch a
+     * parity shard instead and rebuild the missing data
+     */
+    private byte[] finishFetch(StripeFetch fetch) throws IOException {
+        int data = fetch.manifest.getDataShards();
+        int total = data + fetch.manifest.getParityShards();
+
+        byte[][] shards = new byte[total][];
+        boolean[] present = new boolean[total];
+        int available = 0;
+        int nextParity = data;
+        IOException lastError = null;
+
+        for (int i = 0; i < total && available < data; i++) {
+            if (fetch.shards[i] == null) {
+                continue;
+            }
+            try {
+                shards[i] = await(fetch.shards[i]);
+                present[i] = true;
+                available++;
+            } catch (IOException e) {
+                lastError = e;
+                log.warn("Shard {} of stripe {} of {} unavailable: {}",
+                        i, fetch.stripe, fetch.manifest.getManifestCid(), e.getMessage());
+            }
+
+            // Keep enough parity fetches running to cover every failure so far
+            int running = 0;
+            for (int j = i + 1; j < total; j++) {
+                if (fetch.shards[j] != null) {
+                    running++;
+                }
+            }
+            while (available + running < data && nextParity < total) {
+                if (fetch.shards[nextParity] == null) {
+                    fetch.start(nextParity);
+                    running++;
+                }
+                nextParity++;
+            }
+        }
+
+        if (available < data) {
+            throw new IOException("Cannot rebuild stripe " + fetch.stripe + " of " + fetch.manifest.getManifestCid()
+                    + ": only " + available + " of " + data + " shards readable"
+                    + (lastError != null ? " (" + lastError.getMessage() + ")" : ""));
+        }
+
+        int shardLength = fetch.shardLength();
+        for (int i = 0; i < total; i++) {
+            if (!present[i]) {
+                shards[i] = new byte[shardLength];
+            } else if (shards[i].length != shardLength) {
+                throw new IOException("Shard " + i + " of stripe " + fetch.stripe + " of "
+                        + fetch.manifest.getManifestCid() + " has the wrong size");
+            }
+        }
+        boolean degraded = false;
+        for (int i = 0; i < data; i++) {
+            degraded |= !present[i];
+        }
+        if (degraded) {
+            degradedReads.increment();
+            decodeTimer.record(() -> codec(fetch.manifest).reconstructData(shards, present, shardLength));
+        }
+
+        byte[] content = new byte[fetch.contentLength()];
+        for (int i = 0; i < data; i++) {
+            int start = i * shardLength;
+            if (start < content.length) {
+                System.arraycopy(shards[i], 0, content, start, Math.min(shardLength, content.length - start));
+            }
+        }
+        return content;
+    }
+
+    // Files keep the shard counts they were written with
+    private ReedSolomon codec(ErasureManifest manifest) {
+        if (manifest.getDataShards() == dataShards && manifest.getParityShards() == parityShards) {
+            return codec;
+        }
+        return new ReedSolomon(manifest.getDataShards(), manifest.getParityShards());
+    }
+
+    private ErasureManifest manifest(String manifestCid) throws IOException {
+        return erasureManifestRepository.findById(manifestCid)
+                .orElseThrow(() -> new IOException("Erasure manifest not found: " + manifestCid));
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while transferring shards");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw cause instanceof IOException io ? io : new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Shard fetches of one stripe, started on demand
+     */
+    private class StripeFetch {
+
+        private final ErasureManifest manifest;
+        private final int stripe;
+        private final String[] shardCids;
+        private final CompletableFuture<byte[]>[] shards;
+
+        @SuppressWarnings("unchecked")
+        StripeFetch(ErasureManifest manifest, int stripe, String[] shardCids) {
+            this.manifest = manifest;
+            this.stripe = stripe;
+            this.shardCids = shardCids;
+            this.shards = new CompletableFuture[manifest.getDataShards() + manifest.getParityShards()];
+        }
+
+        void start(int shard) {
+            String cid = shardCids != null ? shardCids[shard] : null;
+            if (cid == null) {
+                shards[shard] = CompletableFuture.failedFuture(new IOException("Shard record missing"));
+                return;
+            }
+            shards[shard] = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return storageBackend.get(cid);
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+            }, shardPool);
+        }
+
+        int contentLength() {
+            long stripeBytes = (long) manifest.getDataShards() * manifest.getShardSize();
+            return (int) Math.min(stripeBytes, manifest.getSize() - stripe * stripeBytes);
+        }
+
+        int shardLength() {
+            return Math.max(1, (contentLength() + manifest.getDataShards() - 1) / manifest.getDataShards());
+        }
+    }
+
+    /**
+     * Shards written for a file, to be recorded with {@link #register}
+     */
+    public record ErasureCodedContent(ErasureManifest manifest, List<ErasureShard> shards) {
+
+        public String manifestCid() {
+            return manifest.getManifestCid();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.blockvault.service;
+
+import com.blockvault.repository.FileDownloadItem;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An opened download: the file's download columns plus a stream of its
+ * (decrypted) content, or of a byte range of it. The caller owns the
+ * stream and must close it.
+ */
+@Getter
+@AllArgsConstructor
+public class FileDownload implements Closeable {
+
+    private final FileDownloadItem file;
+
+    private final InputStream content;
+
+    private final long offset; // First plaintext byte served
+
+    private final long contentLength; // Plaintext bytes served
+
+    public boolean isPartial() {
+        return offset != 0 || contentLength != file.fileSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        content.close();
+    }
+}
@@ -1,33 +1,73 @@
 package com.blockvault.service;
 
+import com.blockvault.cache.HotObjectCache;
+import com.blockvault.crypto.SegmentedAesGcm;
+import com.blockvault.crypto.SegmentedDecryptingInputStream;
 import com.blockvault.model.FileMetadata;
 import com.blockvault.model.FileVersion;
 import com.blockvault.model.User;
+import com.blockvault.repository.FileBatchRepository;
+import com.blockvault.repository.FileDownloadItem;
+import com.blockvault.repository.FileListItem;
 import com.blockvault.repository.FileMetadataRepository;
 import com.blockvault.repository.FileVersionRepository;
+import com.blockvault.repository.UserRepository;
+import com.blockvault.storage.StorageBackend;
+import com.blockvault.util.BoundedInputStream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FileService {
 
+    // Bounds the IN lists of bulk statements
+    private static final int BULK_BATCH_SIZE = 1000;
+
     private final FileMetadataRepository fileMetadataRepository;
     private final FileVersionRepository fileVersionRepository;
-    private final IPFSService ipfsService;
+    private final UserRepository userRepository;
+    private final StorageBackend storageBackend;
     private final EncryptionService encryptionService;
+    private final CidReferenceService cidReferenceService;
+    private final ChunkStoreService chunkStoreService;
+    private final ErasureCodingService erasureCodingService;
+    private final CompressionService compressionService;
+    private final HotObjectCache hotObjectCache;
+    private final PinQueueService pinQueueService;
+    private final FileBatchRepository fileBatchRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${blockvault.listing.default-page-size:50}")
+    private int defaultPageSize;
+
+    @Value("${blockvault.listing.max-page-size:500}")
+    private int maxPageSize;
 
     /**
      * Upload file to IPFS with optional encryption
      */
-    @Transactional
     public FileMetadata uploadFile(MultipartFile file, User user, boolean encrypt, String encryptionKey)
             throws Exception {
         // Validate file
@@ -35,99 +75,440 @@ public class FileService {
             throw new Exception("File is empty");
         }
 
-        long fileSize = file.getSize();
+        return storeFile(file.getInputStream(), file.getSize(), file.getOriginalFilename(),
+                file.getContentType(), user, encrypt, encryptionKey);
+    }
 
-        // Check storage quota
-        if (!user.hasStorageSpace(fileSize)) {
+    /**
+     * Store file content: optional encryption, IPFS add, then metadata and
+     * initial version. Storage usage is reserved before any bytes are
+     * written; the content is added before the database transaction starts,
+     * and pinning is queued, so no transaction is held open while bytes
+     * move. If the file cannot be recorded, the reservation is given back
+     * and the written content removed. The stream is consumed and closed.
+     */
+    public FileMetadata storeFile(InputStream data, long fileSize, String filename, String contentType,
+                                  User user, boolean encrypt, String encryptionKey) throws Exception {
+        // Conditional update, so concurrent uploads cannot overrun the quota
+        Integer reserved = transactionTemplate.execute(status -> userRepository.reserveStorage(user.getId(), fileSize));
+        if (reserved == null || reserved == 0) {
+            data.close();
             throw new Exception("Storage quota exceeded. Please upgrade your plan.");
         }
 
-        byte[] fileData = file.getBytes();
-        String filename = file.getOriginalFilename();
+        StagedFile staged = null;
+        FileMetadata savedMetadata;
+        try {
+            staged = writeContent(data, fileSize, filename, contentType, user, encrypt, encryptionKey);
+
+            StagedFile content = staged;
+            savedMetadata = transactionTemplate.execute(status -> {
+                registerContent(content);
+                FileMetadata saved = fileMetadataRepository.save(content.metadata());
+
+                // Create initial version
+                fileVersionRepository.save(initialVersion(saved));
+                acquireContent(saved.getCid());
+                return saved;
+            });
+        } catch (Exception e) {
+            transactionTemplate.executeWithoutResult(status -> userRepository.releaseStorage(user.getId(), fileSize));
+            if (staged != null) {
+                discardContent(staged);
+            }
+            throw e;
+        }
+
+        log.info("File uploaded successfully: {} (CID: {})", filename, savedMetadata.getCid());
+
+        // Note: The actual encryption key should be returned to the user in the
+        // response
+        // so they can save it securely. We don't store the actual key, only its hash.
+
+        return savedMetadata;
+    }
+
+    /**
+     * Record files whose content was written by {@link #writeContent} in one
+     * transaction, with their rows inserted in JDBC batches. Storage usage is
+     * not touched; the caller has reserved it.
+     */
+    public List<FileMetadata> persistBatch(List<StagedFile> stagedFiles) {
+        return transactionTemplate.execute(status -> {
+            List<FileMetadata> files = new ArrayList<>(stagedFiles.size());
+            for (StagedFile staged : stagedFiles) {
+                registerContent(staged);
+                files.add(staged.metadata());
+            }
 
+            fileBatchRepository.insertFiles(files);
+            fileBatchRepository.insertVersions(files.stream().map(this::initialVersion).toList());
+
+            for (FileMetadata file : files) {
+                acquireContent(file.getCid());
+            }
+            return files;
+        });
+    }
+
+    /**
+     * Write file content to storage and build its metadata, without touching
+     * the database. Hashing, compression and encryption happen on the fly.
+     * The stream is consumed and closed.
+     */
+    public StagedFile writeContent(InputStream data, long fileSize, String filename, String contentType,
+                                   User user, boolean encrypt, String encryptionKey) throws Exception {
         // Encrypt if requested
         String actualEncryptionKey = encryptionKey;
-        if (encrypt) {
-            if (encryptionKey == null || encryptionKey.trim().isEmpty()) {
-                // Generate new key if not provided
-                actualEncryptionKey = encryptionService.generateKey();
+        if (encrypt && (encryptionKey == null || encryptionKey.trim().isEmpty())) {
+            // Generate new key if not provided
+            actualEncryptionKey = encryptionService.generateKey();
+        }
+
+        // Large files are erasure-coded, encrypted or not; parity shards replace extra copies
+        boolean erasureCoded = erasureCodingService.accepts(fileSize);
+
+        // Ciphertext never repeats across uploads, so only plaintext goes through the chunk store
+        boolean chunked = !erasureCoded && !encrypt && chunkStoreService.isEnabled();
+
+        // Stream the upload straight into IPFS; hashing, compression and encryption happen on the fly
+        String cid;
+        ChunkStoreService.ChunkedContent chunkedContent = null;
+        ErasureCodingService.ErasureCodedContent erasureCodedContent = null;
+        CompressionService.Compression compression = null;
+        MessageDigest contentDigest = MessageDigest.getInstance("SHA-256");
+        try (InputStream fileData = new DigestInputStream(data, contentDigest)) {
+            if (chunked) {
+                // Compressed chunks would no longer match across files, so chunked content is stored as is
+                chunkedContent = chunkStoreService.store(fileData, filename);
+                cid = chunkedContent.manifestCid();
+            } else {
+                compression = compressionService.compress(fileData, getFileType(filename), fileSize);
+                InputStream content = encrypt
+                        ? encryptionService.encryptSegmented(compression.content(), actualEncryptionKey, fileSize)
+                        : compression.content();
+                if (erasureCoded) {
+                    erasureCodedContent = erasureCodingService.store(content, filename);
+                    cid = erasureCodedContent.manifestCid();
+                } else {
+                    cid = storageBackend.put(content, filename);
+                }
             }
+        }
 
-            fileData = encryptionService.encrypt(fileData, actualEncryptionKey);
+        if (encrypt) {
             log.info("File encrypted: {}", filename);
         }
 
-        // Upload to IPFS
-        String cid = ipfsService.uploadFile(fileData, filename);
-
         // Create file metadata
         FileMetadata fileMetadata = new FileMetadata();
         fileMetadata.setFilename(filename);
         fileMetadata.setCid(cid);
         fileMetadata.setFileSize(fileSize);
         fileMetadata.setFileType(getFileType(filename));
-        fileMetadata.setContentType(file.getContentType());
+        fileMetadata.setContentType(contentType);
+        fileMetadata.setContentHash(HexFormat.of().formatHex(contentDigest.digest()));
         fileMetadata.setEncrypted(encrypt);
+        fileMetadata.setStorageLayout(chunked ? ChunkStoreService.LAYOUT_CHUNKED
+                : erasureCoded ? ErasureCodingService.LAYOUT_ERASURE : null);
+        if (compression != null && compression.codec() != null) {
+            fileMetadata.setCompressionCodec(compression.codec());
+            fileMetadata.setCompressedSize(compression.content().getCount());
+            log.info("File compressed: {} ({} -> {} bytes)", filename, fileSize, compression.content().getCount());
+        }
         fileMetadata.setUser(user);
-        fileMetadata.setPinned(true);
-        fileMetadata.setReplicationCount(1);
+        fileMetadata.setPinned(false); // The add does not pin; the pin queue does once the file is recorded
+        fileMetadata.setPinStatus(FileMetadata.PIN_PENDING);
+        fileMetadata.setReplicationCount(0); // Set by the replication manager as copies are confirmed
         fileMetadata.setCurrentVersion(1);
 
         if (encrypt && actualEncryptionKey != null) {
             fileMetadata.setEncryptionKeyHash(encryptionService.hashKey(actualEncryptionKey));
+            fileMetadata.setEncryptionFormat(EncryptionService.FORMAT_GCM_SEGMENTED);
+        }
+
+        return new StagedFile(fileMetadata, chunkedContent, erasureCodedContent);
+    }
+
+    /**
+     * Remove what {@link #writeContent} stored for a file that was never
+     * recorded: its object, and the chunks or shards no recorded file uses.
+     * Failures are logged; content left behind is unpinned, so the daemon's
+     * garbage collector still reclaims it.
+     */
+    public void discardContent(StagedFile staged) {
+        String cid = staged.metadata().getCid();
+        try {
+            if (staged.chunks() != null) {
+                chunkStoreService.discard(staged.chunks());
+            }
+            if (staged.shards() != null) {
+                erasureCodingService.discard(staged.shards());
+            }
+            cidReferenceService.unpinIfUnreferenced(cid);
+            log.info("Discarded content of unrecorded file {} (CID: {})", staged.metadata().getFilename(), cid);
+        } catch (RuntimeException e) {
+            log.warn("Could not discard content {}: {}", cid, e.getMessage());
+        }
+    }
+
+    private void registerContent(StagedFile staged) {
+        if (staged.chunks() != null) {
+            chunkStoreService.register(staged.chunks());
+        }
+        if (staged.shards() != null) {
+            erasureCodingService.register(staged.shards());
+        }
+    }
+
+    private FileVersion initialVersion(FileMetadata fileMetadata) {
+        FileVersion version = new FileVersion();
+        version.setFileMetadata(fileMetadata);
+        version.setVersionNumber(1);
+        version.setCid(fileMetadata.getCid());
+        version.setFileSize(fileMetadata.getFileSize());
+        version.setDescription("Initial upload");
+        return version;
+    }
+
+    private void acquireContent(String cid) {
+        // The first reference queues the pin itself; later ones still need this record confirmed
+        if (cidReferenceService.acquire(cid) > 1) {
+            pinQueueService.enqueue(cid);
+        }
+    }
+
+    /**
+     * Record a new file that reuses already stored content, so the client
+     * does not have to send the bytes again. Only the user's own files are
+     * considered: a hash and size are no proof of holding the bytes, so
+     * linking to another user's content would hand it out, and the answer
+     * would reveal that someone stores it. Identical uploads from different
+     * users still share one stored object through the CID refcounts.
+     * Encrypted content is only reused from files encrypted with the same key.
+     *
+     * @return The linked file, or empty when the content must be uploaded
+     */
+    @Transactional
+    public Optional<FileMetadata> linkExistingContent(String contentHash, long fileSize, String filename,
+                                                      String contentType, User user, boolean encrypt,
+                                                      String encryptionKey) throws Exception {
+        if (contentHash == null || !contentHash.matches("[0-9a-fA-F]{64}")) {
+            throw new Exception("A SHA-256 content hash (hex) is required");
+        }
+        if (encrypt && (encryptionKey == null || encryptionKey.trim().isEmpty())) {
+            // A generated key can never match existing ciphertext
+            return Optional.empty();
+        }
+
+        String keyHash = encrypt ? encryptionService.hashKey(encryptionKey) : null;
+
+        Optional<FileMetadata> source = fileMetadataRepository
+                .findByUserIdAndContentHashAndFileSize(user.getId(), contentHash.toLowerCase(), fileSize).stream()
+                .filter(f -> f.getEncrypted() == encrypt)
+                .filter(f -> !encrypt || keyHash.equals(f.getEncryptionKeyHash()))
+                .findFirst();
+
+        if (source.isEmpty()) {
+            return Optional.empty();
         }
 
+        // Charge storage usage first; nothing has been written if the quota is exceeded
+        if (userRepository.reserveStorage(user.getId(), fileSize) == 0) {
+            throw new Exception("Storage quota exceeded. Please upgrade your plan.");
+        }
+
+        FileMetadata existing = source.get();
+
+        FileMetadata fileMetadata = new FileMetadata();
+        fileMetadata.setFilename(filename);
+        fileMetadata.setCid(existing.getCid());
+        fileMetadata.setFileSize(fileSize);
+        fileMetadata.setFileType(getFileType(filename));
+        fileMetadata.setContentType(contentType != null ? contentType : existing.getContentType());
+        fileMetadata.setContentHash(existing.getContentHash());
+        fileMetadata.setEncrypted(encrypt);
+        fileMetadata.setEncryptionKeyHash(existing.getEncryptionKeyHash());
+        fileMetadata.setEncryptionFormat(existing.getEncryptionFormat());
+        fileMetadata.setStorageLayout(existing.getStorageLayout());
+        fileMetadata.setCompressionCodec(existing.getCompressionCodec());
+        fileMetadata.setCompressedSize(existing.getCompressedSize());
+        fileMetadata.setUser(user);
+        fileMetadata.setPinned(existing.getPinned());
+        fileMetadata.setPinStatus(existing.getPinStatus());
+        fileMetadata.setReplicationCount(existing.getReplicationCount());
+        fileMetadata.setCurrentVersion(1);
+
         FileMetadata savedMetadata = fileMetadataRepository.save(fileMetadata);
 
         // Create initial version
         FileVersion version = new FileVersion();
         version.setFileMetadata(savedMetadata);
         version.setVersionNumber(1);
-        version.setCid(cid);
+        version.setCid(existing.getCid());
         version.setFileSize(fileSize);
-        version.setDescription("Initial upload");
+        version.setDescription("Initial upload (existing content)");
         fileVersionRepository.save(version);
+        if (cidReferenceService.acquire(existing.getCid()) == 1) {
+            // The content had just been released; it is pinned again through the queue
+            savedMetadata.setPinned(false);
+            savedMetadata.setPinStatus(FileMetadata.PIN_PENDING);
+        }
 
-        // Update user storage usage
-        user.updateStorageUsage(fileSize);
-
-        log.info("File uploaded successfully: {} (CID: {})", filename, cid);
+        log.info("File linked to existing content: {} (CID: {})", filename, existing.getCid());
+        return Optional.of(savedMetadata);
+    }
 
-        // Note: The actual encryption key should be returned to the user in the
-        // response
-        // so they can save it securely. We don't store the actual key, only its hash.
+    /**
+     * Resolve and authorize the metadata of a file to download, with one
+     * index lookup that reads only the columns downloads use
+     */
+    public FileDownloadItem getDownloadMetadata(String cid, User user) throws Exception {
+        // Only the user's own records are considered; other users may hold the same CID
+        return fileMetadataRepository.findDownloadItems(cid, user.getId(), PageRequest.of(0, 1)).stream()
+                .findFirst()
+                .orElseThrow(() -> new Exception("File not found"));
+    }
 
-        return savedMetadata;
+    /**
+     * Whether byte ranges of the file can be served without reading the whole
+     * object. Single-blob encrypted files can only be verified as a whole, and
+     * compressed files can only be decompressed from the start.
+     */
+    public boolean supportsRange(FileDownloadItem file) {
+        return file.compressionCodec() == null && (!file.encrypted() || isSegmented(file));
     }
 
     /**
-     * Download file from IPFS with optional decryption
+     * Open a streaming download of {@code length} plaintext bytes starting at
+     * {@code offset}. For segmented encrypted files only the segments that
+     * overlap the range are fetched and decrypted.
      */
-    public byte[] downloadFile(String cid, User user, String decryptionKey) throws Exception {
-        // Get file metadata
-        FileMetadata fileMetadata = fileMetadataRepository.findByCid(cid)
-                .orElseThrow(() -> new Exception("File not found"));
+    public FileDownload openDownload(FileDownloadItem file, String decryptionKey, long offset, long length)
+            throws Exception {
+        String cid = file.cid();
+        long fileSize = file.fileSize();
+        boolean partial = offset != 0 || length != fileSize;
 
-        // Check if user owns the file or it's shared
-        if (!fileMetadata.getUser().getId().equals(user.getId())) {
-            throw new Exception("Access denied");
+        if (offset < 0 || length < 0 || offset + length > fileSize) {
+            throw new Exception("Requested range is outside the file");
+        }
+        if (partial && !supportsRange(file)) {
+            throw new Exception("Range requests are not supported for this file");
+        }
+        if (file.encrypted() && (decryptionKey == null || decryptionKey.trim().isEmpty())) {
+            throw new Exception("Decryption key required for encrypted file");
+        }
+
+        InputStream content;
+        if (isHotCandidate(file)) {
+            content = openHotContent(file, decryptionKey, offset, length);
+        } else if (!partial) {
+            content = openFullContent(file, decryptionKey);
+        } else if (isChunked(file)) {
+            content = chunkStoreService.openRange(cid, offset, length);
+        } else if (!file.encrypted()) {
+            content = openStoredRange(file, offset, length);
+        } else {
+            content = openSegmentedRange(file, decryptionKey, offset, length);
+        }
+
+        log.info("File downloaded: {} (CID: {}, bytes {}-{})", file.filename(), cid, offset, offset + length - 1);
+        return new FileDownload(file, content, offset, length);
+    }
+
+    private InputStream openFullContent(FileDownloadItem file, String decryptionKey) throws Exception {
+        // Chunked files are reassembled from their manifest
+        if (isChunked(file)) {
+            return chunkStoreService.open(file.cid());
+        }
+
+        // Erasure-coded files are rebuilt from their shards
+        if (isErasureCoded(file)) {
+            return decodeContent(file, erasureCodingService.open(file.cid()), decryptionKey);
         }
 
         // Download from IPFS
-        byte[] fileData = ipfsService.downloadFile(cid);
+        return decodeContent(file, storageBackend.getStream(file.cid()), decryptionKey);
+    }
 
-        // Decrypt if encrypted
-        if (fileMetadata.getEncrypted()) {
-            if (decryptionKey == null || decryptionKey.trim().isEmpty()) {
-                throw new Exception("Decryption key required for encrypted file");
+    // Stored bytes of a single-object or erasure-coded file
+    private InputStream openStoredRange(FileDownloadItem file, long offset, long length) throws Exception {
+        if (isErasureCoded(file)) {
+            return erasureCodingService.openRange(file.cid(), offset, length);
+        }
+        return storageBackend.getRange(file.cid(), offset, length);
+    }
+
+    /**
+     * Small files of hot types are read whole from the in-memory cache, which
+     * holds the raw stored bytes; ranges are cut from the decrypted content.
+     */
+    private InputStream openHotContent(FileDownloadItem file, String decryptionKey, long offset, long length)
+            throws Exception {
+        String cid = file.cid();
+        byte[] raw = hotObjectCache.get(cid).orElse(null);
+        if (raw == null) {
+            raw = storageBackend.get(cid);
+            hotObjectCache.put(cid, raw);
+        }
+
+        InputStream content = decodeContent(file, new ByteArrayInputStream(raw), decryptionKey);
+        content.skipNBytes(offset);
+        return new BoundedInputStream(content, length);
+    }
+
+    // Decrypt and decompress stored content back to the original bytes
+    private InputStream decodeContent(FileDownloadItem file, InputStream content, String decryptionKey)
+            throws Exception {
+        if (file.encrypted()) {
+            try {
+                // Files without an encryption format predate segmenting and hold one blob
+                content = isSegmented(file)
+                        ? encryptionService.decryptSegmented(content, decryptionKey, encryptedLength(file))
+                        : encryptionService.decryptStream(content, decryptionKey);
+            } catch (Exception e) {
+                content.close();
+                throw e;
             }
+            log.info("File decrypted: {}", file.filename());
+        }
 
-            fileData = encryptionService.decrypt(fileData, decryptionKey);
-            log.info("File decrypted: {}", fileMetadata.getFilename());
+        return compressionService.decompress(content, file.compressionCodec());
+    }
+
+    // Plaintext length as seen by encryption, which runs after compression
+    private long encryptedLength(FileDownloadItem file) {
+        return file.compressedSize() != null ? file.compressedSize() : file.fileSize();
+    }
+
+    private InputStream openSegmentedRange(FileDownloadItem file, String decryptionKey, long offset, long length)
+            throws Exception {
+        long fileSize = file.fileSize();
+
+        SegmentedAesGcm scheme;
+        try (InputStream header = openStoredRange(file, 0, SegmentedAesGcm.HEADER_LENGTH)) {
+            scheme = encryptionService.readSegmentedHeader(header, decryptionKey);
         }
 
-        log.info("File downloaded: {} (CID: {})", fileMetadata.getFilename(), cid);
-        return fileData;
+        int segmentSize = scheme.segmentSize();
+        long totalSegments = SegmentedAesGcm.segmentCount(fileSize, segmentSize);
+        long firstSegment = offset / segmentSize;
+        long endSegment = (offset + length - 1) / segmentSize + 1;
+
+        long cipherStart = scheme.ciphertextOffset(firstSegment);
+        long cipherEnd = Math.min(scheme.ciphertextOffset(endSegment),
+                SegmentedAesGcm.ciphertextLength(fileSize, segmentSize));
+
+        InputStream content = openStoredRange(file, cipherStart, cipherEnd - cipherStart);
+        try {
+            content = new SegmentedDecryptingInputStream(content, scheme, firstSegment, endSegment, totalSegments);
+            content.skipNBytes(offset - firstSegment * segmentSize);
+            return new BoundedInputStream(content, length);
+        } catch (Exception e) {
+            content.close();
+            throw e;
+        }
     }
 
     /**
@@ -137,6 +518,56 @@ public class FileService {
         return fileMetadataRepository.findByUserIdOrderByUploadedAtDesc(user.getId());
     }
 
+    /**
+     * One page of the user's files, newest first. Pages are keyed on
+     * (uploadedAt, id) of the last file of the previous page, so every page
+     * is an index range scan no matter how deep it is.
+     *
+     * @param cursor    {@link FilePage#nextCursor} of the previous page; null for the first page
+     * @param fileType  Only files of this type when set
+     * @param encrypted Only encrypted (or only plain) files when set
+     */
+    public FilePage listFiles(User user, String cursor, Integer size, String fileType, Boolean encrypted)
+            throws Exception {
+        int pageSize = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        // One extra row tells whether another page follows
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+
+        List<FileListItem> items;
+        if (cursor == null || cursor.isEmpty()) {
+            items = fileMetadataRepository.findListFirstPage(user.getId(), fileType, encrypted, limit);
+        } else {
+            CursorPosition after = decodeCursor(cursor);
+            items = fileMetadataRepository.findListPageAfter(user.getId(), after.uploadedAt(), after.id(),
+                    fileType, encrypted, limit);
+        }
+
+        if (items.size() <= pageSize) {
+            return new FilePage(items, null);
+        }
+        items = items.subList(0, pageSize);
+        FileListItem last = items.get(pageSize - 1);
+        return new FilePage(items, encodeCursor(last.uploadedAt(), last.id()));
+    }
+
+    private String encodeCursor(LocalDateTime uploadedAt, Long id) {
+        String position = uploadedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private CursorPosition decodeCursor(String cursor) throws Exception {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] position = decoded.split("\\|");
+            if (position.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            return new CursorPosition(LocalDateTime.parse(position[0]), Long.parseLong(position[1]));
+        } catch (RuntimeException e) {
+            throw new Exception("Invalid cursor");
+        }
+    }
+
     /**
      * Get recent files for dashboard
      */
@@ -165,11 +596,13 @@ public class FileService {
     public void deleteFile(Long id, User user) throws Exception {
         FileMetadata fileMetadata = getFileById(id, user);
 
-        // Unpin from IPFS
-        ipfsService.unpinFile(fileMetadata.getCid());
+        // Release each version's content; it is unpinned once nothing references it
+        for (FileVersion version : fileVersionRepository.findByFileMetadataIdOrderByVersionNumberDesc(id)) {
+            cidReferenceService.release(version.getCid());
+        }
 
         // Update user storage
-        user.updateStorageUsage(-fileMetadata.getFileSize());
+        userRepository.releaseStorage(user.getId(), fileMetadata.getFileSize());
 
         // Delete metadata (versions will be cascaded)
         fileMetadataRepository.delete(fileMetadata);
@@ -177,6 +610,63 @@ public class FileService {
         log.info("File deleted: {} (CID: {})", fileMetadata.getFilename(), fileMetadata.getCid());
     }
 
+    /**
+     * Delete the user's files among {@code ids} in one transaction. Unknown
+     * IDs and other users' files are skipped.
+     */
+    @Transactional
+    public BulkDeleteResult deleteFiles(List<Long> ids, User user) {
+        List<Long> distinct = ids.stream().distinct().toList();
+        List<Long> owned = new ArrayList<>();
+        for (int start = 0; start < distinct.size(); start += BULK_BATCH_SIZE) {
+            owned.addAll(fileMetadataRepository.findOwnedIds(user.getId(),
+                    distinct.subList(start, Math.min(start + BULK_BATCH_SIZE, distinct.size()))));
+        }
+        return deleteOwnedFiles(owned, user);
+    }
+
+    /**
+     * Delete all of the user's files matching a filter in one transaction
+     */
+    @Transactional
+    public BulkDeleteResult deleteFilesMatching(String fileType, LocalDateTime uploadedBefore, User user)
+            throws Exception {
+        if (fileType == null && uploadedBefore == null) {
+            throw new Exception("A file type or upload date filter is required");
+        }
+        return deleteOwnedFiles(fileMetadataRepository.findIdsByFilter(user.getId(), fileType, uploadedBefore), user);
+    }
+
+    /**
+     * Remove versions and records with bulk statements, release their
+     * content with one count update per CID (unpinned in batches after
+     * commit) and adjust the user's storage once.
+     */
+    private BulkDeleteResult deleteOwnedFiles(List<Long> ids, User user) {
+        long freedBytes = 0;
+        Map<String, Long> references = new HashMap<>();
+
+        for (int start = 0; start < ids.size(); start += BULK_BATCH_SIZE) {
+            List<Long> batch = ids.subList(start, Math.min(start + BULK_BATCH_SIZE, ids.size()));
+
+            freedBytes += fileMetadataRepository.sumFileSize(batch);
+            for (Object[] row : fileVersionRepository.countReferencesByCidForFiles(batch)) {
+                references.merge((String) row[0], ((Number) row[1]).longValue(), Long::sum);
+            }
+
+            fileVersionRepository.deleteByFileMetadataIdIn(batch);
+            fileMetadataRepository.deleteByIdIn(batch);
+        }
+
+        cidReferenceService.releaseAll(references);
+
+        // Update user storage
+        userRepository.releaseStorage(user.getId(), freedBytes);
+
+        log.info("Bulk deleted {} files ({} bytes, {} CIDs released)", ids.size(), freedBytes, references.size());
+        return new BulkDeleteResult(ids.size(), freedBytes);
+    }
+
     /**
      * Get file versions
      */
@@ -194,6 +684,45 @@ public class FileService {
         return gatewayUrl + fileMetadata.getCid();
     }
 
+    private boolean isSegmented(FileDownloadItem file) {
+        return EncryptionService.FORMAT_GCM_SEGMENTED.equals(file.encryptionFormat());
+    }
+
+    /**
+     * File content written to storage, with metadata ready to be saved
+     */
+    public record StagedFile(FileMetadata metadata, ChunkStoreService.ChunkedContent chunks,
+                             ErasureCodingService.ErasureCodedContent shards) {
+    }
+
+    /**
+     * A page of a file listing; {@code nextCursor} is null on the last page
+     */
+    public record FilePage(List<FileListItem> files, String nextCursor) {
+    }
+
+    private record CursorPosition(LocalDateTime uploadedAt, long id) {
+    }
+
+    /**
+     * Outcome of a bulk delete
+     */
+    public record BulkDeleteResult(int deleted, long freedBytes) {
+    }
+
+    private boolean isHotCandidate(FileDownloadItem file) {
+        return !isChunked(file) && !isErasureCoded(file)
+                && hotObjectCache.accepts(file.fileType(), file.fileSize());
+    }
+
+    private boolean isChunked(FileDownloadItem file) {
+        return ChunkStoreService.LAYOUT_CHUNKED.equals(file.storageLayout());
+    }
+
+    private boolean isErasureCoded(FileDownloadItem file) {
+        return ErasureCodingService.LAYOUT_ERASURE.equals(file.storageLayout());
+    }
+
     /**
      * Determine file type from filename
      */
@@ -1,136 +1,535 @@
 package com.blockvault.service;
 
-import io.ipfs.api.IPFS;
-import io.ipfs.api.MerkleNode;
-import io.ipfs.api.NamedStreamable;
+import com.blockvault.cache.DiskBlockCache;
+import com.blockvault.ipfs.IpfsApiException;
+import com.blockvault.ipfs.IpfsNode;
+import com.blockvault.ipfs.IpfsNodePool;
 import io.ipfs.multihash.Multihash;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 @Service
+@ConditionalOnProperty(name = "blockvault.storage.backend", havingValue = "ipfs", matchIfMissing = true)
+@RequiredArgsConstructor
 @Slf4j
 public class IPFSService {
 
-    @Value("${ipfs.host}")
-    private String ipfsHost;
+    private final DiskBlockCache blockCache;
+    private final IpfsNodePool nodePool;
+    private final MeterRegistry meterRegistry;
 
-    @Value("${ipfs.port}")
-    private int ipfsPort;
+    @Value("${ipfs.timeout}")
+    private long ipfsTimeout;
 
-    @Value("${ipfs.protocol}")
-    private String ipfsProtocol;
+    @Value("${ipfs.hedge.enabled:true}")
+    private boolean hedgeEnabled;
 
-    private IPFS ipfs;
+    @Value("${ipfs.hedge.initial-delay-ms:250}")
+    private long hedgeInitialDelayMs; // Used until enough latencies have been seen
+
+    @Value("${ipfs.hedge.min-delay-ms:20}")
+    private long hedgeMinDelayMs;
+
+    @Value("${ipfs.hedge.max-delay-ms:2000}")
+    private long hedgeMaxDelayMs;
+
+    private Counter hedgedReads;
+    private Counter hedgeWins;
 
     @PostConstruct
     public void init() {
-        try {
-            ipfs = new IPFS("/ip4/" + ipfsHost + "/tcp/" + ipfsPort);
-            log.info("Connected to IPFS node at {}://{}:{}", ipfsProtocol, ipfsHost, ipfsPort);
-
-            // Test connection
-            String version = ipfs.version();
-            log.info("IPFS version: {}", version);
-        } catch (Exception e) {
-            log.error("Failed to connect to IPFS node: {}", e.getMessage());
-            log.warn("IPFS features will not be available. Please start IPFS daemon.");
-        }
+        hedgedReads = Counter.builder("blockvault.ipfs.reads.hedged")
+                .description("Reads that were also sent to a second node")
+                .register(meterRegistry);
+        hedgeWins = Counter.builder("blockvault.ipfs.reads.hedge.wins")
+                .description("Hedged reads answered first by the second node")
+                .register(meterRegistry);
     }
 
     /**
-     * Upload file to IPFS
-     * 
+     * Upload file to IPFS. If the chosen node fails, the next best node is
+     * tried.
+     *
      * @param data     File data as byte array
      * @param filename Original filename
      * @return IPFS CID (Content Identifier)
      */
     public String uploadFile(byte[] data, String filename) throws IOException {
-        if (ipfs == null) {
-            throw new RuntimeException("IPFS connection not available. Please start IPFS daemon.");
-        }
+        return uploadFile(data, filename, null);
+    }
 
-        try {
-            NamedStreamable.ByteArrayWrapper file = new NamedStreamable.ByteArrayWrapper(filename, data);
-            MerkleNode response = ipfs.add(file).get(0);
-            String cid = response.hash.toBase58();
+    /**
+     * Upload file to a chosen IPFS node, falling back to the next best node
+     * if it fails
+     *
+     * @param data      File data as byte array
+     * @param filename  Original filename
+     * @param preferred Node to try first (null for the best node)
+     * @return IPFS CID (Content Identifier)
+     */
+    public String uploadFile(byte[] data, String filename, IpfsNode preferred) throws IOException {
+        List<IpfsNode> candidates = new ArrayList<>(nodePool.candidatesForWrite());
+        if (preferred != null && candidates.remove(preferred)) {
+            candidates.add(0, preferred);
+        }
 
-            log.info("File uploaded to IPFS with CID: {}", cid);
+        IOException lastError = new IOException("No IPFS node available");
+        for (IpfsNode node : candidates) {
+            try {
+                return add(node, new ByteArrayInputStream(data), filename);
+            } catch (IOException e) {
+                lastError = e;
+            }
+        }
 
-            // Pin the file to ensure it stays in the network
-            pinFile(cid);
+        log.error("Error uploading file to IPFS: {}", lastError.getMessage());
+        throw new IOException("Failed to upload file to IPFS: " + lastError.getMessage());
+    }
 
-            return cid;
-        } catch (Exception e) {
+    /**
+     * Upload a stream to IPFS. The content is sent to the daemon in chunked
+     * transfer mode, so it is never held in memory as a whole. A stream can
+     * only be sent once, so there is no retry on another node.
+     *
+     * @param data     File content stream
+     * @param filename Original filename
+     * @return IPFS CID (Content Identifier)
+     */
+    public String uploadFile(InputStream data, String filename) throws IOException {
+        try {
+            return add(nodePool.selectForWrite(), data, filename);
+        } catch (IOException e) {
             log.error("Error uploading file to IPFS: {}", e.getMessage());
             throw new IOException("Failed to upload file to IPFS: " + e.getMessage());
         }
     }
 
+    private String add(IpfsNode node, InputStream data, String filename) throws IOException {
+        try {
+            String cid = node.add(data, filename, false);
+            nodePool.reportSuccess(node);
+            nodePool.recordLocation(cid, node);
+
+            // Added unpinned; the pin queue pins it once the file is recorded
+            log.info("File uploaded to IPFS node {} with CID: {}", node, cid);
+            return cid;
+        } catch (IOException e) {
+            nodePool.reportFailure(node, e);
+            throw e;
+        }
+    }
+
     /**
      * Download file from IPFS
-     * 
+     *
      * @param cid IPFS Content Identifier
      * @return File data as byte array
      */
     public byte[] downloadFile(String cid) throws IOException {
-        if (ipfs == null) {
-            throw new RuntimeException("IPFS connection not available. Please start IPFS daemon.");
+        Optional<InputStream> cached = blockCache.open(cid);
+        if (cached.isPresent()) {
+            try (InputStream data = cached.get()) {
+                log.debug("File served from cache with CID: {}", cid);
+                return data.readAllBytes();
+            }
+        }
+
+        byte[] data;
+        try (InputStream content = read(cid, node -> node.catAsync(cid))) {
+            data = content.readAllBytes();
         }
+        blockCache.put(cid, data, this::matchesCid);
 
+        log.info("File downloaded from IPFS with CID: {}", cid);
+        return data;
+    }
+
+    /**
+     * Open a stream of file content from IPFS
+     *
+     * @param cid IPFS Content Identifier
+     * @return File content stream (caller must close it)
+     */
+    public InputStream downloadStream(String cid) throws IOException {
+        Optional<InputStream> cached = blockCache.open(cid);
+        if (cached.isPresent()) {
+            log.debug("Streaming file from cache with CID: {}", cid);
+            return cached.get();
+        }
+
+        InputStream data = blockCache.cacheWhileReading(cid, read(cid, node -> node.catAsync(cid)), this::matchesCid);
+
+        log.info("Streaming file from IPFS with CID: {}", cid);
+        return data;
+    }
+
+    /**
+     * Open a stream of a byte range of file content from IPFS. Only the
+     * requested bytes are read from the daemon.
+     *
+     * @param cid    IPFS Content Identifier
+     * @param offset First byte to read
+     * @param length Number of bytes to read
+     * @return Stream of the requested bytes (caller must close it)
+     */
+    public InputStream downloadRange(String cid, long offset, long length) throws IOException {
+        Optional<InputStream> cached = blockCache.open(cid, offset, length);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        InputStream data = read(cid, node -> node.catAsync(cid, offset, length));
+
+        log.debug("Streaming bytes {}-{} of CID: {}", offset, offset + length - 1, cid);
+        return data;
+    }
+
+    /**
+     * Open content from the best node for the CID. Reads are hedged: if the
+     * node has not started answering within its recent p95 time to first
+     * byte, the same read goes to the next node and whichever answers first
+     * wins. A failed attempt falls through to the next node immediately, and
+     * the whole read gives up after ipfs.timeout.
+     */
+    private InputStream read(String cid, NodeRead read) throws IOException {
+        validate(cid);
+
+        List<IpfsNode> candidates = nodePool.candidatesForRead(cid);
+        if (candidates.isEmpty()) {
+            throw new IOException("Failed to download file from IPFS: no IPFS node available");
+        }
+
+        BlockingQueue<ReadAttempt> completed = new LinkedBlockingQueue<>();
+        List<ReadAttempt> inFlight = new ArrayList<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ipfsTimeout);
+        int next = 0;
+        IOException lastError = null;
+
+        inFlight.add(new ReadAttempt(candidates.get(next++), false, read, completed));
         try {
-            Multihash filePointer = Multihash.fromBase58(cid);
-            byte[] data = ipfs.cat(filePointer);
+            while (!inFlight.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
 
-            log.info("File downloaded from IPFS with CID: {}", cid);
-            return data;
-        } catch (Exception e) {
-            log.error("Error downloading file from IPFS: {}", e.getMessage());
-            throw new IOException("Failed to download file from IPFS: " + e.getMessage());
+                boolean canHedge = hedgeEnabled && inFlight.size() == 1 && next < candidates.size();
+                long wait = canHedge ? Math.min(hedgeDelayNanos(inFlight.get(0).node), remaining) : remaining;
+
+                ReadAttempt done = completed.poll(wait, TimeUnit.NANOSECONDS);
+                if (done == null) {
+                    if (canHedge) {
+                        hedgedReads.increment();
+                        inFlight.add(new ReadAttempt(candidates.get(next++), true, read, completed));
+                    }
+                    continue;
+                }
+                if (!inFlight.remove(done)) {
+                    continue; // Outcome of an attempt already given up on
+                }
+
+                if (done.error == null) {
+                    done.node.getLatency().record(TimeUnit.NANOSECONDS.toMillis(done.elapsedNanos));
+                    nodePool.reportSuccess(done.node);
+                    nodePool.recordLocation(cid, done.node);
+                    if (done.hedge) {
+                        hedgeWins.increment();
+                    }
+
+                    for (ReadAttempt loser : inFlight) {
+                        loser.abandon();
+                        if (loser.startedAt < done.startedAt) {
+                            nodePool.reportSlow(loser.node);
+                        }
+                    }
+                    return done.stream;
+                }
+
+                nodePool.reportFailure(done.node, done.error);
+                log.warn("Reading {} from IPFS node {} failed: {}", cid, done.node, done.error.getMessage());
+                lastError = done.error;
+                if (inFlight.isEmpty() && next < candidates.size()) {
+                    inFlight.add(new ReadAttempt(candidates.get(next++), false, read, completed));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            inFlight.forEach(ReadAttempt::abandon);
+            throw new InterruptedIOException("Interrupted while downloading file from IPFS");
+        }
+
+        // Out of time: whatever is still running counts against its node
+        for (ReadAttempt attempt : inFlight) {
+            attempt.abandon();
+            nodePool.reportSlow(attempt.node);
+        }
+
+        String reason = lastError != null ? lastError.getMessage() : "timed out after " + ipfsTimeout + " ms";
+        log.error("Error downloading file from IPFS: {}", reason);
+        throw new IOException("Failed to download file from IPFS: " + reason);
+    }
+
+    private long hedgeDelayNanos(IpfsNode node) {
+        long delay = node.getLatency().percentile(hedgeInitialDelayMs);
+        return TimeUnit.MILLISECONDS.toNanos(Math.max(hedgeMinDelayMs, Math.min(hedgeMaxDelayMs, delay)));
+    }
+
+    @FunctionalInterface
+    private interface NodeRead {
+        CompletableFuture<InputStream> open(IpfsNode node);
+    }
+
+    /**
+     * One node's attempt at a read. Its outcome is posted to the shared
+     * queue; a stream that arrives after the attempt was abandoned is closed.
+     */
+    private static final class ReadAttempt {
+
+        private final IpfsNode node;
+        private final boolean hedge;
+        private final long startedAt = System.nanoTime();
+        private final CompletableFuture<InputStream> future;
+
+        private volatile InputStream stream;
+        private volatile IOException error;
+        private volatile long elapsedNanos;
+        private volatile boolean abandoned;
+
+        ReadAttempt(IpfsNode node, boolean hedge, NodeRead read, BlockingQueue<ReadAttempt> completed) {
+            this.node = node;
+            this.hedge = hedge;
+            this.future = read.open(node);
+            this.future.whenComplete((result, failure) -> {
+                elapsedNanos = System.nanoTime() - startedAt;
+                if (failure != null) {
+                    error = toIOException(failure);
+                } else {
+                    stream = result;
+                    if (abandoned) {
+                        closeQuietly(result);
+                    }
+                }
+                completed.offer(this);
+            });
+        }
+
+        void abandon() {
+            abandoned = true;
+            future.cancel(true);
+            InputStream received = stream;
+            if (received != null) {
+                closeQuietly(received);
+            }
+        }
+
+        private static IOException toIOException(Throwable failure) {
+            Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+                    ? failure.getCause()
+                    : failure;
+            return cause instanceof IOException io ? io : new IOException(cause.getMessage(), cause);
+        }
+
+        private static void closeQuietly(InputStream stream) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // The attempt lost; nothing else to release
+            }
         }
     }
 
     /**
      * Pin file to ensure it stays in the IPFS network
-     * 
+     *
      * @param cid IPFS Content Identifier
      */
     public void pinFile(String cid) {
-        if (ipfs == null) {
-            log.warn("Cannot pin file - IPFS not connected");
-            return;
-        }
-
         try {
-            Multihash filePointer = Multihash.fromBase58(cid);
-            ipfs.pin.add(filePointer);
+            pinFiles(List.of(cid));
             log.info("File pinned: {}", cid);
         } catch (Exception e) {
             log.error("Error pinning file: {}", e.getMessage());
         }
     }
 
+    /**
+     * Pin several files, with a single daemon call per node. Each CID is
+     * pinned on a node known to hold it, or on the least busy node. Fails
+     * as a whole if any CID cannot be pinned.
+     *
+     * @param cids IPFS Content Identifiers
+     * @return The node each CID was pinned on
+     */
+    public Map<String, IpfsNode> pinFiles(List<String> cids) throws IOException {
+        Map<IpfsNode, List<String>> byNode = new LinkedHashMap<>();
+        for (String cid : cids) {
+            validate(cid);
+            List<IpfsNode> candidates = nodePool.candidatesForRead(cid);
+            if (candidates.isEmpty()) {
+                throw new IOException("No IPFS node available");
+            }
+            byNode.computeIfAbsent(candidates.get(0), key -> new ArrayList<>()).add(cid);
+        }
+
+        Map<String, IpfsNode> placement = new LinkedHashMap<>();
+        for (Map.Entry<IpfsNode, List<String>> entry : byNode.entrySet()) {
+            pinOnNode(entry.getKey(), entry.getValue());
+            for (String cid : entry.getValue()) {
+                placement.put(cid, entry.getKey());
+            }
+        }
+        return placement;
+    }
+
+    /**
+     * Pin files on a specific node with a single daemon call. A node that
+     * does not hold the content yet fetches it from its peers.
+     *
+     * @param node IPFS node to pin on
+     * @param cids IPFS Content Identifiers
+     */
+    public void pinOnNode(IpfsNode node, List<String> cids) throws IOException {
+        for (String cid : cids) {
+            validate(cid);
+        }
+
+        try {
+            node.pin(cids);
+            nodePool.reportSuccess(node);
+        } catch (IOException e) {
+            nodePool.reportFailure(node, e);
+            throw e;
+        }
+        for (String cid : cids) {
+            nodePool.recordLocation(cid, node);
+        }
+        log.debug("Pinned {} files on {}", cids.size(), node);
+    }
+
     /**
      * Unpin file from IPFS (allows garbage collection)
-     * 
+     *
      * @param cid IPFS Content Identifier
      */
     public void unpinFile(String cid) {
-        if (ipfs == null) {
-            log.warn("Cannot unpin file - IPFS not connected");
-            return;
+        unpinFiles(List.of(cid));
+    }
+
+    /**
+     * Unpin several files with a single daemon call per node, on every node
+     * known to hold them (all nodes when unknown). If a node rejects the
+     * batch (e.g. one CID is not pinned there) each CID is unpinned on its own.
+     *
+     * @param cids IPFS Content Identifiers
+     */
+    public void unpinFiles(List<String> cids) {
+        Map<IpfsNode, List<String>> byNode = new LinkedHashMap<>();
+        for (String cid : cids) {
+            for (IpfsNode node : nodePool.locate(cid)) {
+                byNode.computeIfAbsent(node, key -> new ArrayList<>()).add(cid);
+            }
         }
 
+        for (Map.Entry<IpfsNode, List<String>> entry : byNode.entrySet()) {
+            IpfsNode node = entry.getKey();
+            List<String> batch = entry.getValue();
+            try {
+                node.unpin(batch);
+                log.info("Unpinned {} files on {}", batch.size(), node);
+            } catch (IOException e) {
+                nodePool.reportFailure(node, e);
+                if (batch.size() == 1) {
+                    log.error("Error unpinning file on {}: {}", node, e.getMessage());
+                } else {
+                    log.warn("Batch unpin of {} files on {} failed ({}), unpinning individually",
+                            batch.size(), node, e.getMessage());
+                    for (String cid : batch) {
+                        try {
+                            node.unpin(List.of(cid));
+                        } catch (IOException single) {
+                            log.error("Error unpinning file {} on {}: {}", cid, node, single.getMessage());
+                        }
+                    }
+                }
+            }
+
+            for (String cid : batch) {
+                nodePool.forgetLocation(cid, node);
+            }
+        }
+    }
+
+    /**
+     * Size of stored content, asked of the nodes that hold it
+     *
+     * @param cid IPFS Content Identifier
+     * @return Size in bytes, or empty if no available node has the content
+     */
+    public Optional<Long> stat(String cid) throws IOException {
+        validate(cid);
+
+        IOException lastError = null;
+        for (IpfsNode node : nodePool.candidatesForRead(cid)) {
+            try {
+                long size = node.size(cid);
+                nodePool.recordLocation(cid, node);
+                return Optional.of(size);
+            } catch (IpfsApiException e) {
+                // Not held by this node
+            } catch (IOException e) {
+                nodePool.reportFailure(node, e);
+                lastError = e;
+            }
+        }
+
+        if (lastError != null && !nodePool.hasHealthyNode()) {
+            throw new IOException("Failed to stat file on IPFS: " + lastError.getMessage());
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Check that a file's content hashes to the given CID. The daemon only
+     * computes the hash and nothing is stored, but the whole file is sent
+     * to it again, so the cache only calls this when
+     * {@code blockvault.cache.disk.verify} is on.
+     */
+    private boolean matchesCid(String cid, Path file) throws IOException {
+        IpfsNode node = nodePool.selectForWrite();
+        try (InputStream data = Files.newInputStream(file)) {
+            return cid.equals(node.add(data, file.getFileName().toString(), true));
+        }
+    }
+
+    // Reject malformed CIDs before they end up in a request URL
+    private void validate(String cid) throws IOException {
         try {
-            Multihash filePointer = Multihash.fromBase58(cid);
-            ipfs.pin.rm(filePointer);
-            log.info("File unpinned: {}", cid);
+            Multihash.fromBase58(cid);
         } catch (Exception e) {
-            log.error("Error unpinning file: {}", e.getMessage());
+            throw new IOException("Invalid CID: " + cid);
         }
     }
 
@@ -138,21 +537,17 @@ public class IPFSService {
      * Check if IPFS is connected
      */
     public boolean isConnected() {
-        return ipfs != null;
+        return nodePool.hasHealthyNode();
     }
 
     /**
      * Get IPFS node info
      */
     public String getNodeInfo() {
-        if (ipfs == null) {
-            return "IPFS not connected";
-        }
-
-        try {
-            return ipfs.version();
-        } catch (Exception e) {
-            return "Error getting IPFS info";
-        }
+        return nodePool.getNodes().stream()
+                .filter(IpfsNode::isHealthy)
+                .map(IpfsNode::getVersion)
+                .findFirst()
+                .orElse("IPFS not connected");
     }
 }
@@ -0,0 +1,251 @@
+package com.blockvault.service;
+
+import com.blockvault.model.FileMetadata;
+import com.blockvault.model.PinTask;
+import com.blockvault.repository.FileMetadataRepository;
+import com.blockvault.repository.PinTaskRepository;
+import com.blockvault.storage.StorageBackend;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Durable background pinning. Pins are recorded as pin_tasks rows in the
+ * caller's transaction and made by a scheduled worker, which sends due
+ * CIDs to the daemon in batches and retries failures with exponential
+ * backoff. This is the only place content gets pinned: adds do not pin,
+ * so a file stays PENDING until its pin is made here. File records show
+ * the outcome in {@link FileMetadata#getPinStatus()}.
+ */
+@Service
+@Slf4j
+public class PinQueueService {
+
+    private final PinTaskRepository pinTaskRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final StorageBackend storageBackend;
+    private final ObjectProvider<ReplicationService> replicationService; // Only with the IPFS backend
+    private final TransactionTemplate transaction;
+
+    @Value("${blockvault.pin-queue.batch-size:100}")
+    private int batchSize;
+
+    @Value("${blockvault.pin-queue.poll-size:1000}")
+    private int pollSize;
+
+    @Value("${blockvault.pin-queue.workers:4}")
+    private int workers;
+
+    @Value("${blockvault.pin-queue.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${blockvault.pin-queue.backoff-initial-ms:2000}")
+    private long backoffInitialMs;
+
+    @Value("${blockvault.pin-queue.backoff-max-ms:600000}")
+    private long backoffMaxMs;
+
+    @Value("${blockvault.pin-queue.lease-ms:300000}")
+    private long leaseMs;
+
+    private ExecutorService workerPool;
+
+    public PinQueueService(PinTaskRepository pinTaskRepository,
+                           FileMetadataRepository fileMetadataRepository,
+                           StorageBackend storageBackend,
+                           ObjectProvider<ReplicationService> replicationService,
+                           PlatformTransactionManager transactionManager) {
+        this.pinTaskRepository = pinTaskRepository;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.storageBackend = storageBackend;
+        this.replicationService = replicationService;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        workerPool = Executors.newFixedThreadPool(Math.max(1, workers), runnable -> {
+            Thread thread = new Thread(runnable, "pin-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workerPool.shutdownNow();
+    }
+
+    /**
+     * Queue a CID to be pinned once the caller's transaction commits
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String cid) {
+        if (pinTaskRepository.existsByCidAndStatus(cid, PinTask.STATUS_PENDING)) {
+            return;
+        }
+
+        PinTask task = new PinTask();
+        task.setCid(cid);
+        task.setNextAttemptAt(LocalDateTime.now());
+        pinTaskRepository.save(task);
+        log.debug("Pin queued for CID {}", cid);
+    }
+
+    /**
+     * Drop queued pins for a CID that is being unpinned
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void cancel(String cid) {
+        pinTaskRepository.deleteByCidIn(List.of(cid));
+    }
+
+    /**
+     * Claim due tasks, pin them in batches on the worker pool and record the
+     * outcome. Claimed tasks are leased by pushing their next attempt
+     * forward, so tasks held by a crashed worker are picked up again later.
+     */
+    @Scheduled(fixedDelayString = "${blockvault.pin-queue.poll-interval-ms:1000}")
+    public void processQueue() {
+        Map<String, List<Long>> tasksByCid = claimDueTasks();
+        if (tasksByCid.isEmpty()) {
+            return;
+        }
+
+        List<String> cids = new ArrayList<>(tasksByCid.keySet());
+        List<Future<?>> batches = new ArrayList<>();
+        for (int start = 0; start < cids.size(); start += batchSize) {
+            List<String> batch = cids.subList(start, Math.min(start + batchSize, cids.size()));
+            batches.add(workerPool.submit(() -> pinBatch(batch, tasksByCid)));
+        }
+
+        for (Future<?> batch : batches) {
+            try {
+                batch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                log.error("Pin batch failed: {}", e.getCause().getMessage());
+            }
+        }
+    }
+
+    private Map<String, List<Long>> claimDueTasks() {
+        return transaction.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<PinTask> due = pinTaskRepository.findByStatusAndNextAttemptAtLessThanEqualOrderById(
+                    PinTask.STATUS_PENDING, now, PageRequest.of(0, pollSize));
+
+            Map<String, List<Long>> tasksByCid = new LinkedHashMap<>();
+            for (PinTask task : due) {
+                task.setNextAttemptAt(now.plusNanos(leaseMs * 1_000_000));
+                tasksByCid.computeIfAbsent(task.getCid(), cid -> new ArrayList<>()).add(task.getId());
+            }
+            return tasksByCid;
+        });
+    }
+
+    private void pinBatch(List<String> cids, Map<String, List<Long>> tasksByCid) {
+        try {
+            markPinned(storageBackend.pin(cids));
+            return;
+        } catch (IOException e) {
+            if (cids.size() == 1) {
+                markFailedAttempt(cids.get(0), tasksByCid.get(cids.get(0)), e);
+                return;
+            }
+            log.warn("Batch pin of {} CIDs failed, retrying individually: {}", cids.size(), e.getMessage());
+        }
+
+        // One bad CID fails the whole call; isolate it so the rest still get pinned
+        for (String cid : cids) {
+            try {
+                markPinned(storageBackend.pin(List.of(cid)));
+            } catch (IOException e) {
+                markFailedAttempt(cid, tasksByCid.get(cid), e);
+            }
+        }
+    }
+
+    private void markPinned(Map<String, String> placement) {
+        transaction.executeWithoutResult(status -> {
+            pinTaskRepository.deleteByCidIn(placement.keySet());
+            fileMetadataRepository.updatePinStatus(placement.keySet(), FileMetadata.PIN_PINNED, true);
+            ReplicationService replication = replicationService.getIfAvailable();
+            if (replication != null) {
+                replication.recordPinned(placement);
+            } else {
+                // Other backends keep the single stored copy
+                for (String cid : placement.keySet()) {
+                    fileMetadataRepository.updateReplicationCount(cid, 1);
+                }
+            }
+        });
+        log.info("Pinned {} CIDs", placement.size());
+    }
+
+    private void markFailedAttempt(String cid, List<Long> taskIds, IOException error) {
+        transaction.executeWithoutResult(status -> {
+            boolean givenUp = false;
+            for (PinTask task : pinTaskRepository.findAllById(taskIds)) {
+                int attempts = task.getAttempts() + 1;
+                task.setAttempts(attempts);
+                task.setLastError(truncate(error.getMessage()));
+
+                if (attempts >= maxAttempts) {
+                    task.setStatus(PinTask.STATUS_FAILED);
+                    givenUp = true;
+                } else {
+                    task.setNextAttemptAt(LocalDateTime.now().plusNanos(backoffMillis(attempts) * 1_000_000));
+                }
+            }
+
+            if (givenUp) {
+                fileMetadataRepository.updatePinStatus(List.of(cid), FileMetadata.PIN_FAILED, false);
+                log.error("Giving up pinning CID {} after {} attempts: {}", cid, maxAttempts, error.getMessage());
+            } else {
+                log.warn("Pinning CID {} failed, will retry: {}", cid, error.getMessage());
+            }
+        });
+    }
+
+    // Exponential backoff with up to 20% jitter so retries of one batch spread out
+    private long backoffMillis(int attempts) {
+        long delay = backoffInitialMs << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > backoffMaxMs) {
+            delay = backoffMaxMs;
+        }
+        return delay + ThreadLocalRandom.current().nextLong(delay / 5 + 1);
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,497 @@
+package com.blockvault.service;
+
+import com.blockvault.ipfs.IpfsNode;
+import com.blockvault.ipfs.IpfsNodePool;
+import com.blockvault.model.CidReference;
+import com.blockvault.model.CidReplica;
+import com.blockvault.model.StoredChunk;
+import com.blockvault.repository.CidReferenceRepository;
+import com.blockvault.repository.CidReplicaRepository;
+import com.blockvault.repository.FileMetadataRepository;
+import com.blockvault.repository.StoredChunkRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Keeps every pinned CID on {@code blockvault.replication.factor} IPFS
+ * nodes. The pin queue records the first copy; a scheduled pass then pins
+ * further copies on other nodes, marks copies on nodes that have been down
+ * for too long as lost and replaces them. Repair pins are rate limited and
+ * skip nodes that are busy with user requests. File records show the
+ * number of confirmed copies in {@code replicationCount}. Only present
+ * when IPFS is the storage backend.
+ */
+@Service
+@ConditionalOnProperty(name = "blockvault.storage.backend", havingValue = "ipfs", matchIfMissing = true)
+@Slf4j
+public class ReplicationService {
+
+    private static final int QUERY_BATCH_SIZE = 1000;
+
+    private final CidReplicaRepository cidReplicaRepository;
+    private final CidReferenceRepository cidReferenceRepository;
+    private final StoredChunkRepository storedChunkRepository;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final IPFSService ipfsService;
+    private final IpfsNodePool nodePool;
+    private final TransactionTemplate transaction;
+
+    private final Counter replicasCreated;
+    private final Counter replicaFailures;
+    private final Counter replicasLost;
+
+    @Value("${blockvault.replication.enabled:true}")
+    private boolean enabled;
+
+    @Value("${blockvault.replication.factor:3}")
+    private int factor;
+
+    @Value("${blockvault.replication.node-lost-after-ms:600000}")
+    private long nodeLostAfterMs;
+
+    @Value("${blockvault.replication.batch-size:200}")
+    private int batchSize;
+
+    @Value("${blockvault.replication.pins-per-call:20}")
+    private int pinsPerCall;
+
+    @Value("${blockvault.replication.max-pins-per-second:10}")
+    private double maxPinsPerSecond;
+
+    @Value("${blockvault.replication.max-node-load:8}")
+    private int maxNodeLoad;
+
+    @Value("${blockvault.replication.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${blockvault.replication.backoff-ms:60000}")
+    private long backoffMs;
+
+    public ReplicationService(CidReplicaRepository cidReplicaRepository,
+                              CidReferenceRepository cidReferenceRepository,
+                              StoredChunkRepository storedChunkRepository,
+                              FileMetadataRepository fileMetadataRepository,
+                              IPFSService ipfsService,
+                              IpfsNodePool nodePool,
+                              PlatformTransactionManager transactionManager,
+                              MeterRegistry meterRegistry) {
+        this.cidReplicaRepository = cidReplicaRepository;
+        this.cidReferenceRepository = cidReferenceRepository;
+        this.storedChunkRepository = storedChunkRepository;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.ipfsService = ipfsService;
+        this.nodePool = nodePool;
+        this.transaction = new TransactionTemplate(transactionManager);
+
+        this.replicasCreated = Counter.builder("blockvault.replication.replicas.created")
+                .description("Copies pinned on additional nodes")
+                .register(meterRegistry);
+        this.replicaFailures = Counter.builder("blockvault.replication.replicas.failed")
+                .description("Failed attempts to pin an additional copy")
+                .register(meterRegistry);
+        this.replicasLost = Counter.builder("blockvault.replication.replicas.lost")
+                .description("Copies written off because their node stayed down")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Number of copies each CID is kept at; never more than there are nodes
+     */
+    public int getReplicationFactor() {
+        if (!enabled) {
+            return 1;
+        }
+        return Math.max(1, Math.min(factor, nodePool.getNodes().size()));
+    }
+
+    /**
+     * Record the copies made by the pin queue within the caller's
+     * transaction
+     *
+     * @param placement The node endpoint each CID was pinned on
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void recordPinned(Map<String, String> placement) {
+        if (!enabled) {
+            for (String cid : placement.keySet()) {
+                fileMetadataRepository.updateReplicationCount(cid, 1);
+            }
+            return;
+        }
+
+        Map<String, List<CidReplica>> existing = groupByCid(cidReplicaRepository.findByCidIn(placement.keySet()));
+
+        List<CidReplica> changed = new ArrayList<>();
+        for (Map.Entry<String, String> entry : placement.entrySet()) {
+            String endpoint = entry.getValue();
+            CidReplica replica = existing.getOrDefault(entry.getKey(), List.of()).stream()
+                    .filter(candidate -> candidate.getNodeEndpoint().equals(endpoint))
+                    .findFirst()
+                    .orElseGet(() -> {
+                        CidReplica created = new CidReplica();
+                        created.setCid(entry.getKey());
+                        created.setNodeEndpoint(endpoint);
+                        return created;
+                    });
+            replica.setStatus(CidReplica.STATUS_PINNED);
+            replica.setNextAttemptAt(null);
+            replica.setLastError(null);
+            changed.add(replica);
+        }
+        cidReplicaRepository.saveAll(changed);
+
+        updateReplicationCounts(placement.keySet());
+    }
+
+    /**
+     * Drop the copy records of CIDs that are about to be unpinned, within
+     * the caller's transaction. Every node holding a copy is remembered as a
+     * location first, so the unpin reaches all of them.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void forget(Collection<String> cids) {
+        if (cids.isEmpty()) {
+            return;
+        }
+
+        for (CidReplica replica : cidReplicaRepository.findByCidIn(cids)) {
+            nodePool.findByEndpoint(replica.getNodeEndpoint())
+                    .ifPresent(node -> nodePool.recordLocation(replica.getCid(), node));
+        }
+        cidReplicaRepository.deleteByCidIn(cids);
+    }
+
+    /**
+     * One replication pass: write off copies on lost nodes, plan copies for
+     * under-replicated CIDs and pin the ones that are due
+     */
+    @Scheduled(fixedDelayString = "${blockvault.replication.interval-ms:30000}",
+            initialDelayString = "${blockvault.replication.initial-delay-ms:60000}")
+    public void replicate() {
+        if (!enabled) {
+            return;
+        }
+
+        updateLostNodes();
+        planReplicas();
+        pinDueReplicas();
+    }
+
+    /**
+     * Record copies for content that was pinned before replication was
+     * tracked. Each CID gets one pending copy; the next passes pin it and
+     * add the rest.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillReplicas() {
+        if (!enabled || cidReplicaRepository.count() > 0) {
+            return;
+        }
+
+        IpfsNode primary;
+        try {
+            primary = nodePool.selectForWrite();
+        } catch (IOException e) {
+            log.warn("Replica backfill skipped: {}", e.getMessage());
+            return;
+        }
+
+        long backfilled = backfill(page -> cidReferenceRepository.findAll(page).map(CidReference::getCid), primary)
+                + backfill(page -> storedChunkRepository.findAll(page).map(StoredChunk::getCid), primary);
+        if (backfilled > 0) {
+            log.info("Backfilled replica records for {} CIDs", backfilled);
+        }
+    }
+
+    private long backfill(Function<PageRequest, Page<String>> source, IpfsNode primary) {
+        long total = 0;
+        Page<String> page;
+        int number = 0;
+        do {
+            PageRequest request = PageRequest.of(number++, QUERY_BATCH_SIZE);
+            page = transaction.execute(status -> {
+                Page<String> cids = source.apply(request);
+                List<CidReplica> replicas = new ArrayList<>();
+                for (String cid : cids) {
+                    replicas.add(pending(cid, primary));
+                }
+                cidReplicaRepository.saveAll(replicas);
+                return cids;
+            });
+            total += page.getNumberOfElements();
+        } while (page.hasNext());
+        return total;
+    }
+
+    private void updateLostNodes() {
+        Duration lostAfter = Duration.ofMillis(nodeLostAfterMs);
+
+        for (IpfsNode node : nodePool.getNodes()) {
+            String endpoint = node.getEndpoint();
+            if (nodePool.isDownFor(node, lostAfter)) {
+                transaction.executeWithoutResult(status -> {
+                    List<String> cids = cidReplicaRepository.findCidsByNodeAndStatus(endpoint, CidReplica.STATUS_PINNED);
+                    cidReplicaRepository.updateStatusByNode(endpoint, CidReplica.STATUS_PENDING, CidReplica.STATUS_LOST);
+                    cidReplicaRepository.updateStatusByNode(endpoint, CidReplica.STATUS_PINNED, CidReplica.STATUS_LOST);
+                    if (!cids.isEmpty()) {
+                        replicasLost.increment(cids.size());
+                        updateReplicationCounts(cids);
+                        log.warn("IPFS node {} has been down for over {} s; re-replicating its {} copies",
+                                endpoint, lostAfter.toSeconds(), cids.size());
+                    }
+                });
+            } else if (node.isHealthy()) {
+                // Its pins may have survived; pinning them again is cheap if so
+                transaction.executeWithoutResult(status -> {
+                    int restored = cidReplicaRepository.updateStatusByNode(endpoint,
+                            CidReplica.STATUS_LOST, CidReplica.STATUS_PENDING);
+                    if (restored > 0) {
+                        log.info("IPFS node {} is back; re-checking {} copies", endpoint, restored);
+                    }
+                });
+            }
+        }
+    }
+
+    private void planReplicas() {
+        Duration lostAfter = Duration.ofMillis(nodeLostAfterMs);
+        List<IpfsNode> available = nodePool.getNodes().stream()
+                .filter(node -> !nodePool.isDownFor(node, lostAfter))
+                .toList();
+        // Copies cannot be placed on lost nodes, so do not ask for them
+        int target = Math.min(getReplicationFactor(), available.size());
+        if (target == 0) {
+            return;
+        }
+
+        transaction.executeWithoutResult(status -> {
+            List<String> cids = cidReplicaRepository.findUnderReplicated(target, PageRequest.of(0, batchSize));
+            if (cids.isEmpty()) {
+                return;
+            }
+
+            Map<String, List<CidReplica>> byCid = groupByCid(cidReplicaRepository.findByCidIn(cids));
+            List<CidReplica> planned = new ArrayList<>();
+            for (String cid : cids) {
+                List<CidReplica> replicas = byCid.getOrDefault(cid, List.of());
+                Set<String> taken = new HashSet<>();
+                long live = 0;
+                for (CidReplica replica : replicas) {
+                    taken.add(replica.getNodeEndpoint());
+                    if (!CidReplica.STATUS_LOST.equals(replica.getStatus())) {
+                        live++;
+                    }
+                }
+
+                List<IpfsNode> targets = available.stream()
+                        .filter(IpfsNode::isHealthy)
+                        .filter(node -> !taken.contains(node.getEndpoint()))
+                        .sorted(Comparator.comparingInt(IpfsNode::getOutstanding))
+                        .limit(Math.max(0, target - live))
+                        .toList();
+                for (IpfsNode node : targets) {
+                    planned.add(pending(cid, node));
+                }
+            }
+
+            cidReplicaRepository.saveAll(planned);
+            if (!planned.isEmpty()) {
+                log.debug("Planned {} copies for {} under-replicated CIDs", planned.size(), cids.size());
+            }
+        });
+    }
+
+    private void pinDueReplicas() {
+        List<CidReplica> due = transaction.execute(status -> cidReplicaRepository
+                .findByStatusAndNextAttemptAtLessThanEqualOrderById(CidReplica.STATUS_PENDING,
+                        LocalDateTime.now(), PageRequest.of(0, batchSize)));
+        if (due.isEmpty()) {
+            return;
+        }
+
+        Map<String, List<CidReplica>> byNode = new LinkedHashMap<>();
+        for (CidReplica replica : due) {
+            byNode.computeIfAbsent(replica.getNodeEndpoint(), key -> new ArrayList<>()).add(replica);
+        }
+
+        long started = System.nanoTime();
+        int pinned = 0;
+        for (Map.Entry<String, List<CidReplica>> entry : byNode.entrySet()) {
+            IpfsNode node = nodePool.findByEndpoint(entry.getKey()).orElse(null);
+            if (node == null || !node.isHealthy() || !node.getCircuitBreaker().isCallPermitted()) {
+                continue;
+            }
+
+            List<CidReplica> replicas = entry.getValue();
+            for (int start = 0; start < replicas.size(); start += pinsPerCall) {
+                // Repair traffic waits for user requests
+                if (node.getOutstanding() >= maxNodeLoad) {
+                    log.debug("IPFS node {} is busy; deferring {} copies", node, replicas.size() - start);
+                    break;
+                }
+                if (!throttle(started, pinned)) {
+                    return;
+                }
+
+                List<CidReplica> batch = replicas.subList(start, Math.min(start + pinsPerCall, replicas.size()));
+                pinBatch(node, batch);
+                pinned += batch.size();
+            }
+        }
+    }
+
+    // Sleeps until pinning one more batch keeps the pass under the rate limit
+    private boolean throttle(long started, int pinned) {
+        long earliest = started + (long) (pinned / maxPinsPerSecond * 1_000_000_000L);
+        long wait = earliest - System.nanoTime();
+        if (wait <= 0) {
+            return true;
+        }
+
+        try {
+            Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void pinBatch(IpfsNode node, List<CidReplica> batch) {
+        try {
+            ipfsService.pinOnNode(node, batch.stream().map(CidReplica::getCid).toList());
+            markReplicated(node, batch);
+            return;
+        } catch (IOException e) {
+            if (batch.size() == 1) {
+                markFailedAttempt(batch.get(0), e);
+                return;
+            }
+            log.warn("Replicating {} CIDs to {} failed, retrying individually: {}", batch.size(), node, e.getMessage());
+        }
+
+        for (CidReplica replica : batch) {
+            try {
+                ipfsService.pinOnNode(node, List.of(replica.getCid()));
+                markReplicated(node, List.of(replica));
+            } catch (IOException e) {
+                markFailedAttempt(replica, e);
+            }
+        }
+    }
+
+    private void markReplicated(IpfsNode node, List<CidReplica> batch) {
+        List<String> dropped = transaction.execute(status -> {
+            List<Long> ids = batch.stream().map(CidReplica::getId).toList();
+            List<CidReplica> current = cidReplicaRepository.findAllById(ids);
+            Set<String> cids = new HashSet<>();
+            for (CidReplica replica : current) {
+                replica.setStatus(CidReplica.STATUS_PINNED);
+                replica.setNextAttemptAt(null);
+                replica.setLastError(null);
+                cids.add(replica.getCid());
+            }
+            updateReplicationCounts(cids);
+
+            return batch.stream().map(CidReplica::getCid).filter(cid -> !cids.contains(cid)).toList();
+        });
+        replicasCreated.increment(batch.size() - dropped.size());
+
+        // Records dropped while pinning belong to content that was deleted meanwhile
+        if (!dropped.isEmpty()) {
+            try {
+                node.unpin(dropped);
+            } catch (IOException e) {
+                log.warn("Failed to unpin {} deleted CIDs from {}: {}", dropped.size(), node, e.getMessage());
+            }
+        }
+        log.debug("Replicated {} CIDs to {}", batch.size() - dropped.size(), node);
+    }
+
+    private void markFailedAttempt(CidReplica failed, IOException error) {
+        replicaFailures.increment();
+        transaction.executeWithoutResult(status -> cidReplicaRepository.findById(failed.getId()).ifPresent(replica -> {
+            int attempts = replica.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                // Drop the copy so the next pass can choose another node
+                cidReplicaRepository.delete(replica);
+                log.error("Giving up replicating CID {} to {} after {} attempts: {}",
+                        replica.getCid(), replica.getNodeEndpoint(), attempts, error.getMessage());
+                return;
+            }
+
+            replica.setAttempts(attempts);
+            replica.setLastError(truncate(error.getMessage()));
+            replica.setNextAttemptAt(LocalDateTime.now().plusNanos(
+                    (backoffMs << Math.min(attempts - 1, 10)) * 1_000_000));
+            log.warn("Replicating CID {} to {} failed, will retry: {}",
+                    replica.getCid(), replica.getNodeEndpoint(), error.getMessage());
+        }));
+    }
+
+    private void updateReplicationCounts(Collection<String> cids) {
+        List<String> all = new ArrayList<>(cids);
+        for (int start = 0; start < all.size(); start += QUERY_BATCH_SIZE) {
+            List<String> batch = all.subList(start, Math.min(start + QUERY_BATCH_SIZE, all.size()));
+
+            Map<String, Long> counts = new HashMap<>();
+            for (Object[] row : cidReplicaRepository.countPinnedByCid(batch)) {
+                counts.put((String) row[0], ((Number) row[1]).longValue());
+            }
+            for (String cid : batch) {
+                fileMetadataRepository.updateReplicationCount(cid, counts.getOrDefault(cid, 0L).intValue());
+            }
+        }
+    }
+
+    private static CidReplica pending(String cid, IpfsNode node) {
+        CidReplica replica = new CidReplica();
+        replica.setCid(cid);
+        replica.setNodeEndpoint(node.getEndpoint());
+        replica.setStatus(CidReplica.STATUS_PENDING);
+        replica.setNextAttemptAt(LocalDateTime.now());
+        return replica;
+    }
+
+    private static Map<String, List<CidReplica>> groupByCid(List<CidReplica> replicas) {
+        Map<String, List<CidReplica>> byCid = new HashMap<>();
+        for (CidReplica replica : replicas) {
+            byCid.computeIfAbsent(replica.getCid(), key -> new ArrayList<>()).add(replica);
+        }
+        return byCid;
+    }
+
+    private static String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
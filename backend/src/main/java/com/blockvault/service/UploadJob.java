@@ -0,0 +1,98 @@
+package com.blockvault.service;
+
+import com.blockvault.model.FileMetadata;
+import lombok.Getter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An upload being processed in the background: its current stage, bytes
+ * processed so far, and the outcome. Progress is pushed to the SSE
+ * subscribers of the job as it changes.
+ */
+@Getter
+public class UploadJob {
+
+    /**
+     * Stages in the order a job goes through them. PERSISTED comes before
+     * PINNED: content is added unpinned and the pin queue only pins it once
+     * the file record exists.
+     */
+    public enum Stage {
+        RECEIVED,   // Bytes staged on disk, waiting for a worker
+        PROCESSING, // Compressed, encrypted and added to storage as one stream
+        ENCRYPTED,  // Every byte read and encrypted (encrypted uploads only); the add is finishing
+        ADDED,      // Content stored
+        PERSISTED,  // File record saved; the pin is queued
+        PINNED,     // Pin confirmed
+        FAILED
+    }
+
+    private final String id;
+
+    private final Long userId;
+
+    private final String filename;
+
+    private final long totalBytes;
+
+    private final Instant createdAt = Instant.now();
+
+    private final AtomicLong processedBytes = new AtomicLong();
+
+    private volatile Stage stage = Stage.RECEIVED;
+
+    private volatile String error;
+
+    private volatile FileMetadata file;
+
+    private volatile Instant finishedAt; // Set once no further progress will be reported
+
+    private final List<SseEmitter> subscribers = new CopyOnWriteArrayList<>();
+
+    public UploadJob(String id, Long userId, String filename, long totalBytes) {
+        this.id = id;
+        this.userId = userId;
+        this.filename = filename;
+        this.totalBytes = totalBytes;
+    }
+
+    public boolean isFinished() {
+        return finishedAt != null;
+    }
+
+    void setStage(Stage stage) {
+        this.stage = stage;
+    }
+
+    void setFile(FileMetadata file) {
+        this.file = file;
+    }
+
+    void fail(String error) {
+        this.error = error;
+        this.stage = Stage.FAILED;
+        finish();
+    }
+
+    void finish() {
+        this.finishedAt = Instant.now();
+    }
+
+    /**
+     * Point-in-time view of the job, as reported to clients
+     */
+    public Progress progress() {
+        FileMetadata stored = file;
+        return new Progress(id, filename, stage, isFinished(), processedBytes.get(), totalBytes, error,
+                stored != null ? stored.getId() : null, stored != null ? stored.getCid() : null);
+    }
+
+    public record Progress(String jobId, String filename, Stage stage, boolean finished, long processedBytes,
+                           long totalBytes, String error, Long fileId, String cid) {
+    }
+}
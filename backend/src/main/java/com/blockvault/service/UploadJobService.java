@@ -0,0 +1,372 @@
+package com.blockvault.service;
+
+import com.blockvault.model.FileMetadata;
+import com.blockvault.model.User;
+import com.blockvault.repository.FileMetadataRepository;
+import com.blockvault.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Asynchronous uploads: the request returns as soon as the bytes are staged
+ * on disk, and compression, encryption, the storage add and the database
+ * work run on a bounded worker pool. Clients follow a job by polling or over
+ * Server-Sent Events, which are sent from their own thread so a slow client
+ * never holds up a worker; while a job's event is waiting to be sent, newer
+ * progress replaces it. Jobs are kept in memory and do not survive a restart.
+ */
+@Service
+@Slf4j
+public class UploadJobService {
+
+    private final FileService fileService;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final UserRepository userRepository;
+    private final TransactionTemplate transaction;
+
+    @Value("${blockvault.upload.staging-dir:./data/uploads}")
+    private String stagingDir;
+
+    @Value("${blockvault.upload.jobs.workers:2}")
+    private int workers;
+
+    @Value("${blockvault.upload.jobs.queue-capacity:50}")
+    private int queueCapacity;
+
+    @Value("${blockvault.upload.jobs.pin-wait-ms:600000}")
+    private long pinWaitMs;
+
+    @Value("${blockvault.upload.jobs.retention-ms:3600000}")
+    private long retentionMs;
+
+    @Value("${blockvault.upload.jobs.sse-timeout-ms:1800000}")
+    private long sseTimeoutMs;
+
+    private final Map<String, UploadJob> jobs = new ConcurrentHashMap<>();
+
+    // Jobs with an event waiting to be sent; later changes ride along with it
+    private final Set<String> pendingEvents = ConcurrentHashMap.newKeySet();
+
+    private ThreadPoolExecutor jobPool;
+
+    private ExecutorService eventSender;
+
+    public UploadJobService(FileService fileService,
+                            FileMetadataRepository fileMetadataRepository,
+                            UserRepository userRepository,
+                            PlatformTransactionManager transactionManager) {
+        this.fileService = fileService;
+        this.fileMetadataRepository = fileMetadataRepository;
+        this.userRepository = userRepository;
+        this.transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(Paths.get(stagingDir));
+
+        AtomicInteger threadCount = new AtomicInteger();
+        jobPool = new ThreadPoolExecutor(Math.max(1, workers), Math.max(1, workers), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), runnable -> {
+                    Thread thread = new Thread(runnable, "upload-job-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        eventSender = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "upload-job-events");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobPool.shutdownNow();
+        eventSender.shutdownNow();
+    }
+
+    /**
+     * Stage an upload and queue it for processing
+     *
+     * @throws Exception when the file is empty, over quota, or the queue is full
+     */
+    public UploadJob submit(MultipartFile file, User user, boolean encrypt, String encryptionKey) throws Exception {
+        if (file.isEmpty()) {
+            throw new Exception("File is empty");
+        }
+        if (!user.hasStorageSpace(file.getSize())) {
+            throw new Exception("Storage quota exceeded. Please upgrade your plan.");
+        }
+
+        // The multipart temp file goes away with the request, so the bytes are moved to the staging directory
+        UploadJob job = new UploadJob(UUID.randomUUID().toString(), user.getId(), file.getOriginalFilename(),
+                file.getSize());
+        Path staged = Paths.get(stagingDir, "job-" + job.getId());
+        file.transferTo(staged);
+
+        jobs.put(job.getId(), job);
+        try {
+            jobPool.execute(() -> process(job, staged, file.getContentType(), user, encrypt, encryptionKey));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(staged);
+            throw new Exception("Too many uploads in progress, please try again later");
+        }
+
+        log.info("Upload job {} queued: {} ({} bytes)", job.getId(), job.getFilename(), job.getTotalBytes());
+        return job;
+    }
+
+    /**
+     * Get a job of the user
+     */
+    public UploadJob getJob(String id, User user) throws Exception {
+        UploadJob job = jobs.get(id);
+        if (job == null || !job.getUserId().equals(user.getId())) {
+            throw new Exception("Upload job not found");
+        }
+        return job;
+    }
+
+    /**
+     * Follow a job over Server-Sent Events. The current progress is sent
+     * straight away, then every change; the stream ends with the job.
+     */
+    public SseEmitter subscribe(String id, User user) throws Exception {
+        UploadJob job = getJob(id, user);
+
+        SseEmitter emitter = new SseEmitter(sseTimeoutMs);
+        emitter.onCompletion(() -> job.getSubscribers().remove(emitter));
+        emitter.onTimeout(() -> job.getSubscribers().remove(emitter));
+        emitter.onError(error -> job.getSubscribers().remove(emitter));
+
+        synchronized (job) {
+            if (send(emitter, job.progress()) && !job.isFinished()) {
+                job.getSubscribers().add(emitter);
+            } else {
+                emitter.complete();
+            }
+        }
+        return emitter;
+    }
+
+    private void process(UploadJob job, Path staged, String contentType, User user, boolean encrypt,
+                         String encryptionKey) {
+        boolean reserved = false;
+        FileService.StagedFile content = null;
+        try {
+            // Charged before any bytes are written; the request's copy of the user is long detached
+            Integer updated = transaction.execute(status ->
+                    userRepository.reserveStorage(job.getUserId(), job.getTotalBytes()));
+            if (updated == null || updated == 0) {
+                throw new Exception("Storage quota exceeded. Please upgrade your plan.");
+            }
+            reserved = true;
+
+            advance(job, UploadJob.Stage.PROCESSING);
+            try (InputStream data = new ProgressInputStream(Files.newInputStream(staged), job, encrypt)) {
+                content = fileService.writeContent(data, job.getTotalBytes(), job.getFilename(), contentType,
+                        user, encrypt, encryptionKey);
+            }
+            advance(job, UploadJob.Stage.ADDED);
+
+            FileMetadata saved = fileService.persistBatch(List.of(content)).get(0);
+            job.setFile(saved);
+            advance(job, UploadJob.Stage.PERSISTED);
+            log.info("Upload job {} stored {} (CID: {})", job.getId(), job.getFilename(), saved.getCid());
+        } catch (Exception e) {
+            if (reserved) {
+                transaction.executeWithoutResult(status ->
+                        userRepository.releaseStorage(job.getUserId(), job.getTotalBytes()));
+            }
+            if (content != null) {
+                fileService.discardContent(content);
+            }
+            log.error("Upload job {} failed: {}", job.getId(), e.getMessage());
+            job.fail(e.getMessage());
+            publish(job);
+        } finally {
+            try {
+                Files.deleteIfExists(staged);
+            } catch (IOException e) {
+                log.warn("Could not delete staged upload {}: {}", staged, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Move jobs whose file is saved on to PINNED once the pin queue confirms
+     * the pin. Jobs still unpinned after the wait finish without it.
+     */
+    @Scheduled(fixedDelayString = "${blockvault.upload.jobs.pin-poll-ms:2000}")
+    public void trackPins() {
+        List<UploadJob> waiting = jobs.values().stream()
+                .filter(job -> !job.isFinished() && job.getStage() == UploadJob.Stage.PERSISTED)
+                .toList();
+        if (waiting.isEmpty()) {
+            return;
+        }
+
+        Map<Long, FileMetadata> files = fileMetadataRepository
+                .findAllById(waiting.stream().map(job -> job.getFile().getId()).toList()).stream()
+                .collect(Collectors.toMap(FileMetadata::getId, Function.identity()));
+        Instant pinDeadline = Instant.now().minusMillis(pinWaitMs);
+
+        for (UploadJob job : waiting) {
+            FileMetadata file = files.get(job.getFile().getId());
+            if (file == null) {
+                job.fail("File was deleted before it was pinned");
+            } else if (FileMetadata.PIN_PINNED.equals(file.getPinStatus())) {
+                job.setStage(UploadJob.Stage.PINNED);
+                job.finish();
+            } else if (FileMetadata.PIN_FAILED.equals(file.getPinStatus())
+                    || job.getCreatedAt().isBefore(pinDeadline)) {
+                // The file is stored either way; the pin queue and replication keep working on it
+                job.finish();
+            } else {
+                continue;
+            }
+            publish(job);
+        }
+    }
+
+    /**
+     * Forget finished jobs after the retention period
+     */
+    @Scheduled(fixedDelayString = "${blockvault.upload.cleanup-interval-ms:3600000}")
+    public void expireFinishedJobs() {
+        Instant cutoff = Instant.now().minusMillis(retentionMs);
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt().isBefore(cutoff));
+    }
+
+    private void advance(UploadJob job, UploadJob.Stage stage) {
+        job.setStage(stage);
+        publish(job);
+    }
+
+    // Queue the job's current progress for its subscribers; never blocks on a client
+    private void publish(UploadJob job) {
+        if (!pendingEvents.add(job.getId())) {
+            return; // The waiting event reads the progress when it is sent
+        }
+        try {
+            eventSender.execute(() -> {
+                pendingEvents.remove(job.getId());
+                sendProgress(job);
+            });
+        } catch (RejectedExecutionException e) {
+            pendingEvents.remove(job.getId()); // Shutting down
+        }
+    }
+
+    private void sendProgress(UploadJob job) {
+        synchronized (job) {
+            UploadJob.Progress progress = job.progress();
+            for (SseEmitter emitter : job.getSubscribers()) {
+                if (!send(emitter, progress)) {
+                    job.getSubscribers().remove(emitter);
+                }
+            }
+            if (job.isFinished()) {
+                job.getSubscribers().forEach(SseEmitter::complete);
+                job.getSubscribers().clear();
+            }
+        }
+    }
+
+    private boolean send(SseEmitter emitter, UploadJob.Progress progress) {
+        try {
+            emitter.send(SseEmitter.event().name("progress").data(progress));
+            return true;
+        } catch (IOException | IllegalStateException e) {
+            // The client went away; its emitter is done
+            return false;
+        }
+    }
+
+    // Counts bytes handed to the storage pipeline and reports each whole percent
+    private class ProgressInputStream extends FilterInputStream {
+
+        private final UploadJob job;
+        private final boolean encrypt;
+        private long lastPercent;
+        private boolean ended;
+
+        ProgressInputStream(InputStream in, UploadJob job, boolean encrypt) {
+            super(in);
+            this.job = job;
+            this.encrypt = encrypt;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                advanceBytes(1);
+            } else {
+                end();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                advanceBytes(n);
+            } else if (n == -1) {
+                end();
+            }
+            return n;
+        }
+
+        // Encryption runs on the bytes as they are read, so once the pipeline has read them all they are encrypted
+        private void end() {
+            if (!ended) {
+                ended = true;
+                if (encrypt) {
+                    advance(job, UploadJob.Stage.ENCRYPTED);
+                }
+            }
+        }
+
+        private void advanceBytes(long n) {
+            long processed = job.getProcessedBytes().addAndGet(n);
+            long percent = job.getTotalBytes() > 0 ? processed * 100 / job.getTotalBytes() : 100;
+            if (percent > lastPercent) {
+                lastPercent = percent;
+                publish(job);
+            }
+        }
+    }
+}
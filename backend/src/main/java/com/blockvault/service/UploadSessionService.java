@@ -0,0 +1,300 @@
+package com.blockvault.service;
+
+import com.blockvault.model.FileMetadata;
+import com.blockvault.model.UploadSession;
+import com.blockvault.model.User;
+import com.blockvault.repository.UploadSessionRepository;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable uploads: content is staged on local disk chunk by chunk and
+ * handed to {@link FileService#storeFile} once every byte has arrived.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UploadSessionService {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final UploadSessionRepository uploadSessionRepository;
+    private final FileService fileService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${blockvault.upload.staging-dir:./data/uploads}")
+    private String stagingDir;
+
+    @Value("${blockvault.upload.max-file-size:536870912}")
+    private long maxFileSize;
+
+    @Value("${blockvault.upload.session-expiry-hours:24}")
+    private long sessionExpiryHours;
+
+    @Value("${blockvault.upload.claim-timeout-ms:300000}")
+    private long claimTimeoutMs;
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(Paths.get(stagingDir));
+        log.info("Resumable upload staging directory: {}", Paths.get(stagingDir).toAbsolutePath());
+    }
+
+    /**
+     * Start a resumable upload
+     */
+    public UploadSession createSession(User user, String filename, String contentType, long totalSize)
+            throws Exception {
+        if (filename == null || filename.trim().isEmpty()) {
+            throw new Exception("Filename is required");
+        }
+        if (totalSize <= 0) {
+            throw new Exception("File is empty");
+        }
+        if (totalSize > maxFileSize) {
+            throw new Exception("File exceeds the maximum upload size");
+        }
+        if (!user.hasStorageSpace(totalSize)) {
+            throw new Exception("Storage quota exceeded. Please upgrade your plan.");
+        }
+
+        UploadSession session = new UploadSession();
+        session.setId(UUID.randomUUID().toString());
+        session.setUser(user);
+        session.setFilename(filename);
+        session.setContentType(contentType);
+        session.setTotalSize(totalSize);
+
+        Files.createFile(stagingPath(session.getId()));
+        UploadSession saved = uploadSessionRepository.save(session);
+
+        log.info("Upload session created: {} for {} ({} bytes)", saved.getId(), filename, totalSize);
+        return saved;
+    }
+
+    /**
+     * Get an upload session owned by the user
+     */
+    public UploadSession getSession(String id, User user) throws Exception {
+        return uploadSessionRepository.findByIdAndUserId(id, user.getId())
+                .orElseThrow(() -> new Exception("Upload session not found"));
+    }
+
+    /**
+     * Write a chunk at {@code offset}, which must equal the committed offset.
+     * The writer claims the session with a conditional update first, so one
+     * chunk is written at a time however many instances serve the upload.
+     * Bytes that reach the disk before the client disconnects are kept, so
+     * the next attempt resumes from there; bytes past the declared size are
+     * rejected after the ones that fit are kept.
+     */
+    public UploadSession appendChunk(String id, User user, long offset, InputStream body) throws Exception {
+        UploadSession session = getActiveSession(id, user);
+        if (offset != session.getCommittedOffset()) {
+            throw new Exception("Offset mismatch: upload is at byte " + session.getCommittedOffset());
+        }
+
+        String writerId = UUID.randomUUID().toString();
+        Integer claimed = transactionTemplate.execute(status -> uploadSessionRepository.claim(id, offset, writerId,
+                LocalDateTime.now(), staleClaimCutoff()));
+        if (claimed == null || claimed == 0) {
+            UploadSession current = getActiveSession(id, user);
+            if (offset != current.getCommittedOffset()) {
+                throw new Exception("Offset mismatch: upload is at byte " + current.getCommittedOffset());
+            }
+            throw new Exception("Another chunk is being written to this upload");
+        }
+
+        long remaining = session.getTotalSize() - offset;
+        long written = 0;
+        boolean overflow = false;
+        boolean claimLost = false;
+        IOException interrupted = null;
+
+        try (FileChannel channel = FileChannel.open(stagingPath(id), StandardOpenOption.WRITE)) {
+            ReadableByteChannel source = Channels.newChannel(body);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            long renewedAt = System.currentTimeMillis();
+
+            try {
+                while (true) {
+                    // Never read past the declared size; one spare byte tells whether the body is longer
+                    buffer.limit((int) Math.min(buffer.capacity(), Math.max(1, remaining - written)));
+                    if (source.read(buffer) == -1) {
+                        break;
+                    }
+                    buffer.flip();
+                    if (written == remaining) {
+                        overflow = buffer.hasRemaining();
+                        break;
+                    }
+                    while (buffer.hasRemaining()) {
+                        written += channel.write(buffer, offset + written);
+                    }
+                    buffer.clear();
+
+                    if (System.currentTimeMillis() - renewedAt > claimTimeoutMs / 3) {
+                        if (!renewClaim(id, writerId)) {
+                            claimLost = true;
+                            break;
+                        }
+                        renewedAt = System.currentTimeMillis();
+                    }
+                }
+            } catch (IOException e) {
+                interrupted = e;
+            }
+
+            channel.force(false);
+        } catch (IOException e) {
+            // The staging file failed, so nothing from this chunk is known to be on disk
+            commitClaim(id, writerId, offset);
+            throw e;
+        }
+
+        long committed = offset + written;
+        if (claimLost || !commitClaim(id, writerId, committed)) {
+            throw new Exception("Upload was taken over by another request");
+        }
+
+        if (interrupted != null) {
+            log.warn("Upload {} interrupted at byte {}: {}", id, committed, interrupted.getMessage());
+        }
+        if (overflow) {
+            throw new Exception("Chunk exceeds the declared file size; upload is at byte " + committed);
+        }
+        return getSession(id, user);
+    }
+
+    /**
+     * Finalize a fully staged upload through the regular storage path. The
+     * session moves to COMPLETING first, so it is stored once and takes no
+     * more chunks meanwhile.
+     */
+    public FileMetadata complete(String id, User user, boolean encrypt, String encryptionKey) throws Exception {
+        UploadSession session = getActiveSession(id, user);
+
+        Integer started = transactionTemplate.execute(status -> uploadSessionRepository.startCompletion(id,
+                LocalDateTime.now(), staleClaimCutoff()));
+        if (started == null || started == 0) {
+            UploadSession current = getActiveSession(id, user);
+            if (!current.getCommittedOffset().equals(current.getTotalSize())) {
+                throw new Exception("Upload incomplete: " + current.getCommittedOffset() + " of "
+                        + current.getTotalSize() + " bytes received");
+            }
+            throw new Exception("A chunk is still being written to this upload");
+        }
+
+        Path staged = stagingPath(id);
+        FileMetadata fileMetadata;
+        try {
+            fileMetadata = fileService.storeFile(Files.newInputStream(staged), session.getTotalSize(),
+                    session.getFilename(), session.getContentType(), user, encrypt, encryptionKey);
+        } catch (Exception e) {
+            // The staged bytes are intact; the client can try again
+            transactionTemplate.execute(status -> uploadSessionRepository.changeStatus(id,
+                    UploadSession.STATUS_COMPLETING, UploadSession.STATUS_ACTIVE, LocalDateTime.now(),
+                    LocalDateTime.now()));
+            throw e;
+        }
+
+        transactionTemplate.execute(status -> uploadSessionRepository.finishCompletion(id, fileMetadata.getId(),
+                LocalDateTime.now()));
+        Files.deleteIfExists(staged);
+
+        log.info("Upload session completed: {} (CID: {})", id, fileMetadata.getCid());
+        return fileMetadata;
+    }
+
+    /**
+     * Abandon an upload and discard its staged bytes
+     */
+    public void abort(String id, User user) throws Exception {
+        getActiveSession(id, user);
+        if (!discard(id, UploadSession.STATUS_ACTIVE)) {
+            throw new Exception("A chunk is still being written to this upload");
+        }
+    }
+
+    /**
+     * Discard sessions that have not received data within the expiry window,
+     * including ones whose completion never finished
+     */
+    @Scheduled(fixedDelayString = "${blockvault.upload.cleanup-interval-ms:3600000}")
+    public void expireStaleSessions() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(sessionExpiryHours);
+
+        for (String status : List.of(UploadSession.STATUS_ACTIVE, UploadSession.STATUS_COMPLETING)) {
+            for (UploadSession session : uploadSessionRepository.findByStatusAndUpdatedAtBefore(status, cutoff)) {
+                try {
+                    if (discard(session.getId(), status)) {
+                        log.info("Expired upload session: {}", session.getId());
+                    }
+                } catch (IOException e) {
+                    log.error("Failed to expire upload session {}: {}", session.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private UploadSession getActiveSession(String id, User user) throws Exception {
+        UploadSession session = getSession(id, user);
+        if (!UploadSession.STATUS_ACTIVE.equals(session.getStatus())) {
+            throw new Exception("Upload session is " + session.getStatus().toLowerCase());
+        }
+        return session;
+    }
+
+    // Mark the session aborted unless a writer holds a fresh claim, then drop its staged bytes
+    private boolean discard(String id, String fromStatus) throws IOException {
+        Integer updated = transactionTemplate.execute(status -> uploadSessionRepository.changeStatus(id, fromStatus,
+                UploadSession.STATUS_ABORTED, LocalDateTime.now(), staleClaimCutoff()));
+        if (updated == null || updated == 0) {
+            return false;
+        }
+        Files.deleteIfExists(stagingPath(id));
+        return true;
+    }
+
+    // Record the staged bytes and give up the claim; false if the claim was lost
+    private boolean commitClaim(String id, String writerId, long committedOffset) {
+        Integer committed = transactionTemplate.execute(status -> uploadSessionRepository.commitClaim(id, writerId,
+                committedOffset, LocalDateTime.now()));
+        return committed != null && committed > 0;
+    }
+
+    private boolean renewClaim(String id, String writerId) {
+        Integer renewed = transactionTemplate.execute(status -> uploadSessionRepository.renewClaim(id, writerId,
+                LocalDateTime.now()));
+        return renewed != null && renewed > 0;
+    }
+
+    // Claims not renewed since then belong to writers that died
+    private LocalDateTime staleClaimCutoff() {
+        return LocalDateTime.now().minusNanos(claimTimeoutMs * 1_000_000);
+    }
+
+    private Path stagingPath(String id) {
+        // Session ids are server-generated UUIDs; reject anything else before touching the disk
+        return Paths.get(stagingDir).resolve(UUID.fromString(id) + ".part");
+    }
+}
@@ -0,0 +1,232 @@
+package com.blockvault.service;
+
+import com.blockvault.model.User;
+import com.blockvault.repository.FileDownloadItem;
+import com.blockvault.repository.FileMetadataRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.file.attribute.FileTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Streams several files as one ZIP archive. Entries are written as their
+ * content is fetched and decrypted; while one entry is written the next few
+ * files are opened and their first bytes read ahead on a shared pool. Memory
+ * use is bounded by the prefetch window, not by the archive size.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ZipDownloadService {
+
+    private final FileService fileService;
+    private final FileMetadataRepository fileMetadataRepository;
+    private final EncryptionService encryptionService;
+    private final CompressionService compressionService;
+
+    @Value("${blockvault.download.zip.max-files:500}")
+    private int maxFiles;
+
+    @Value("${blockvault.download.zip.prefetch:3}")
+    private int prefetch;
+
+    @Value("${blockvault.download.zip.prefetch-buffer-size:1048576}")
+    private int prefetchBufferSize;
+
+    @Value("${blockvault.download.zip.threads:8}")
+    private int threads;
+
+    private ExecutorService prefetchPool;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadCount = new AtomicInteger();
+        prefetchPool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "zip-prefetch-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        prefetchPool.shutdownNow();
+    }
+
+    /**
+     * Resolve and authorize the files of an archive, in request order.
+     * Every check happens here, before any byte of the archive is sent.
+     *
+     * @param keys Decryption keys by file id; {@code defaultKey} is used for
+     *             encrypted files without one
+     */
+    public List<ZipEntrySource> prepare(List<Long> ids, User user, Map<Long, String> keys, String defaultKey)
+            throws Exception {
+        if (ids == null || ids.isEmpty()) {
+            throw new Exception("No files selected");
+        }
+        Set<Long> requested = new LinkedHashSet<>(ids);
+        if (requested.size() > maxFiles) {
+            throw new Exception("An archive can hold at most " + maxFiles + " files");
+        }
+
+        Map<Long, FileDownloadItem> owned = fileMetadataRepository.findDownloadItemsByIds(requested, user.getId())
+                .stream()
+                .collect(Collectors.toMap(FileDownloadItem::id, Function.identity()));
+
+        List<ZipEntrySource> entries = new ArrayList<>(requested.size());
+        Set<String> names = new HashSet<>();
+        for (Long id : requested) {
+            FileDownloadItem file = owned.get(id);
+            if (file == null) {
+                throw new Exception("File not found: " + id);
+            }
+
+            String key = null;
+            if (file.encrypted()) {
+                key = keys != null && keys.get(id) != null ? keys.get(id) : defaultKey;
+                if (key == null || key.trim().isEmpty()) {
+                    throw new Exception("Decryption key required for encrypted file " + file.filename());
+                }
+                if (file.encryptionKeyHash() != null
+                        && !file.encryptionKeyHash().equals(encryptionService.hashKey(key))) {
+                    throw new Exception("Wrong decryption key for " + file.filename());
+                }
+            }
+
+            entries.add(new ZipEntrySource(file, key, uniqueName(file.filename(), names)));
+        }
+        return entries;
+    }
+
+    /**
+     * Write the archive. A file that cannot be read aborts the archive
+     * rather than leaving it silently incomplete.
+     */
+    public void writeZip(List<ZipEntrySource> entries, OutputStream out) throws IOException {
+        List<Future<InputStream>> opened = new ArrayList<>(entries.size());
+        int next = 0;
+        try {
+            ZipOutputStream zip = new ZipOutputStream(out);
+            for (int i = 0; i < entries.size(); i++) {
+                // Keep the current entry and the next few in flight
+                while (next < entries.size() && next <= i + prefetch) {
+                    ZipEntrySource source = entries.get(next++);
+                    opened.add(prefetchPool.submit(() -> open(source)));
+                }
+
+                ZipEntrySource source = entries.get(i);
+                try (InputStream content = await(opened.get(i), source)) {
+                    opened.set(i, null);
+
+                    // Media and archives are compressed already; deflating them again only costs CPU
+                    zip.setLevel(compressionService.isCompressible(source.file().fileType())
+                            ? Deflater.BEST_SPEED
+                            : Deflater.NO_COMPRESSION);
+
+                    ZipEntry entry = new ZipEntry(source.name());
+                    if (source.file().uploadedAt() != null) {
+                        entry.setLastModifiedTime(FileTime.from(
+                                source.file().uploadedAt().atZone(ZoneId.systemDefault()).toInstant()));
+                    }
+                    zip.putNextEntry(entry);
+                    content.transferTo(zip);
+                    zip.closeEntry();
+                }
+            }
+            zip.finish();
+            zip.flush();
+            log.info("ZIP archive of {} files streamed", entries.size());
+        } finally {
+            for (Future<InputStream> pending : opened) {
+                discard(pending);
+            }
+        }
+    }
+
+    // Open a file and read its first bytes, so the fetch overlaps the entry being written
+    private InputStream open(ZipEntrySource source) throws Exception {
+        FileDownloadItem file = source.file();
+        FileDownload download = fileService.openDownload(file, source.decryptionKey(), 0, file.fileSize());
+        InputStream content = download.getContent();
+        try {
+            byte[] head = content.readNBytes(prefetchBufferSize);
+            return new SequenceInputStream(new ByteArrayInputStream(head), content);
+        } catch (IOException e) {
+            content.close();
+            throw e;
+        }
+    }
+
+    private InputStream await(Future<InputStream> pending, ZipEntrySource source) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + source.name());
+        } catch (ExecutionException e) {
+            log.error("Could not fetch {} for a ZIP archive: {}", source.name(), e.getCause().getMessage());
+            throw new IOException("Could not fetch " + source.name(), e.getCause());
+        }
+    }
+
+    // Close streams opened ahead of an archive that was cut short
+    private void discard(Future<InputStream> pending) {
+        if (pending == null || pending.cancel(true)) {
+            return;
+        }
+        try {
+            pending.get().close();
+        } catch (Exception e) {
+            // Failed or already closed; nothing to release
+        }
+    }
+
+    private String uniqueName(String filename, Set<String> names) {
+        String name = filename.replace('\\', '_').replace('/', '_');
+        if (names.add(name)) {
+            return name;
+        }
+
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        int copy = 2;
+        while (!names.add(base + " (" + copy + ")" + extension)) {
+            copy++;
+        }
+        return base + " (" + copy + ")" + extension;
+    }
+
+    /**
+     * A file to put in an archive, with its key and entry name
+     */
+    public record ZipEntrySource(FileDownloadItem file, String decryptionKey, String name) {
+    }
+}
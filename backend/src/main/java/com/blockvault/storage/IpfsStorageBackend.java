@@ -0,0 +1,90 @@
+package com.blockvault.storage;
+
+import com.blockvault.ipfs.IpfsNode;
+import com.blockvault.ipfs.IpfsNodePool;
+import com.blockvault.service.IPFSService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Storage on the configured IPFS nodes; ids are IPFS CIDs and locations
+ * are node API endpoints
+ */
+@Component
+@ConditionalOnProperty(name = "blockvault.storage.backend", havingValue = "ipfs", matchIfMissing = true)
+@RequiredArgsConstructor
+public class IpfsStorageBackend implements StorageBackend {
+
+    private final IPFSService ipfsService;
+    private final IpfsNodePool nodePool;
+
+    @Override
+    public String put(InputStream data, String name) throws IOException {
+        return ipfsService.uploadFile(data, name);
+    }
+
+    @Override
+    public String put(byte[] data, String name) throws IOException {
+        return ipfsService.uploadFile(data, name);
+    }
+
+    @Override
+    public String put(byte[] data, String name, String location) throws IOException {
+        return ipfsService.uploadFile(data, name, nodePool.findByEndpoint(location).orElse(null));
+    }
+
+    @Override
+    public byte[] get(String id) throws IOException {
+        return ipfsService.downloadFile(id);
+    }
+
+    @Override
+    public InputStream getStream(String id) throws IOException {
+        return ipfsService.downloadStream(id);
+    }
+
+    @Override
+    public InputStream getRange(String id, long offset, long length) throws IOException {
+        return ipfsService.downloadRange(id, offset, length);
+    }
+
+    @Override
+    public Map<String, String> pin(List<String> ids) throws IOException {
+        Map<String, String> placement = new LinkedHashMap<>();
+        for (Map.Entry<String, IpfsNode> entry : ipfsService.pinFiles(ids).entrySet()) {
+            placement.put(entry.getKey(), entry.getValue().getEndpoint());
+        }
+        return placement;
+    }
+
+    @Override
+    public void unpin(List<String> ids) {
+        ipfsService.unpinFiles(ids);
+    }
+
+    @Override
+    public Optional<ObjectStat> stat(String id) throws IOException {
+        return ipfsService.stat(id).map(size -> new ObjectStat(id, size));
+    }
+
+    @Override
+    public List<String> locations() {
+        return nodePool.candidatesForWrite().stream()
+                .filter(IpfsNode::isHealthy)
+                .map(IpfsNode::getEndpoint)
+                .toList();
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return ipfsService.isConnected();
+    }
+}
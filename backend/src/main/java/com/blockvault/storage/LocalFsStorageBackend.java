@@ -0,0 +1,270 @@
+package com.blockvault.storage;
+
+import io.ipfs.multihash.Multihash;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed storage in a local directory, for single-node
+ * deployments and for load tests and CI without an IPFS daemon. Ids are
+ * base58 SHA-256 multihashes of the content (the same form as CIDv0, though
+ * not the CID IPFS would assign, as IPFS hashes its DAG encoding). Reads
+ * go through memory mappings.
+ *
+ * Objects are kept until they are unpinned. Unpinned objects are moved
+ * aside rather than deleted, and only removed after a grace period: an
+ * upload that raced the unpin of identical content queues a pin once it
+ * records its reference, and pinning moves the object back.
+ */
+@Component
+@ConditionalOnProperty(name = "blockvault.storage.backend", havingValue = "local")
+@Slf4j
+public class LocalFsStorageBackend implements StorageBackend {
+
+    public static final String LOCATION = "local";
+
+    private static final String TEMP_DIRECTORY = "tmp";
+    private static final String UNPINNED_DIRECTORY = "unpinned";
+
+    @Value("${blockvault.storage.local.directory:./data/objects}")
+    private String directory;
+
+    @Value("${blockvault.storage.local.map-window-size:67108864}")
+    private int mapWindowSize;
+
+    @Value("${blockvault.storage.local.unpin-grace-ms:3600000}")
+    private long unpinGraceMs;
+
+    private Path root;
+    private Path temp;
+    private Path unpinned;
+
+    @PostConstruct
+    public void init() throws IOException {
+        root = Paths.get(directory);
+        temp = root.resolve(TEMP_DIRECTORY);
+        unpinned = root.resolve(UNPINNED_DIRECTORY);
+        Files.createDirectories(temp);
+        Files.createDirectories(unpinned);
+
+        // Left behind by interrupted writes
+        try (Stream<Path> leftovers = Files.list(temp)) {
+            for (Path path : leftovers.toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+        log.info("Local object store at {}", root.toAbsolutePath());
+    }
+
+    @Override
+    public String put(InputStream data, String name) throws IOException {
+        MessageDigest digest = sha256();
+        Path staged = Files.createTempFile(temp, null, null);
+        try {
+            Files.copy(new DigestInputStream(data, digest), staged, StandardCopyOption.REPLACE_EXISTING);
+            return commit(staged, digest.digest());
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Override
+    public String put(byte[] data, String name) throws IOException {
+        byte[] hash = sha256().digest(data);
+        String id = idOf(hash);
+        if (Files.exists(objectPath(id))) {
+            return id;
+        }
+
+        Path staged = Files.createTempFile(temp, null, null);
+        try {
+            Files.write(staged, data);
+            return commit(staged, hash);
+        } finally {
+            Files.deleteIfExists(staged);
+        }
+    }
+
+    @Override
+    public String put(byte[] data, String name, String location) throws IOException {
+        return put(data, name);
+    }
+
+    @Override
+    public byte[] get(String id) throws IOException {
+        try (InputStream content = getStream(id)) {
+            return content.readAllBytes();
+        }
+    }
+
+    @Override
+    public InputStream getStream(String id) throws IOException {
+        return getRange(id, 0, Long.MAX_VALUE);
+    }
+
+    @Override
+    public InputStream getRange(String id, long offset, long length) throws IOException {
+        FileChannel channel = open(id);
+        long size = channel.size();
+        long start = Math.min(offset, size);
+        return new MappedFileInputStream(channel, start, Math.min(length, size - start), mapWindowSize);
+    }
+
+    @Override
+    public Map<String, String> pin(List<String> ids) throws IOException {
+        Map<String, String> placement = new LinkedHashMap<>();
+        for (String id : ids) {
+            Path target = objectPath(id);
+            if (!Files.exists(target) && !restore(id, target)) {
+                throw new IOException("Object not found: " + id);
+            }
+            placement.put(id, LOCATION);
+        }
+        return placement;
+    }
+
+    /**
+     * Move objects aside; they are deleted by {@link #sweepUnpinned} once
+     * the grace period has passed without a pin
+     */
+    @Override
+    public void unpin(List<String> ids) {
+        for (String id : ids) {
+            try {
+                Path aside = unpinned.resolve(id);
+                Files.move(objectPath(id), aside, StandardCopyOption.ATOMIC_MOVE,
+                        StandardCopyOption.REPLACE_EXISTING);
+                // The grace period runs from the unpin, not from when the object was written
+                Files.setLastModifiedTime(aside, FileTime.from(Instant.now()));
+            } catch (NoSuchFileException e) {
+                log.debug("Object {} was already removed", id);
+            } catch (IOException e) {
+                log.error("Error removing object {}: {}", id, e.getMessage());
+            }
+        }
+        log.info("Unpinned {} objects", ids.size());
+    }
+
+    /**
+     * Delete unpinned objects whose grace period has passed
+     */
+    @Scheduled(fixedDelayString = "${blockvault.storage.local.sweep-interval-ms:600000}")
+    public void sweepUnpinned() {
+        Instant cutoff = Instant.now().minusMillis(unpinGraceMs);
+        int deleted = 0;
+        try (Stream<Path> objects = Files.list(unpinned)) {
+            for (Path path : objects.toList()) {
+                try {
+                    if (Files.getLastModifiedTime(path).toInstant().isBefore(cutoff)) {
+                        Files.deleteIfExists(path);
+                        deleted++;
+                    }
+                } catch (NoSuchFileException e) {
+                    // Pinned again while the sweep ran
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error sweeping unpinned objects: {}", e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("Deleted {} unpinned objects", deleted);
+        }
+    }
+
+    @Override
+    public Optional<ObjectStat> stat(String id) throws IOException {
+        Path path = objectPath(id);
+        try {
+            return Optional.of(new ObjectStat(id, Files.size(path)));
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public List<String> locations() {
+        return List.of(LOCATION);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return Files.isWritable(root);
+    }
+
+    private String commit(Path staged, byte[] hash) throws IOException {
+        String id = idOf(hash);
+        Path target = objectPath(id);
+        Files.createDirectories(target.getParent());
+        // Same id means same bytes, so a concurrent writer of the same object is harmless
+        Files.move(staged, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.debug("Stored object {}", id);
+        return id;
+    }
+
+    // Bring back an object unpinned within the grace period
+    private boolean restore(String id, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(unpinned.resolve(id), target, StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        log.info("Object {} pinned again within its grace period", id);
+        return true;
+    }
+
+    private FileChannel open(String id) throws IOException {
+        try {
+            return FileChannel.open(objectPath(id), StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            throw new IOException("Object not found: " + id);
+        }
+    }
+
+    private Path objectPath(String id) throws IOException {
+        try {
+            Multihash.fromBase58(id);
+        } catch (Exception e) {
+            throw new IOException("Invalid object id: " + id);
+        }
+        // Shard by the end of the id; the prefix is the same for every id
+        return root.resolve(id.substring(id.length() - 2)).resolve(id);
+    }
+
+    private static String idOf(byte[] hash) {
+        return new Multihash(Multihash.Type.sha2_256, hash).toBase58();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.blockvault.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Stream over a region of a file through memory mappings. The region is
+ * mapped one window at a time, so large files do not need one huge
+ * mapping, and reads are plain memory copies from the page cache.
+ */
+class MappedFileInputStream extends InputStream {
+
+    private final FileChannel channel;
+    private final long end;
+    private final int windowSize;
+    private long position;
+    private MappedByteBuffer window;
+
+    MappedFileInputStream(FileChannel channel, long offset, long length, int windowSize) {
+        this.channel = channel;
+        this.position = offset;
+        this.end = offset + length;
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureWindow()) {
+            return -1;
+        }
+        position++;
+        return window.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureWindow()) {
+            return -1;
+        }
+
+        int n = Math.min(len, window.remaining());
+        window.get(b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        if (window != null && skipped <= window.remaining()) {
+            window.position(window.position() + (int) skipped);
+        } else {
+            window = null;
+        }
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, end - position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Mappings stay valid after the channel is closed and are released by the GC
+        window = null;
+        channel.close();
+    }
+
+    private boolean ensureWindow() throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        if (window == null || !window.hasRemaining()) {
+            long size = Math.min(windowSize, end - position);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package com.blockvault.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Content-addressed object store behind file storage. Objects are
+ * immutable and identified by a content identifier derived from their
+ * bytes, so storing the same content twice yields the same id.
+ *
+ * The implementation is chosen with {@code blockvault.storage.backend}:
+ * {@code ipfs} (default) or {@code local}.
+ */
+public interface StorageBackend {
+
+    /**
+     * Store a stream; it is consumed but not closed
+     *
+     * @return Content identifier
+     */
+    String put(InputStream data, String name) throws IOException;
+
+    /**
+     * Store content held in memory
+     *
+     * @return Content identifier
+     */
+    String put(byte[] data, String name) throws IOException;
+
+    /**
+     * Store content at a given location (one of {@link #locations()}),
+     * falling back to another location if it fails
+     *
+     * @return Content identifier
+     */
+    String put(byte[] data, String name, String location) throws IOException;
+
+    byte[] get(String id) throws IOException;
+
+    /**
+     * Open a stream of stored content (caller must close it)
+     */
+    InputStream getStream(String id) throws IOException;
+
+    /**
+     * Open a stream of {@code length} bytes starting at {@code offset}
+     * (caller must close it)
+     */
+    InputStream getRange(String id, long offset, long length) throws IOException;
+
+    /**
+     * Make sure content is kept. Fails as a whole if any id cannot be pinned.
+     *
+     * @return The location each id is held at
+     */
+    Map<String, String> pin(List<String> ids) throws IOException;
+
+    /**
+     * Release content so it can be removed. Failures are logged, not thrown.
+     */
+    void unpin(List<String> ids);
+
+    /**
+     * @return Size and id of stored content, or empty if it is not stored
+     */
+    Optional<ObjectStat> stat(String id) throws IOException;
+
+    /**
+     * Locations (nodes) currently accepting content, best first
+     */
+    List<String> locations();
+
+    boolean isAvailable();
+
+    record ObjectStat(String id, long size) {
+    }
+}
@@ -0,0 +1,64 @@
+package com.blockvault.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads a sequence of streams back to back, opening each one only when the
+ * previous one is exhausted.
+ */
+public class ConcatenatedInputStream extends InputStream {
+
+    @FunctionalInterface
+    public interface StreamOpener {
+        InputStream open() throws IOException;
+    }
+
+    private final Iterator<StreamOpener> parts;
+    private InputStream current;
+
+    public ConcatenatedInputStream(List<StreamOpener> parts) {
+        this.parts = parts.iterator();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        int n = read(single, 0, 1);
+        return n == -1 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+
+        while (true) {
+            if (current == null) {
+                if (!parts.hasNext()) {
+                    return -1;
+                }
+                current = parts.next().open();
+            }
+
+            int n = current.read(b, off, len);
+            if (n != -1) {
+                return n;
+            }
+
+            current.close();
+            current = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (current != null) {
+            current.close();
+            current = null;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+-- Columns added to file_metadata after the original schema. Databases
+-- created by Hibernate's ddl-auto before migrations existed lack them, and
+-- V1 leaves existing tables alone, so they are added here before V4 indexes
+-- them. All are nullable: older rows keep null, which the code reads as
+-- the original behaviour (no hash, single blob, single object, pinned).
+
+ALTER TABLE file_metadata ADD COLUMN IF NOT EXISTS content_hash VARCHAR(64);
+ALTER TABLE file_metadata ADD COLUMN IF NOT EXISTS encryption_format VARCHAR(255);
+ALTER TABLE file_metadata ADD COLUMN IF NOT EXISTS storage_layout VARCHAR(255);
+ALTER TABLE file_metadata ADD COLUMN IF NOT EXISTS compression_codec VARCHAR(255);
+ALTER TABLE file_metadata ADD COLUMN IF NOT EXISTS compressed_size BIGINT;
+ALTER TABLE file_metadata ADD COLUMN IF NOT EXISTS pin_status VARCHAR(255);
@@ -0,0 +1,26 @@
+-- Composite indexes for the hot file and version queries. Each one leads
+-- with the equality column and continues with the sort or range columns,
+-- so lookups, ordered pages and per-user aggregates are index range scans.
+
+-- A user's files newest first: findByUserIdOrderByUploadedAtDesc,
+-- findTop4ByUserIdOrderByUploadedAtDesc and the keyset pages of /api/files/page
+CREATE INDEX IF NOT EXISTS idx_file_metadata_user_uploaded ON file_metadata (user_id, uploaded_at, id);
+
+-- Keyset pages filtered by type
+CREATE INDEX IF NOT EXISTS idx_file_metadata_user_type_uploaded
+    ON file_metadata (user_id, file_type, uploaded_at, id);
+
+-- countByUserId and getTotalStorageByUserId, answered from the index alone
+CREATE INDEX IF NOT EXISTS idx_file_metadata_user_size ON file_metadata (user_id, file_size);
+
+-- Download lookups (findDownloadItems); also serves cid alone
+CREATE INDEX IF NOT EXISTS idx_file_metadata_cid_user ON file_metadata (cid, user_id);
+DROP INDEX IF EXISTS idx_file_metadata_cid;
+
+-- Upload precheck (findByUserIdAndContentHashAndFileSize)
+CREATE INDEX IF NOT EXISTS idx_file_metadata_hash_size ON file_metadata (content_hash, file_size);
+DROP INDEX IF EXISTS idx_file_metadata_content_hash;
+
+-- Version history: findByFileMetadataIdOrderByVersionNumberDesc and
+-- findTop4ByFileMetadataIdOrderByVersionNumberDesc
+CREATE INDEX IF NOT EXISTS idx_file_versions_file_version ON file_versions (file_metadata_id, version_number);
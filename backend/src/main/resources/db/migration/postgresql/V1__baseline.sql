@@ -0,0 +1,47 @@
+-- Tables that later migrations index. Databases created by Hibernate's
+-- ddl-auto already have them, so there every statement is a no-op; V3 adds
+-- the columns such databases lack. The remaining tables are still created
+-- by ddl-auto: update.
+
+CREATE TABLE IF NOT EXISTS users (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    username VARCHAR(50) NOT NULL UNIQUE,
+    email VARCHAR(100) NOT NULL UNIQUE,
+    password VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP(6),
+    storage_quota BIGINT NOT NULL,
+    used_storage BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS file_metadata (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    filename VARCHAR(255) NOT NULL,
+    cid VARCHAR(255) NOT NULL,
+    file_size BIGINT NOT NULL,
+    file_type VARCHAR(255) NOT NULL,
+    content_type VARCHAR(255),
+    content_hash VARCHAR(64),
+    encrypted BOOLEAN NOT NULL,
+    encryption_key_hash VARCHAR(255),
+    encryption_format VARCHAR(255),
+    storage_layout VARCHAR(255),
+    compression_codec VARCHAR(255),
+    compressed_size BIGINT,
+    uploaded_at TIMESTAMP(6),
+    user_id BIGINT NOT NULL REFERENCES users (id),
+    blockchain_tx_hash VARCHAR(255),
+    pinned BOOLEAN NOT NULL,
+    pin_status VARCHAR(255),
+    replication_count INTEGER,
+    current_version INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS file_versions (
+    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    file_metadata_id BIGINT NOT NULL REFERENCES file_metadata (id),
+    version_number INTEGER NOT NULL,
+    cid VARCHAR(255) NOT NULL,
+    created_at TIMESTAMP(6),
+    description VARCHAR(255),
+    file_size BIGINT NOT NULL
+);
@@ -0,0 +1,177 @@
+package com.blockvault.benchmark;
+
+import com.blockvault.model.FileMetadata;
+import com.blockvault.model.User;
+import com.blockvault.repository.FileBatchRepository;
+import com.blockvault.repository.FileDownloadItem;
+import com.blockvault.repository.UserRepository;
+import com.blockvault.service.FileDownload;
+import com.blockvault.service.FileService;
+import com.blockvault.storage.StorageBackend;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Regression benchmark for starting a download: the metadata lookup by CID
+ * and opening the content stream. A user is given a growing number of
+ * files, and at each size random stored files are opened the way the
+ * download endpoint opens them. The cost should be the same at 1k and at
+ * 100k files; the test fails when the median grows more than
+ * {@code max-growth} times from the smallest size to the largest.
+ *
+ * Runs on its own in-memory database and local object directory, with
+ * {@code mvn test -Pbenchmark}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.NONE,
+        properties = "spring.datasource.url=jdbc:h2:mem:download-lookup;DB_CLOSE_DELAY=-1")
+@ActiveProfiles("benchmark")
+@Tag("benchmark")
+@Slf4j
+class DownloadLookupBenchmarkTest {
+
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private static final int FILE_SIZE = 4096;
+
+    @TempDir
+    static Path objects;
+
+    @DynamicPropertySource
+    static void objectDirectory(DynamicPropertyRegistry registry) {
+        registry.add("blockvault.storage.local.directory", () -> objects.toString());
+    }
+
+    @Autowired
+    private FileService fileService;
+
+    @Autowired
+    private FileBatchRepository fileBatchRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private StorageBackend storageBackend;
+
+    @Value("${blockvault.benchmark.download-lookup.file-counts}")
+    private List<Integer> fileCounts;
+
+    @Value("${blockvault.benchmark.download-lookup.lookups}")
+    private int lookups;
+
+    @Value("${blockvault.benchmark.download-lookup.stored-objects}")
+    private int storedObjects;
+
+    @Value("${blockvault.benchmark.download-lookup.max-growth}")
+    private double maxGrowth;
+
+    @Test
+    void downloadSetupDoesNotGrowWithFileCount() throws Exception {
+        User user = new User();
+        user.setUsername("bench");
+        user.setEmail("bench@benchmark.local");
+        user.setPassword("-");
+        user = userRepository.save(user);
+
+        Random random = new Random(42);
+        List<String> stored = storeObjects(user, random);
+        int fileTotal = stored.size();
+
+        List<Integer> counts = fileCounts.stream().sorted().toList();
+        long[] medians = new long[counts.size()];
+
+        for (int i = 0; i < counts.size(); i++) {
+            addFiles(user, counts.get(i) - fileTotal);
+            fileTotal = Math.max(fileTotal, counts.get(i));
+
+            // Warm up connections, the query plan and the page cache, then time random stored files
+            for (int n = 0; n < Math.min(200, lookups); n++) {
+                download(stored.get(random.nextInt(stored.size())), user);
+            }
+            long[] nanos = new long[lookups];
+            for (int n = 0; n < lookups; n++) {
+                String cid = stored.get(random.nextInt(stored.size()));
+                long start = System.nanoTime();
+                download(cid, user);
+                nanos[n] = System.nanoTime() - start;
+            }
+
+            Arrays.sort(nanos);
+            medians[i] = nanos[nanos.length / 2];
+            log.info("Download setup with {} files: median {} us, p99 {} us", fileTotal,
+                    medians[i] / 1000, nanos[(int) (nanos.length * 0.99)] / 1000);
+        }
+
+        double growth = (double) medians[medians.length - 1] / Math.max(1, medians[0]);
+        log.info("Download setup median grew {}x from {} to {} files",
+                String.format("%.2f", growth), counts.get(0), counts.get(counts.size() - 1));
+        assertThat(growth)
+                .as("median growth from %d to %d files", counts.get(0), counts.get(counts.size() - 1))
+                .isLessThanOrEqualTo(maxGrowth);
+    }
+
+    // Resolve the record and open its content, as GET /api/files/download/{cid} does
+    private void download(String cid, User user) throws Exception {
+        FileDownloadItem metadata = fileService.getDownloadMetadata(cid, user);
+        try (FileDownload download = fileService.openDownload(metadata, null, 0, metadata.fileSize())) {
+            assertThat(download.getContent().read()).isNotNegative();
+        }
+    }
+
+    // Files whose content is in the object store; these are the ones downloaded
+    private List<String> storeObjects(User user, Random random) throws Exception {
+        List<FileMetadata> files = new ArrayList<>();
+        byte[] content = new byte[FILE_SIZE];
+        for (int n = 0; n < storedObjects; n++) {
+            random.nextBytes(content);
+            files.add(file(user, storageBackend.put(content, "bench-" + n + ".bin")));
+        }
+        fileBatchRepository.insertFiles(files);
+        return files.stream().map(FileMetadata::getCid).toList();
+    }
+
+    // Records without content, which only grow the table
+    private void addFiles(User user, int count) {
+        List<FileMetadata> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int n = 0; n < count; n++) {
+            batch.add(file(user, "bench" + UUID.randomUUID().toString().replace("-", "")));
+            if (batch.size() == INSERT_BATCH_SIZE || n == count - 1) {
+                fileBatchRepository.insertFiles(batch);
+                batch = new ArrayList<>(INSERT_BATCH_SIZE);
+            }
+        }
+    }
+
+    private static FileMetadata file(User user, String cid) {
+        FileMetadata file = new FileMetadata();
+        file.setCid(cid);
+        file.setFilename(cid + ".bin");
+        file.setFileSize((long) FILE_SIZE);
+        file.setFileType("OTHER");
+        file.setContentType("application/octet-stream");
+        file.setEncrypted(false);
+        file.setUser(user);
+        file.setPinned(true);
+        file.setPinStatus(FileMetadata.PIN_PINNED);
+        file.setReplicationCount(1);
+        file.setCurrentVersion(1);
+        return file;
+    }
+}
@@ -0,0 +1,170 @@
+package com.blockvault.benchmark;
+
+import com.blockvault.migration.V2__Drop_file_cid_unique_constraint;
+import lombok.extern.slf4j.Slf4j;
+import org.assertj.core.api.SoftAssertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Loads generated users, files and versions into a throwaway in-memory
+ * database migrated by Flyway, then checks with EXPLAIN that the hot file
+ * and version queries run on the indexes the migrations create: the plan
+ * of each query must name one of its expected indexes.
+ *
+ * Run with {@code mvn test -Pbenchmark}; the data set size is set in
+ * application-benchmark.yml.
+ */
+@JdbcTest
+@Import(V2__Drop_file_cid_unique_constraint.class)
+@ActiveProfiles("benchmark")
+@Transactional(propagation = Propagation.NOT_SUPPORTED) // Batches commit as they go
+@Tag("benchmark")
+@Slf4j
+class IndexPlanTest {
+
+    private static final String[] FILE_TYPES = {"PDF", "DOC", "IMAGE", "VIDEO", "TEXT", "SPREADSHEET", "OTHER"};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${blockvault.datagen.users}")
+    private int userCount;
+
+    @Value("${blockvault.datagen.files}")
+    private int fileCount;
+
+    @Value("${blockvault.datagen.batch-size}")
+    private int batchSize;
+
+    @Test
+    void hotQueriesUseTheirIndexes() {
+        long firstUserId = insertUsers();
+        insertFiles(firstUserId);
+        insertVersions();
+        jdbcTemplate.execute("ANALYZE");
+
+        long userId = firstUserId + userCount / 2;
+        Long fileId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM file_metadata WHERE user_id = ?",
+                Long.class, userId);
+        String cid = jdbcTemplate.queryForObject("SELECT cid FROM file_metadata WHERE id = ?", String.class, fileId);
+        String uploadedAt = jdbcTemplate.queryForObject("SELECT uploaded_at FROM file_metadata WHERE id = ?",
+                Timestamp.class, fileId).toLocalDateTime().toString().replace('T', ' ');
+
+        List<PlanCheck> checks = List.of(
+                new PlanCheck("findByUserIdOrderByUploadedAtDesc",
+                        "SELECT * FROM file_metadata WHERE user_id = " + userId + " ORDER BY uploaded_at DESC",
+                        "idx_file_metadata_user_uploaded"),
+                new PlanCheck("findTop4ByUserIdOrderByUploadedAtDesc",
+                        "SELECT * FROM file_metadata WHERE user_id = " + userId
+                                + " ORDER BY uploaded_at DESC LIMIT 4",
+                        "idx_file_metadata_user_uploaded"),
+                new PlanCheck("findListPageAfter",
+                        "SELECT id, filename, uploaded_at FROM file_metadata WHERE user_id = " + userId
+                                + " AND (uploaded_at, id) < (TIMESTAMP '" + uploadedAt + "', " + fileId + ")"
+                                + " ORDER BY uploaded_at DESC, id DESC LIMIT 51",
+                        "idx_file_metadata_user_uploaded"),
+                new PlanCheck("findListFirstPage by type",
+                        "SELECT id, filename, uploaded_at FROM file_metadata WHERE user_id = " + userId
+                                + " AND file_type = 'PDF' ORDER BY uploaded_at DESC, id DESC LIMIT 51",
+                        "idx_file_metadata_user_type_uploaded"),
+                new PlanCheck("countByUserId",
+                        "SELECT COUNT(*) FROM file_metadata WHERE user_id = " + userId,
+                        "idx_file_metadata_user_size", "idx_file_metadata_user_uploaded",
+                        "idx_file_metadata_user_type_uploaded"),
+                new PlanCheck("getTotalStorageByUserId",
+                        "SELECT SUM(file_size) FROM file_metadata WHERE user_id = " + userId,
+                        "idx_file_metadata_user_size"),
+                new PlanCheck("findDownloadItems",
+                        "SELECT * FROM file_metadata WHERE cid = '" + cid + "' AND user_id = " + userId + " LIMIT 1",
+                        "idx_file_metadata_cid_user"),
+                new PlanCheck("findByFileMetadataIdOrderByVersionNumberDesc",
+                        "SELECT * FROM file_versions WHERE file_metadata_id = " + fileId
+                                + " ORDER BY version_number DESC",
+                        "idx_file_versions_file_version"));
+
+        SoftAssertions softly = new SoftAssertions();
+        for (PlanCheck check : checks) {
+            String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN " + check.sql(), String.class));
+            softly.assertThat(check.indexes())
+                    .as("%s should use one of its indexes; plan was:%n%s", check.query(), plan)
+                    .anyMatch(plan.toLowerCase()::contains);
+        }
+        softly.assertAll();
+    }
+
+    private long insertUsers() {
+        List<Object[]> rows = new ArrayList<>(userCount);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        for (int i = 0; i < userCount; i++) {
+            String username = "gen-" + i;
+            rows.add(new Object[]{username, username + "@datagen.local", "-", now, 5368709120L, 0L});
+        }
+        for (int start = 0; start < rows.size(); start += batchSize) {
+            jdbcTemplate.batchUpdate("INSERT INTO users (username, email, password, created_at, storage_quota,"
+                    + " used_storage) VALUES (?, ?, ?, ?, ?, ?)", rows.subList(start, Math.min(start + batchSize,
+                    rows.size())));
+        }
+        return jdbcTemplate.queryForObject("SELECT MIN(id) FROM users", Long.class);
+    }
+
+    // Files are spread evenly over the users, with upload times over the past two years
+    private void insertFiles(long firstUserId) {
+        Random random = new Random(42);
+        LocalDateTime start = LocalDateTime.now().minusYears(2);
+        long spanSeconds = 2L * 365 * 24 * 3600;
+
+        List<Object[]> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < fileCount; i++) {
+            String type = FILE_TYPES[random.nextInt(FILE_TYPES.length)];
+            long size = 1024L + random.nextInt(50_000_000);
+            batch.add(new Object[]{
+                    "file-" + i + "." + type.toLowerCase(),
+                    "gen" + Integer.toHexString(i),
+                    size,
+                    type,
+                    random.nextInt(5) == 0,
+                    Timestamp.valueOf(start.plusSeconds((long) (random.nextDouble() * spanSeconds))),
+                    firstUserId + random.nextInt(userCount)});
+
+            if (batch.size() == batchSize || i == fileCount - 1) {
+                jdbcTemplate.batchUpdate("INSERT INTO file_metadata (filename, cid, file_size, file_type, encrypted,"
+                        + " uploaded_at, user_id, pinned, pin_status, replication_count, current_version)"
+                        + " VALUES (?, ?, ?, ?, ?, ?, ?, TRUE, 'PINNED', 1, 1)", batch);
+                batch.clear();
+            }
+        }
+        log.info("Generated {} files for {} users", fileCount, userCount);
+    }
+
+    // One version per file, and a second for every tenth file
+    private void insertVersions() {
+        jdbcTemplate.update("INSERT INTO file_versions (file_metadata_id, version_number, cid, created_at,"
+                + " description, file_size) SELECT id, 1, cid, uploaded_at, 'Generated', file_size"
+                + " FROM file_metadata");
+        jdbcTemplate.update("INSERT INTO file_versions (file_metadata_id, version_number, cid, created_at,"
+                + " description, file_size) SELECT id, 2, cid, uploaded_at, 'Generated', file_size"
+                + " FROM file_metadata WHERE MOD(id, 10) = 0");
+    }
+
+    private record PlanCheck(String query, String sql, List<String> indexes) {
+
+        PlanCheck(String query, String sql, String... indexes) {
+            this(query, sql, List.of(indexes));
+        }
+    }
+}
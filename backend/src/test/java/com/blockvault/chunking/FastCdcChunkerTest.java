@@ -0,0 +1,133 @@
+package com.blockvault.chunking;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FastCdcChunkerTest {
+
+    private static final int MIN_SIZE = 2048;
+    private static final int AVG_SIZE = 8192;
+    private static final int MAX_SIZE = 32768;
+
+    @Test
+    void emptyInputHasNoChunks() throws IOException {
+        FastCdcChunker chunker = new FastCdcChunker(InputStream.nullInputStream(), MIN_SIZE, AVG_SIZE, MAX_SIZE);
+
+        assertThat(chunker.next()).isNull();
+        assertThat(chunker.next()).isNull();
+    }
+
+    @Test
+    void inputUpToMinSizeIsOneChunk() throws IOException {
+        byte[] data = randomBytes(MIN_SIZE, 1);
+
+        List<byte[]> chunks = chunk(new ByteArrayInputStream(data));
+
+        assertThat(chunks).hasSize(1);
+        assertThat(chunks.get(0)).isEqualTo(data);
+    }
+
+    @Test
+    void chunksJoinBackToInputWithinSizeLimits() throws IOException {
+        byte[] data = randomBytes(1 << 20, 2);
+
+        List<byte[]> chunks = chunk(new ByteArrayInputStream(data));
+
+        assertThat(join(chunks)).isEqualTo(data);
+        for (int i = 0; i < chunks.size(); i++) {
+            assertThat(chunks.get(i).length).isLessThanOrEqualTo(MAX_SIZE);
+            if (i < chunks.size() - 1) {
+                assertThat(chunks.get(i).length).isGreaterThan(MIN_SIZE);
+            }
+        }
+        assertThat(chunks.size()).isBetween((1 << 20) / MAX_SIZE, (1 << 20) / MIN_SIZE);
+    }
+
+    @Test
+    void chunksDoNotDependOnReadSizes() throws IOException {
+        byte[] data = randomBytes(200_000, 3);
+
+        List<byte[]> whole = chunk(new ByteArrayInputStream(data));
+        List<byte[]> trickled = chunk(new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        });
+
+        assertThat(cutPoints(trickled)).isEqualTo(cutPoints(whole));
+    }
+
+    @Test
+    void boundariesAfterAnEditStayInPlace() throws IOException {
+        byte[] original = randomBytes(1 << 20, 4);
+        int editAt = 100_000;
+        byte[] inserted = randomBytes(100, 5);
+        byte[] edited = new byte[original.length + inserted.length];
+        System.arraycopy(original, 0, edited, 0, editAt);
+        System.arraycopy(inserted, 0, edited, editAt, inserted.length);
+        System.arraycopy(original, editAt, edited, editAt + inserted.length, original.length - editAt);
+
+        List<Long> before = cutPoints(chunk(new ByteArrayInputStream(original)));
+        List<Long> after = cutPoints(chunk(new ByteArrayInputStream(edited)));
+
+        // Cut points ahead of the edit are untouched
+        for (long cut : before) {
+            if (cut <= editAt) {
+                assertThat(after).contains(cut);
+            }
+        }
+
+        // Past the edit the chunker falls back into step, so later cut points only shift by the insertion
+        long resyncBy = editAt + 4L * MAX_SIZE;
+        List<Long> later = before.stream().filter(cut -> cut > resyncBy).toList();
+        assertThat(later).isNotEmpty();
+        for (long cut : later) {
+            assertThat(after).contains(cut + inserted.length);
+        }
+    }
+
+    private static List<byte[]> chunk(InputStream in) throws IOException {
+        FastCdcChunker chunker = new FastCdcChunker(in, MIN_SIZE, AVG_SIZE, MAX_SIZE);
+        List<byte[]> chunks = new ArrayList<>();
+        for (byte[] chunk = chunker.next(); chunk != null; chunk = chunker.next()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    // End offset of each chunk
+    private static List<Long> cutPoints(List<byte[]> chunks) {
+        List<Long> cuts = new ArrayList<>();
+        long offset = 0;
+        for (byte[] chunk : chunks) {
+            offset += chunk.length;
+            cuts.add(offset);
+        }
+        return cuts;
+    }
+
+    private static byte[] join(List<byte[]> chunks) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] chunk : chunks) {
+            out.writeBytes(chunk);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,205 @@
+package com.blockvault.crypto;
+
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Round trips through the segmented container, and tampering that must
+ * fail authentication
+ */
+class SegmentedAesGcmTest {
+
+    private static final int SEGMENT_SIZE = 64;
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+
+    @Test
+    void roundTripsEmptyInput() throws Exception {
+        byte[] container = encrypt(new byte[0]);
+
+        assertThat(container).hasSize((int) SegmentedAesGcm.ciphertextLength(0, SEGMENT_SIZE));
+        assertThat(decrypt(container, 0)).isEmpty();
+    }
+
+    @Test
+    void roundTripsExactlyOneSegment() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE);
+
+        byte[] container = encrypt(plaintext);
+
+        assertThat(container).hasSize((int) SegmentedAesGcm.ciphertextLength(SEGMENT_SIZE, SEGMENT_SIZE));
+        assertThat(decrypt(container, plaintext.length)).isEqualTo(plaintext);
+    }
+
+    @Test
+    void roundTripsPartialLastSegment() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 3 + 5);
+
+        assertThat(decrypt(encrypt(plaintext), plaintext.length)).isEqualTo(plaintext);
+    }
+
+    @Test
+    void roundTripsFullLastSegment() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 3);
+
+        assertThat(decrypt(encrypt(plaintext), plaintext.length)).isEqualTo(plaintext);
+    }
+
+    @Test
+    void decryptsTheLastSegmentOnItsOwn() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 3 + 5);
+        byte[] container = encrypt(plaintext);
+        SegmentedAesGcm scheme = scheme(container);
+        long total = SegmentedAesGcm.segmentCount(plaintext.length, SEGMENT_SIZE);
+
+        int start = (int) scheme.ciphertextOffset(total - 1);
+        InputStream lastSegment = new ByteArrayInputStream(container, start, container.length - start);
+        try (InputStream in = new SegmentedDecryptingInputStream(lastSegment, scheme, total - 1, total, total)) {
+            assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(plaintext, SEGMENT_SIZE * 3,
+                    plaintext.length));
+        }
+    }
+
+    @Test
+    void parallelEncryptionMatchesSequential() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 10 + 17);
+        SegmentedAesGcm scheme = SegmentedAesGcm.create(key, SEGMENT_SIZE);
+
+        byte[] sequential;
+        try (InputStream in = new SegmentedEncryptingInputStream(new ByteArrayInputStream(plaintext), scheme)) {
+            sequential = in.readAllBytes();
+        }
+        byte[] parallel;
+        try (InputStream in = new ParallelSegmentedEncryptingInputStream(new ByteArrayInputStream(plaintext), scheme,
+                ForkJoinPool.commonPool(), 4, 3)) {
+            parallel = in.readAllBytes();
+        }
+
+        assertThat(parallel).isEqualTo(sequential);
+    }
+
+    @Test
+    void rejectsTruncatedLastSegment() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 2 + 5);
+        byte[] container = encrypt(plaintext);
+
+        byte[] truncated = Arrays.copyOf(container, container.length - 3);
+
+        assertThatThrownBy(() -> decrypt(truncated, plaintext.length)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void rejectsDroppedTrailingSegments() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 3);
+        byte[] container = encrypt(plaintext);
+        SegmentedAesGcm scheme = scheme(container);
+
+        // Cut at a segment boundary and decrypt as if the file were two segments long
+        byte[] truncated = Arrays.copyOf(container, (int) scheme.ciphertextOffset(2));
+
+        assertThatThrownBy(() -> decrypt(truncated, SEGMENT_SIZE * 2))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("failed authentication");
+    }
+
+    @Test
+    void rejectsReorderedSegments() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 3);
+        byte[] container = encrypt(plaintext);
+        SegmentedAesGcm scheme = scheme(container);
+
+        int first = (int) scheme.ciphertextOffset(0);
+        int second = (int) scheme.ciphertextOffset(1);
+        int size = scheme.encryptedSegmentSize();
+        byte[] reordered = container.clone();
+        System.arraycopy(container, first, reordered, second, size);
+        System.arraycopy(container, second, reordered, first, size);
+
+        assertThatThrownBy(() -> decrypt(reordered, plaintext.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("failed authentication");
+    }
+
+    @Test
+    void rejectsFlippedBitInSegment() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE * 2);
+        byte[] container = encrypt(plaintext);
+
+        byte[] tampered = container.clone();
+        tampered[SegmentedAesGcm.HEADER_LENGTH + SEGMENT_SIZE + 10] ^= 0x01;
+
+        assertThatThrownBy(() -> decrypt(tampered, plaintext.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("failed authentication");
+    }
+
+    @Test
+    void rejectsFlippedBitInHeader() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE);
+        byte[] container = encrypt(plaintext);
+
+        // Last byte of the nonce prefix, which is authenticated as AAD
+        byte[] tampered = container.clone();
+        tampered[SegmentedAesGcm.HEADER_LENGTH - 1] ^= 0x01;
+
+        assertThatThrownBy(() -> decrypt(tampered, plaintext.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("failed authentication");
+    }
+
+    @Test
+    void rejectsWrongKey() throws Exception {
+        byte[] plaintext = randomBytes(SEGMENT_SIZE);
+        byte[] container = encrypt(plaintext);
+
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        SegmentedAesGcm scheme = SegmentedAesGcm.fromHeader(new SecretKeySpec(otherKey, "AES"),
+                Arrays.copyOf(container, SegmentedAesGcm.HEADER_LENGTH));
+
+        assertThatThrownBy(() -> decrypt(scheme, container, plaintext.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("failed authentication");
+    }
+
+    private byte[] encrypt(byte[] plaintext) throws Exception {
+        SegmentedAesGcm scheme = SegmentedAesGcm.create(key, SEGMENT_SIZE);
+        try (InputStream in = new SegmentedEncryptingInputStream(new ByteArrayInputStream(plaintext), scheme)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private byte[] decrypt(byte[] container, long plaintextLength) throws Exception {
+        return decrypt(scheme(container), container, plaintextLength);
+    }
+
+    private static byte[] decrypt(SegmentedAesGcm scheme, byte[] container, long plaintextLength) throws Exception {
+        long total = SegmentedAesGcm.segmentCount(plaintextLength, scheme.segmentSize());
+        InputStream segments = new ByteArrayInputStream(container, SegmentedAesGcm.HEADER_LENGTH,
+                container.length - SegmentedAesGcm.HEADER_LENGTH);
+        try (InputStream in = new SegmentedDecryptingInputStream(segments, scheme, 0, total, total)) {
+            return in.readAllBytes();
+        }
+    }
+
+    private SegmentedAesGcm scheme(byte[] container) throws IOException {
+        return SegmentedAesGcm.fromHeader(key, Arrays.copyOf(container, SegmentedAesGcm.HEADER_LENGTH));
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,108 @@
+package com.blockvault.erasure;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReedSolomonTest {
+
+    @Test
+    void encodingLeavesDataShardsUnchanged() {
+        ReedSolomon codec = new ReedSolomon(4, 2);
+        byte[][] shards = stripe(codec, 32, new Random(1));
+        byte[][] data = copy(shards);
+
+        codec.encode(shards, 32);
+
+        for (int i = 0; i < codec.getDataShards(); i++) {
+            assertThat(shards[i]).isEqualTo(data[i]);
+        }
+    }
+
+    @Test
+    void rebuildsFromEveryChoiceOfDataShardsCount() {
+        rebuildsFromEverySubset(new ReedSolomon(4, 2), 32);
+        rebuildsFromEverySubset(new ReedSolomon(3, 3), 32);
+        rebuildsFromEverySubset(new ReedSolomon(1, 2), 32);
+    }
+
+    @Test
+    void rebuildsSingleByteShards() {
+        rebuildsFromEverySubset(new ReedSolomon(4, 2), 1);
+    }
+
+    @Test
+    void handlesEmptyShards() {
+        ReedSolomon codec = new ReedSolomon(4, 2);
+        byte[][] shards = new byte[codec.getTotalShards()][0];
+
+        codec.encode(shards, 0);
+        boolean[] present = {false, true, true, false, true, true};
+        codec.reconstructData(shards, present, 0);
+
+        assertThat(shards).allSatisfy(shard -> assertThat(shard).isEmpty());
+    }
+
+    @Test
+    void rejectsTooFewShards() {
+        ReedSolomon codec = new ReedSolomon(4, 2);
+        byte[][] shards = stripe(codec, 8, new Random(2));
+        codec.encode(shards, 8);
+
+        boolean[] present = {true, false, false, false, true, true};
+
+        assertThatThrownBy(() -> codec.reconstructData(shards, present, 8))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // Drop every combination of parityShards shards and rebuild the data from the rest
+    private static void rebuildsFromEverySubset(ReedSolomon codec, int length) {
+        int total = codec.getTotalShards();
+        byte[][] encoded = stripe(codec, length, new Random(total));
+        codec.encode(encoded, length);
+
+        int subsets = 0;
+        for (int mask = 0; mask < 1 << total; mask++) {
+            if (Integer.bitCount(mask) != codec.getDataShards()) {
+                continue;
+            }
+
+            byte[][] shards = copy(encoded);
+            boolean[] present = new boolean[total];
+            for (int i = 0; i < total; i++) {
+                present[i] = (mask & 1 << i) != 0;
+                if (!present[i]) {
+                    shards[i] = new byte[length];
+                }
+            }
+
+            codec.reconstructData(shards, present, length);
+
+            for (int i = 0; i < codec.getDataShards(); i++) {
+                assertThat(shards[i]).as("data shard %d with shards %s present", i, Integer.toBinaryString(mask))
+                        .isEqualTo(encoded[i]);
+            }
+            subsets++;
+        }
+        assertThat(subsets).isPositive();
+    }
+
+    private static byte[][] stripe(ReedSolomon codec, int length, Random random) {
+        byte[][] shards = new byte[codec.getTotalShards()][length];
+        for (int i = 0; i < codec.getDataShards(); i++) {
+            random.nextBytes(shards[i]);
+        }
+        return shards;
+    }
+
+    private static byte[][] copy(byte[][] shards) {
+        byte[][] copy = new byte[shards.length][];
+        for (int i = 0; i < shards.length; i++) {
+            copy[i] = shards[i].clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,172 @@
+package com.blockvault.migration;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the H2 migrations on a throwaway in-memory database, both from
+ * scratch and on top of the schema ddl-auto created before migrations
+ * existed
+ */
+class SchemaMigrationTest {
+
+    private static final String[] ADDED_COLUMNS = {
+            "CONTENT_HASH", "ENCRYPTION_FORMAT", "STORAGE_LAYOUT",
+            "COMPRESSION_CODEC", "COMPRESSED_SIZE", "PIN_STATUS"
+    };
+
+    private static final String[] FILE_INDEXES = {
+            "IDX_FILE_METADATA_USER_UPLOADED", "IDX_FILE_METADATA_USER_TYPE_UPLOADED",
+            "IDX_FILE_METADATA_USER_SIZE", "IDX_FILE_METADATA_CID_USER", "IDX_FILE_METADATA_HASH_SIZE"
+    };
+
+    private String url;
+
+    @BeforeEach
+    void createDatabase() {
+        url = "jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1";
+    }
+
+    @AfterEach
+    void dropDatabase() throws SQLException {
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    void migratesEmptyDatabase() throws Exception {
+        migrate();
+
+        try (Connection connection = connect()) {
+            assertThat(columns(connection, "FILE_METADATA")).contains(ADDED_COLUMNS);
+            assertThat(indexes(connection, "FILE_METADATA")).contains(FILE_INDEXES);
+            assertThat(indexes(connection, "FILE_VERSIONS")).contains("IDX_FILE_VERSIONS_FILE_VERSION");
+        }
+    }
+
+    @Test
+    void upgradesBaselineSchema() throws Exception {
+        try (Connection connection = connect()) {
+            runScript(connection, "db/baseline/h2.sql");
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO users (username, email, password, storage_quota, used_storage)"
+                        + " VALUES ('alice', 'alice@example.com', 'x', 1000, 10)");
+                statement.execute("INSERT INTO file_metadata (filename, cid, file_size, file_type, encrypted,"
+                        + " pinned, user_id) VALUES ('a.txt', 'QmExisting', 10, 'TEXT', FALSE, TRUE, 1)");
+            }
+        }
+
+        migrate();
+
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            assertThat(columns(connection, "FILE_METADATA")).contains(ADDED_COLUMNS);
+            assertThat(indexes(connection, "FILE_METADATA")).contains(FILE_INDEXES);
+            assertThat(indexes(connection, "FILE_VERSIONS")).contains("IDX_FILE_VERSIONS_FILE_VERSION");
+
+            try (ResultSet rows = statement.executeQuery("SELECT content_hash, pin_status FROM file_metadata")) {
+                assertThat(rows.next()).isTrue();
+                assertThat(rows.getString(1)).isNull();
+                assertThat(rows.getString(2)).isNull();
+                assertThat(rows.next()).isFalse();
+            }
+        }
+    }
+
+    @Test
+    void upgradedSchemaLetsFilesShareContent() throws Exception {
+        try (Connection connection = connect()) {
+            runScript(connection, "db/baseline/h2.sql");
+        }
+
+        migrate();
+
+        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
+            statement.execute("INSERT INTO users (username, email, password, storage_quota, used_storage)"
+                    + " VALUES ('alice', 'alice@example.com', 'x', 1000, 20)");
+            for (String filename : new String[]{"a.txt", "copy of a.txt"}) {
+                statement.execute("INSERT INTO file_metadata (filename, cid, file_size, file_type, encrypted,"
+                        + " pinned, user_id) VALUES ('" + filename + "', 'QmShared', 10, 'TEXT', FALSE, TRUE, 1)");
+            }
+
+            try (ResultSet rows = statement.executeQuery(
+                    "SELECT COUNT(*) FROM file_metadata WHERE cid = 'QmShared'")) {
+                rows.next();
+                assertThat(rows.getInt(1)).isEqualTo(2);
+            }
+        }
+    }
+
+    // Same settings as spring.flyway in application.yml
+    private void migrate() {
+        Flyway.configure()
+                .dataSource(url, "sa", "")
+                .locations("classpath:db/migration/h2")
+                .javaMigrations(new V2__Drop_file_cid_unique_constraint())
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+    }
+
+    private Connection connect() throws SQLException {
+        return DriverManager.getConnection(url, "sa", "");
+    }
+
+    private static void runScript(Connection connection, String resource) throws IOException, SQLException {
+        String script;
+        try (InputStream in = SchemaMigrationTest.class.getClassLoader().getResourceAsStream(resource)) {
+            script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        StringBuilder sql = new StringBuilder();
+        for (String line : script.split("\n")) {
+            if (!line.trim().startsWith("--")) {
+                sql.append(line).append('\n');
+            }
+        }
+        try (Statement statement = connection.createStatement()) {
+            for (String command : sql.toString().split(";")) {
+                if (!command.isBlank()) {
+                    statement.execute(command);
+                }
+            }
+        }
+    }
+
+    private static Set<String> columns(Connection connection, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (ResultSet rows = connection.getMetaData().getColumns(null, null, table, null)) {
+            while (rows.next()) {
+                names.add(rows.getString("COLUMN_NAME"));
+            }
+        }
+        return names;
+    }
+
+    private static Set<String> indexes(Connection connection, String table) throws SQLException {
+        Set<String> names = new HashSet<>();
+        try (ResultSet rows = connection.getMetaData().getIndexInfo(null, null, table, false, false)) {
+            while (rows.next()) {
+                names.add(rows.getString("INDEX_NAME"));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,251 @@
+package com.blockvault.service;
+
+import com.blockvault.model.ErasureShard;
+import com.blockvault.repository.ErasureManifestRepository;
+import com.blockvault.repository.ErasureShardRepository;
+import com.blockvault.storage.StorageBackend;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stores files as 4+2 stripes of 16-byte shards in memory and reads them
+ * back, with and without unreadable shards
+ */
+class ErasureCodingServiceTest {
+
+    private static final int DATA_SHARDS = 4;
+    private static final int PARITY_SHARDS = 2;
+    private static final int SHARD_SIZE = 16;
+    private static final int STRIPE_BYTES = DATA_SHARDS * SHARD_SIZE;
+
+    private final MemoryBackend storage = new MemoryBackend();
+    private final ErasureManifestRepository manifests = mock(ErasureManifestRepository.class);
+    private final ErasureShardRepository shards = mock(ErasureShardRepository.class);
+
+    private ErasureCodingService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void createService() {
+        service = new ErasureCodingService(manifests, shards, storage, mock(PinQueueService.class),
+                mock(ObjectProvider.class), new ObjectMapper(), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(service, "enabled", true);
+        ReflectionTestUtils.setField(service, "dataShards", DATA_SHARDS);
+        ReflectionTestUtils.setField(service, "parityShards", PARITY_SHARDS);
+        ReflectionTestUtils.setField(service, "shardSize", SHARD_SIZE);
+        ReflectionTestUtils.setField(service, "threads", 4);
+        service.init();
+    }
+
+    @AfterEach
+    void shutdownService() {
+        service.shutdown();
+    }
+
+    @Test
+    void roundTripsEmptyInput() throws Exception {
+        ErasureCodingService.ErasureCodedContent content = store(new byte[0]);
+
+        assertThat(content.manifest().getStripes()).isEqualTo(1);
+        assertThat(content.manifest().getSize()).isZero();
+        assertThat(read(content)).isEmpty();
+    }
+
+    @Test
+    void roundTripsExactlyOneStripe() throws Exception {
+        byte[] data = randomBytes(STRIPE_BYTES);
+
+        ErasureCodingService.ErasureCodedContent content = store(data);
+
+        assertThat(content.manifest().getStripes()).isEqualTo(1);
+        assertThat(content.shards()).hasSize(DATA_SHARDS + PARITY_SHARDS);
+        assertThat(read(content)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsFullLastStripe() throws Exception {
+        byte[] data = randomBytes(STRIPE_BYTES * 3);
+
+        ErasureCodingService.ErasureCodedContent content = store(data);
+
+        assertThat(content.manifest().getStripes()).isEqualTo(3);
+        assertThat(read(content)).isEqualTo(data);
+    }
+
+    @Test
+    void roundTripsPartialLastStripe() throws Exception {
+        byte[] data = randomBytes(STRIPE_BYTES * 2 + 7);
+
+        ErasureCodingService.ErasureCodedContent content = store(data);
+
+        assertThat(content.manifest().getStripes()).isEqualTo(3);
+        assertThat(read(content)).isEqualTo(data);
+    }
+
+    @Test
+    void readsRangeWithinLastStripe() throws Exception {
+        byte[] data = randomBytes(STRIPE_BYTES * 2 + 7);
+        ErasureCodingService.ErasureCodedContent content = store(data);
+
+        try (InputStream in = service.openRange(content.manifestCid(), STRIPE_BYTES * 2 + 2, 5)) {
+            assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(data, STRIPE_BYTES * 2 + 2, data.length));
+        }
+    }
+
+    @Test
+    void rebuildsFromEveryChoiceOfDataShardsCount() throws Exception {
+        byte[] data = randomBytes(STRIPE_BYTES * 2 + 7);
+        ErasureCodingService.ErasureCodedContent content = store(data);
+
+        int total = DATA_SHARDS + PARITY_SHARDS;
+        for (int mask = 0; mask < 1 << total; mask++) {
+            if (Integer.bitCount(mask) != DATA_SHARDS) {
+                continue;
+            }
+
+            storage.unreadable.clear();
+            for (ErasureShard shard : content.shards()) {
+                if ((mask & 1 << shard.getShardIndex()) == 0) {
+                    storage.unreadable.add(shard.getShardCid());
+                }
+            }
+
+            assertThat(read(content)).as("shards %s readable", Integer.toBinaryString(mask)).isEqualTo(data);
+        }
+    }
+
+    @Test
+    void failsWithTooFewShards() throws Exception {
+        ErasureCodingService.ErasureCodedContent content = store(randomBytes(STRIPE_BYTES));
+
+        for (ErasureShard shard : content.shards()) {
+            if (shard.getShardIndex() > DATA_SHARDS - 2) {
+                storage.unreadable.add(shard.getShardCid());
+            }
+        }
+
+        assertThatThrownBy(() -> read(content))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Cannot rebuild stripe 0");
+    }
+
+    private ErasureCodingService.ErasureCodedContent store(byte[] data) throws Exception {
+        ErasureCodingService.ErasureCodedContent content = service.store(new ByteArrayInputStream(data), "test.bin");
+
+        // Stand in for the records register() would save
+        when(manifests.findById(content.manifestCid())).thenReturn(Optional.of(content.manifest()));
+        when(shards.findByManifestCidAndStripeIndexBetweenOrderByStripeIndexAscShardIndexAsc(
+                anyString(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            int first = invocation.getArgument(1);
+            int last = invocation.getArgument(2);
+            return content.shards().stream()
+                    .filter(shard -> shard.getStripeIndex() >= first && shard.getStripeIndex() <= last)
+                    .toList();
+        });
+        return content;
+    }
+
+    private byte[] read(ErasureCodingService.ErasureCodedContent content) throws IOException {
+        try (InputStream in = service.open(content.manifestCid())) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class MemoryBackend implements StorageBackend {
+
+        private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+        private final Set<String> unreadable = ConcurrentHashMap.newKeySet();
+        private final AtomicInteger nextId = new AtomicInteger();
+
+        @Override
+        public String put(InputStream data, String name) throws IOException {
+            return put(data.readAllBytes(), name);
+        }
+
+        @Override
+        public String put(byte[] data, String name) {
+            String id = "obj-" + nextId.incrementAndGet();
+            objects.put(id, data.clone());
+            return id;
+        }
+
+        @Override
+        public String put(byte[] data, String name, String location) {
+            return put(data, name);
+        }
+
+        @Override
+        public byte[] get(String id) throws IOException {
+            byte[] data = objects.get(id);
+            if (data == null || unreadable.contains(id)) {
+                throw new IOException("Object unavailable: " + id);
+            }
+            return data.clone();
+        }
+
+        @Override
+        public InputStream getStream(String id) throws IOException {
+            return new ByteArrayInputStream(get(id));
+        }
+
+        @Override
+        public InputStream getRange(String id, long offset, long length) throws IOException {
+            byte[] data = get(id);
+            return new ByteArrayInputStream(data, (int) offset, (int) length);
+        }
+
+        @Override
+        public Map<String, String> pin(List<String> ids) {
+            return Map.of();
+        }
+
+        @Override
+        public void unpin(List<String> ids) {
+        }
+
+        @Override
+        public Optional<ObjectStat> stat(String id) {
+            return Optional.ofNullable(objects.get(id)).map(data -> new ObjectStat(id, data.length));
+        }
+
+        @Override
+        public List<String> locations() {
+            return List.of("node-a", "node-b", "node-c");
+        }
+
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+-- Schema that Hibernate's ddl-auto created for the original entities,
+-- before the schema was managed by migrations
+
+create table users (
+    id bigint generated by default as identity,
+    created_at timestamp(6),
+    storage_quota bigint not null,
+    used_storage bigint not null,
+    email varchar(100) not null unique,
+    password varchar(255) not null,
+    username varchar(50) not null unique,
+    primary key (id)
+);
+
+create table file_metadata (
+    encrypted boolean not null,
+    pinned boolean not null,
+    current_version integer,
+    replication_count integer,
+    file_size bigint not null,
+    id bigint generated by default as identity,
+    uploaded_at timestamp(6),
+    user_id bigint not null,
+    blockchain_tx_hash varchar(255),
+    cid varchar(255) not null unique,
+    content_type varchar(255),
+    encryption_key_hash varchar(255),
+    file_type varchar(255) not null,
+    filename varchar(255) not null,
+    primary key (id)
+);
+
+create table file_versions (
+    version_number integer not null,
+    created_at timestamp(6),
+    file_metadata_id bigint not null,
+    file_size bigint not null,
+    id bigint generated by default as identity,
+    cid varchar(255) not null,
+    description varchar(255),
+    primary key (id)
+);
+
+alter table if exists file_metadata
+    add constraint FKp5hv3vkbf0pcfmg9w4e0rqhkd foreign key (user_id) references users;
+
+alter table if exists file_versions
+    add constraint FKq1g0q3qsdaf9yfq3qlb2x4fqf foreign key (file_metadata_id) references file_metadata;